@@ -0,0 +1,341 @@
+package fansirsqi.xposed.sesame.data
+
+import fansirsqi.xposed.sesame.util.Files
+import fansirsqi.xposed.sesame.util.Log
+import org.json.JSONObject
+import java.io.File
+import java.time.DayOfWeek
+import java.time.LocalDate
+import java.time.temporal.TemporalAdjusters
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * 好友能量收取统计
+ *
+ * 1. 记录：好友 userId 首次出现时分配一个下标，当天的收取量累加到按页分配的原子整数数组中，
+ *    并发收取时只做一次无锁累加，不会因为扩容丢失计数
+ * 2. 持久化：每天一个追加写的分段文件（`yyyy-MM-dd.txt`，每行 `userId 能量`），
+ *    [save] 只追加上次保存后的增量，同一好友在一天内可以有多行，读取时求和
+ * 3. 汇总：周统计读取本周的分段；总统计在 `total.txt` 中保存已折叠的历史，查询时只折叠新增的分段
+ *
+ * 数据目录为用户配置目录下的 `friendWatch/`，旧版 friendWatch.json 在首次加载时折叠进总统计。
+ */
+object FriendEnergyStats {
+    private const val TAG = "FriendEnergyStats"
+    private const val DIR_NAME = "friendWatch"
+    private const val TOTAL_FILE = "total.txt"
+    private const val SEGMENT_SUFFIX = ".txt"
+    private const val PAGE_BITS = 8
+    private const val PAGE_SIZE = 1 shl PAGE_BITS
+    private const val MAX_PAGES = 256
+
+    /**
+     * 好友统计
+     * @param startDate 首次有收取记录的日期
+     */
+    data class FriendStat(val userId: String, val weekGet: Int, val allGet: Int, val startDate: String)
+
+    private val lock = Any()
+
+    @Volatile
+    private var dir: File? = null
+
+    // 当前计数对应的日期
+    @Volatile
+    private var day: LocalDate = LocalDate.now()
+
+    /**
+     * 一天的计数。跨天时整体替换为新实例，记录方拿到的下标只在自己读到的实例内有效，
+     * 不会把旧一天的计数累加到新一天重新分配了同一下标的好友上
+     */
+    private class Counters {
+        val indexes = ConcurrentHashMap<String, Int>()
+        val ids = ArrayList<String>()
+        val pages = AtomicReferenceArray<AtomicIntegerArray>(MAX_PAGES)
+
+        // 各下标已写入分段的数量，只在 lock 内访问
+        var persisted = IntArray(PAGE_SIZE)
+    }
+
+    @Volatile
+    private var counters = Counters()
+
+    /**
+     * 加载用户的统计目录，并迁移旧版数据
+     */
+    fun load(userId: String?) {
+        if (userId.isNullOrEmpty()) return
+        synchronized(lock) {
+            resetCounters()
+            day = LocalDate.now()
+            val userDir = File(Files.getUserConfigDir(userId), DIR_NAME)
+            Files.ensureDir(userDir)
+            dir = userDir
+            migrateLegacy(userId, userDir)
+        }
+    }
+
+    /**
+     * 保存后卸载
+     */
+    fun unload() {
+        save()
+        synchronized(lock) {
+            dir = null
+            resetCounters()
+        }
+    }
+
+    /**
+     * 记录一次收取
+     */
+    @JvmStatic
+    fun record(userId: String?, energy: Int) {
+        if (userId.isNullOrEmpty() || energy <= 0 || dir == null) return
+        if (LocalDate.now() != day) rollover()
+        val c = counters
+        val index = c.indexes[userId] ?: intern(c, userId) ?: return
+        c.pages.get(index shr PAGE_BITS).addAndGet(index and (PAGE_SIZE - 1), energy)
+    }
+
+    /**
+     * 追加上次保存后的增量到当天分段
+     */
+    @JvmStatic
+    fun save() {
+        synchronized(lock) {
+            flushLocked(counters, day)
+        }
+    }
+
+    /**
+     * 用户的统计目录；查询的是当前加载的用户时先保存未写入的计数
+     */
+    private fun dirOf(userId: String): File {
+        val userDir = File(Files.getUserConfigDir(userId), DIR_NAME)
+        if (userDir == dir) save()
+        return userDir
+    }
+
+    /**
+     * 本周收取最多的好友
+     */
+    fun topWeek(userId: String, n: Int): List<Pair<String, Int>> {
+        return weekTotals(dirOf(userId)).entries
+            .sortedByDescending { it.value }
+            .take(n)
+            .map { it.key to it.value }
+    }
+
+    /**
+     * 某个好友最近 [days] 天每天的收取量（含今天），只读取对应日期的分段
+     */
+    fun history(userId: String, friendId: String, days: Int): List<Pair<String, Int>> {
+        val userDir = dirOf(userId)
+        val today = LocalDate.now()
+        return (days - 1 downTo 0).map { offset ->
+            val date = today.minusDays(offset.toLong())
+            date.toString() to (readSegment(File(userDir, date.toString() + SEGMENT_SUFFIX))[friendId] ?: 0)
+        }
+    }
+
+    /**
+     * 所有好友的周统计与总统计
+     */
+    @JvmStatic
+    fun list(userId: String): List<FriendStat> {
+        val userDir = dirOf(userId)
+        val week = weekTotals(userDir)
+        val total = totals(userDir)
+        return total.map { (userId, entry) ->
+            FriendStat(userId, week[userId] ?: 0, entry.energy, entry.startDate)
+        }
+    }
+
+    private class TotalEntry(var energy: Int, var startDate: String)
+
+    private fun weekTotals(userDir: File): Map<String, Int> {
+        val today = LocalDate.now()
+        var date = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+        val result = HashMap<String, Int>()
+        while (!date.isAfter(today)) {
+            readSegment(File(userDir, date.toString() + SEGMENT_SUFFIX)).forEach { (id, energy) ->
+                result[id] = (result[id] ?: 0) + energy
+            }
+            date = date.plusDays(1)
+        }
+        return result
+    }
+
+    /**
+     * 总统计：把 total.txt 之后新增的已结束分段折叠进去并写回，再加上今天的分段
+     */
+    private fun totals(userDir: File): Map<String, TotalEntry> {
+        val today = LocalDate.now()
+        val totalFile = File(userDir, TOTAL_FILE)
+        synchronized(lock) {
+            val (rolledUntil, totals) = readTotal(totalFile)
+            val pending = segmentDates(userDir).filter { it.isBefore(today) && (rolledUntil == null || it.isAfter(rolledUntil)) }
+            if (pending.isNotEmpty()) {
+                pending.forEach { date -> fold(totals, File(userDir, date.toString() + SEGMENT_SUFFIX), date.toString()) }
+                writeTotal(totalFile, pending.last(), totals)
+            }
+            val result = HashMap<String, TotalEntry>()
+            totals.forEach { (id, entry) -> result[id] = TotalEntry(entry.energy, entry.startDate) }
+            fold(result, File(userDir, today.toString() + SEGMENT_SUFFIX), today.toString())
+            return result
+        }
+    }
+
+    private fun fold(totals: MutableMap<String, TotalEntry>, segment: File, date: String) {
+        readSegment(segment).forEach { (id, energy) ->
+            val entry = totals[id]
+            if (entry == null) totals[id] = TotalEntry(energy, date) else entry.energy += energy
+        }
+    }
+
+    private fun segmentDates(userDir: File): List<LocalDate> {
+        val names = userDir.list() ?: return emptyList()
+        return names.filter { it.endsWith(SEGMENT_SUFFIX) && it != TOTAL_FILE }
+            .mapNotNull { runCatching { LocalDate.parse(it.removeSuffix(SEGMENT_SUFFIX)) }.getOrNull() }
+            .sorted()
+    }
+
+    private fun readSegment(file: File): Map<String, Int> {
+        if (!file.exists()) return emptyMap()
+        val result = HashMap<String, Int>()
+        try {
+            file.forEachLine { line ->
+                val space = line.indexOf(' ')
+                if (space <= 0) return@forEachLine
+                val energy = line.substring(space + 1).toIntOrNull() ?: return@forEachLine
+                val id = line.substring(0, space)
+                result[id] = (result[id] ?: 0) + energy
+            }
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "读取统计分段失败: ${file.name}", e)
+        }
+        return result
+    }
+
+    /**
+     * total.txt 第一行为已折叠到的日期，其后每行 `userId 能量 开始日期`
+     */
+    private fun readTotal(file: File): Pair<LocalDate?, MutableMap<String, TotalEntry>> {
+        val totals = HashMap<String, TotalEntry>()
+        if (!file.exists()) return null to totals
+        var rolledUntil: LocalDate? = null
+        try {
+            file.useLines { lines ->
+                lines.forEachIndexed { i, line ->
+                    if (i == 0) {
+                        rolledUntil = runCatching { LocalDate.parse(line.trim()) }.getOrNull()
+                        return@forEachIndexed
+                    }
+                    val parts = line.split(' ')
+                    if (parts.size < 3) return@forEachIndexed
+                    val energy = parts[1].toIntOrNull() ?: return@forEachIndexed
+                    totals[parts[0]] = TotalEntry(energy, parts[2])
+                }
+            }
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "读取总统计失败", e)
+        }
+        return rolledUntil to totals
+    }
+
+    private fun writeTotal(file: File, rolledUntil: LocalDate, totals: Map<String, TotalEntry>) {
+        val sb = StringBuilder(totals.size * 32)
+        sb.append(rolledUntil).append('\n')
+        totals.forEach { (id, entry) -> sb.append(id).append(' ').append(entry.energy).append(' ').append(entry.startDate).append('\n') }
+        Files.write2FileAtomic(sb.toString(), file)
+    }
+
+    /**
+     * 旧版 friendWatch.json（allGet 为往周累计，weekGet 为本周）整体折叠进总统计，之后删除
+     */
+    private fun migrateLegacy(userId: String, userDir: File) {
+        val legacy = File(Files.getUserConfigDir(userId), "friendWatch.json")
+        if (!legacy.exists()) return
+        try {
+            val text = legacy.readText()
+            if (text.isNotBlank()) {
+                val jo = JSONObject(text)
+                val totalFile = File(userDir, TOTAL_FILE)
+                val (rolledUntil, totals) = readTotal(totalFile)
+                val keys = jo.keys()
+                while (keys.hasNext()) {
+                    val id = keys.next()
+                    val friend = jo.optJSONObject(id) ?: continue
+                    val energy = friend.optInt("allGet", 0) + friend.optInt("weekGet", 0)
+                    val startDate = friend.optString("startTime", day.toString())
+                    val entry = totals[id]
+                    if (entry == null) totals[id] = TotalEntry(energy, startDate) else entry.energy += energy
+                }
+                writeTotal(totalFile, rolledUntil ?: day.minusDays(1), totals)
+                Log.record(TAG, "已迁移旧版好友统计 ${jo.length()} 条")
+            }
+            legacy.delete()
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "迁移旧版好友统计失败", e)
+        }
+    }
+
+    private fun intern(c: Counters, userId: String): Int? {
+        synchronized(lock) {
+            c.indexes[userId]?.let { return it }
+            val index = c.ids.size
+            if (index >= MAX_PAGES * PAGE_SIZE) return null
+            if (c.pages.get(index shr PAGE_BITS) == null) {
+                c.pages.set(index shr PAGE_BITS, AtomicIntegerArray(PAGE_SIZE))
+            }
+            if (index >= c.persisted.size) c.persisted = c.persisted.copyOf(c.persisted.size * 2)
+            c.ids.add(userId)
+            // 页先于下标发布，拿到下标的线程一定能看到对应的页
+            c.indexes[userId] = index
+            return index
+        }
+    }
+
+    /**
+     * 跨天：先换上新一天的计数，再把旧计数的增量写入旧日期的分段
+     */
+    private fun rollover() {
+        synchronized(lock) {
+            val today = LocalDate.now()
+            if (today == day) return
+            val old = counters
+            val oldDay = day
+            counters = Counters()
+            day = today
+            flushLocked(old, oldDay)
+        }
+    }
+
+    private fun flushLocked(c: Counters, date: LocalDate) {
+        val userDir = dir ?: return
+        val sb = StringBuilder()
+        // 本次写入的 (下标, 计数值)，追加成功后才推进已写入的数量，失败时下次保存重新写入这部分增量
+        val written = ArrayList<Pair<Int, Int>>()
+        for (index in c.ids.indices) {
+            val value = c.pages.get(index shr PAGE_BITS).get(index and (PAGE_SIZE - 1))
+            val delta = value - c.persisted[index]
+            if (delta <= 0) continue
+            sb.append(c.ids[index]).append(' ').append(delta).append('\n')
+            written.add(index to value)
+        }
+        if (sb.isEmpty()) return
+        try {
+            File(userDir, date.toString() + SEGMENT_SUFFIX).appendText(sb.toString())
+            written.forEach { (index, value) -> c.persisted[index] = value }
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "保存好友统计失败", e)
+        }
+    }
+
+    private fun resetCounters() {
+        counters = Counters()
+    }
+}
@@ -4,13 +4,17 @@ import com.fasterxml.jackson.databind.JsonMappingException
 import fansirsqi.xposed.sesame.model.Model
 import fansirsqi.xposed.sesame.task.antForest.AntForest
 import fansirsqi.xposed.sesame.util.Files
+import fansirsqi.xposed.sesame.util.GlobalThreadPools
 import fansirsqi.xposed.sesame.util.JsonUtil
 import fansirsqi.xposed.sesame.util.Log
 import fansirsqi.xposed.sesame.util.StringUtil
 import fansirsqi.xposed.sesame.util.TimeUtil
 import fansirsqi.xposed.sesame.util.maps.UserMap
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
 import java.util.Calendar
 import java.util.Date
+import java.util.concurrent.atomic.AtomicBoolean
 
 class Status {
 
@@ -89,6 +93,26 @@ class Status {
     companion object {
         private val TAG = Status::class.java.simpleName
 
+        /**
+         * 合并写入窗口（毫秒）
+         */
+        private const val SAVE_DELAY_MS = 1000L
+
+        /**
+         * 是否存在尚未写盘的修改
+         */
+        private val dirty = AtomicBoolean(false)
+
+        /**
+         * 是否已安排延迟写盘，与 [dirty] 分开，写盘失败后仍能重新安排
+         */
+        private val flushScheduled = AtomicBoolean(false)
+
+        init {
+            // 进程正常退出时写回未保存的修改
+            Runtime.getRuntime().addShutdownHook(Thread { flush() })
+        }
+
         @JvmStatic
         val INSTANCE: Status = Status()
 
@@ -484,6 +508,8 @@ class Status {
         @Synchronized
         @JvmStatic
         fun unload() {
+            // 重置前先把未落盘的修改写入（日期切换、模块销毁）
+            flush()
             try {
                 // 创建新状态实例并确保清空所有每日标记
                 val newStatus = Status()
@@ -495,6 +521,10 @@ class Status {
             }
         }
 
+        /**
+         * 标记状态已修改，实际写盘由 [flush] 在 [SAVE_DELAY_MS] 窗口后合并完成，
+         * 调用线程不会阻塞在磁盘 IO 上。
+         */
         @Synchronized
         @JvmStatic
         fun save(nowCalendar: Calendar = Calendar.getInstance()) {
@@ -505,16 +535,47 @@ class Status {
             }
             if (updateDay(nowCalendar)) {
                 Log.record(TAG, "重置 statistics.json")
-            } else {
-                Log.record(TAG, "保存 status.json")
             }
-            val lastSaveTime = INSTANCE.saveTime
+            // saveTime 记录修改时间而非写盘时间，保证跨零点的延迟写入不会影响日期判断
+            INSTANCE.saveTime = System.currentTimeMillis()
+            dirty.set(true)
+            scheduleFlush()
+        }
+
+        /**
+         * 安排一次延迟写盘，窗口内已有待执行的写盘时不重复安排
+         */
+        private fun scheduleFlush() {
+            if (!flushScheduled.compareAndSet(false, true)) return
+            GlobalThreadPools.execute(Dispatchers.IO) {
+                delay(SAVE_DELAY_MS)
+                flushScheduled.set(false)
+                flush()
+            }
+        }
+
+        /**
+         * 立即将未保存的修改写入 status.json（原子写入）。
+         * 在任务轮次结束、日期切换和模块销毁时调用，没有修改时直接返回。
+         */
+        @JvmStatic
+        fun flush() {
+            if (!dirty.getAndSet(false)) return
+            val currentUid = UserMap.currentUid
+            if (StringUtil.isEmpty(currentUid)) return
             try {
-                INSTANCE.saveTime = System.currentTimeMillis()
-                Files.write2File(JsonUtil.formatJson(INSTANCE), Files.getStatusFile(currentUid)!!)
+                val json = synchronized(this) { JsonUtil.formatJson(INSTANCE) }
+                if (json == null || !Files.write2FileAtomic(json, Files.getStatusFile(currentUid)!!)) {
+                    dirty.set(true)
+                    scheduleFlush()
+                    return
+                }
+                Log.record(TAG, "保存 status.json")
             } catch (e: Exception) {
-                INSTANCE.saveTime = lastSaveTime
-                throw e
+                // 序列化时与任务线程并发修改冲突，保留脏标记并重新安排写盘
+                dirty.set(true)
+                scheduleFlush()
+                Log.printStackTrace(TAG, "保存 status.json 失败", e)
             }
         }
 
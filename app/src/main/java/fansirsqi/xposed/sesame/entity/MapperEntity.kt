@@ -20,12 +20,20 @@ abstract class MapperEntity : Comparable<MapperEntity> {
             .also { pinyinCache = it }
     }
 
-    override fun compareTo(other: MapperEntity): Int {
-        val list1 = getPinyin()
-        val list2 = other.getPinyin()
+    @JsonIgnore
+    private var sortKeyCache: String? = null
 
-        return list1.zip(list2) { a, b -> a.compareTo(b) }
-            .firstOrNull { it != 0 }
-            ?: (list1.size - list2.size)
+    /**
+     * 排序键：按拼音逐项比较的结果与直接比较该字符串一致，排序时只需一次字符串比较
+     */
+    @JsonIgnore
+    fun getSortKey(): String = sortKeyCache ?: run {
+        HanziToPinyin.getInstance()
+            .getSortKey(name)
+            .also { sortKeyCache = it }
+    }
+
+    override fun compareTo(other: MapperEntity): Int {
+        return getSortKey().compareTo(other.getSortKey())
     }
 }
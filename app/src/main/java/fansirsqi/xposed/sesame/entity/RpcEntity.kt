@@ -1,6 +1,7 @@
 package fansirsqi.xposed.sesame.entity
 
 import fansirsqi.xposed.sesame.hook.internal.SecurityBodyHelper
+import fansirsqi.xposed.sesame.util.JsonUtil
 import lombok.Getter
 import org.json.JSONException
 import org.json.JSONObject
@@ -27,6 +28,33 @@ class RpcEntity @JvmOverloads constructor(
     var responseObject: Any? = null
     @Volatile
     var responseString: String? = null
+    @Volatile
+    private var responseJsonCache: JSONObject? = null
+
+    /**
+     * 响应的 JSON 视图，首次访问时构建并缓存，同一响应只解析一次。
+     *
+     * 宿主返回的对象本身就是 Map（fastjson JSONObject），直接逐层转换，
+     * 不再经过“序列化为字符串 -> 重新解析”；否则退回解析 [responseString]。
+     *
+     * @return 无结果或解析失败时为 null
+     */
+    val responseJson: JSONObject?
+        get() {
+            responseJsonCache?.let { return it }
+            if (!hasResult) return null
+            val json = try {
+                when (val result = responseObject) {
+                    is Map<*, *> -> JsonUtil.toJSONObject(result)
+                    else -> responseString?.takeIf { it.isNotBlank() }?.let { JSONObject(it) }
+                }
+            } catch (e: Exception) {
+                null
+            }
+            responseJsonCache = json
+            return json
+        }
+
     /**
      * 设置响应结果并标记请求已完成。
      *
@@ -36,6 +64,7 @@ class RpcEntity @JvmOverloads constructor(
     fun setResponseObject(result: Any?, resultStr: String?) {
         this.hasResult = true // 标记请求有结果
         this.responseObject = result
+        this.responseJsonCache = null
         // 确保 responseString 不为 null，避免上层 NPE
         this.responseString = resultStr ?: ""
     }
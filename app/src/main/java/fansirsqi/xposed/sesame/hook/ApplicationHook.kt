@@ -20,6 +20,7 @@ import de.robv.android.xposed.callbacks.XC_LoadPackage.LoadPackageParam
 import fansirsqi.xposed.sesame.BuildConfig
 import fansirsqi.xposed.sesame.SesameApplication
 import fansirsqi.xposed.sesame.data.Config
+import fansirsqi.xposed.sesame.data.FriendEnergyStats
 import fansirsqi.xposed.sesame.data.General
 import fansirsqi.xposed.sesame.data.Status
 import fansirsqi.xposed.sesame.data.Status.Companion.load
@@ -35,12 +36,19 @@ import fansirsqi.xposed.sesame.hook.internal.SecurityBodyHelper
 import fansirsqi.xposed.sesame.hook.keepalive.SmartSchedulerManager
 import fansirsqi.xposed.sesame.hook.keepalive.SmartSchedulerManager.cleanup
 import fansirsqi.xposed.sesame.hook.keepalive.SmartSchedulerManager.schedule
+import fansirsqi.xposed.sesame.hook.rpc.bridge.MeteredRpcBridge
 import fansirsqi.xposed.sesame.hook.rpc.bridge.NewRpcBridge
 import fansirsqi.xposed.sesame.hook.rpc.bridge.OldRpcBridge
+import fansirsqi.xposed.sesame.hook.rpc.bridge.RecordingRpcBridge
+import fansirsqi.xposed.sesame.hook.rpc.bridge.ReplayRpcBridge
 import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcBridge
 import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcVersion
 import fansirsqi.xposed.sesame.hook.rpc.debug.DebugRpc
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.FixedOrRangeIntervalLimit
 import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit.clearIntervalLimit
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit.setDefaultIntervalShared
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit.setGlobalIntervalLimit
+import fansirsqi.xposed.sesame.hook.rpc.metrics.RpcMetrics
 import fansirsqi.xposed.sesame.hook.server.ModuleHttpServerManager.startIfNeeded
 import fansirsqi.xposed.sesame.hook.simple.SimplePageManager.addHandler
 import fansirsqi.xposed.sesame.hook.simple.SimplePageManager.enableWindowMonitoring
@@ -50,9 +58,14 @@ import fansirsqi.xposed.sesame.model.BaseModel.Companion.debugMode
 import fansirsqi.xposed.sesame.model.BaseModel.Companion.destroyData
 import fansirsqi.xposed.sesame.model.BaseModel.Companion.execAtTimeList
 import fansirsqi.xposed.sesame.model.BaseModel.Companion.newRpc
+import fansirsqi.xposed.sesame.model.BaseModel.Companion.recordRpc
+import fansirsqi.xposed.sesame.model.BaseModel.Companion.replayRpcFile
+import fansirsqi.xposed.sesame.model.BaseModel.Companion.rpcGlobalInterval
+import fansirsqi.xposed.sesame.model.BaseModel.Companion.rpcShareDefaultInterval
 import fansirsqi.xposed.sesame.model.BaseModel.Companion.sendHookData
 import fansirsqi.xposed.sesame.model.BaseModel.Companion.sendHookDataUrl
 import fansirsqi.xposed.sesame.model.BaseModel.Companion.wakenAtTimeList
+import fansirsqi.xposed.sesame.model.BaseModel.Companion.wakeupCoalesceSlack
 import fansirsqi.xposed.sesame.model.Model
 import fansirsqi.xposed.sesame.task.MainTask
 import fansirsqi.xposed.sesame.task.MainTask.Companion.newInstance
@@ -678,17 +691,42 @@ class ApplicationHook {
                 if (!Config.isLoaded()) return false
 
                 Notify.start(service!!)
+                SmartSchedulerManager.coalesceSlackMs = wakeupCoalesceSlack.value.toLong()
                 setWakenAtTimeAlarm()
 
                 synchronized(rpcBridgeLock) {
-                    rpcBridge = if (newRpc.value) NewRpcBridge() else OldRpcBridge()
+                    val replayFile = if (BuildConfig.DEBUG) replayRpcFile.value?.trim() else null
+                    val bridge = when {
+                        !replayFile.isNullOrEmpty() -> {
+                            record(TAG, "RPC回放模式：$replayFile")
+                            ReplayRpcBridge(File(replayFile).let { if (it.isAbsolute) it else File(Files.LOG_DIR, replayFile) })
+                        }
+                        newRpc.value -> NewRpcBridge()
+                        else -> OldRpcBridge()
+                    }
+                    rpcBridge = MeteredRpcBridge(
+                        if (recordRpc.value && bridge !is ReplayRpcBridge) {
+                            RecordingRpcBridge(bridge, File(Files.LOG_DIR, RecordingRpcBridge.DEFAULT_FILE_NAME))
+                        } else bridge
+                    )
                     rpcBridge!!.load()
                     rpcVersion = rpcBridge!!.getVersion()
                 }
+                val globalInterval = rpcGlobalInterval.value?.trim()
+                val globalLimit = if (globalInterval.isNullOrEmpty() || globalInterval == "0") null
+                else FixedOrRangeIntervalLimit.parseOrNull(globalInterval, 0, 10000)
+                if (globalLimit == null && !globalInterval.isNullOrEmpty() && globalInterval != "0") {
+                    record(TAG, "全局RPC间隔设置无效[$globalInterval]，已关闭全局限制")
+                }
+                setGlobalIntervalLimit(globalLimit)
+                setDefaultIntervalShared(rpcShareDefaultInterval.value)
 
                 if (newRpc.value && debugMode.value) {
                     HookUtil.hookRpcBridgeExtension(classLoader!!, sendHookData.value, sendHookDataUrl.value)
                     HookUtil.hookDefaultBridgeCallback(classLoader!!)
+                } else if (RpcCapture.captureEnabled) {
+                    // Hook 一经安装无法撤销，关闭调试模式后至少停止抓包
+                    RpcCapture.start(false, null)
                 }
 
                 start(userId)
@@ -696,6 +734,7 @@ class ApplicationHook {
 
                 Model.bootAllModel(classLoader)
                 load(userId)
+                FriendEnergyStats.load(userId)
                 updateDay()
 
                 val successMsg = "Loaded SesameTk " + BuildConfig.VERSION_NAME + "✨"
@@ -736,6 +775,7 @@ class ApplicationHook {
                     stopHandler()
                     destroyData()
                     Status.unload()
+                    FriendEnergyStats.unload()
                     stop()
                     clearIntervalLimit()
                     Config.unload()
@@ -749,6 +789,7 @@ class ApplicationHook {
 
                 synchronized(rpcBridgeLock) {
                     if (rpcBridge != null) {
+                        RpcMetrics.dump(force = true)
                         rpcVersion = null
                         rpcBridge!!.unload()
                         rpcBridge = null
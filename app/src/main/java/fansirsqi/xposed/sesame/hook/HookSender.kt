@@ -2,60 +2,193 @@ package fansirsqi.xposed.sesame.hook
 
 import fansirsqi.xposed.sesame.util.GlobalThreadPools
 import fansirsqi.xposed.sesame.util.Log
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.withTimeoutOrNull
+import okhttp3.ConnectionPool
 import okhttp3.MediaType
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.OkHttpClient
 import okhttp3.Request
-import okhttp3.RequestBody
 import okhttp3.RequestBody.Companion.toRequestBody
 import org.json.JSONObject
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPOutputStream
 
 /**
  * 用于发送Hook数据到DEBUG服务器
+ *
+ * 抓包数据先进入有界队列，由单个后台协程按数量或时间攒批，以 gzip 压缩的 NDJSON（每行一条记录）
+ * 通过同一个长连接发送到 `<上报地址>/batch`（serve-debug 的批量接口）：
+ * 1. 队列满时丢弃最旧的记录并计数，抓包线程永远不会因为调试服务器慢或不可用而阻塞
+ * 2. 网络异常或 5xx 时按指数退避重试同一批，超过 [MAX_ATTEMPTS] 次后丢弃该批；4xx 不重试，直接丢弃
+ * 3. 调试服务器不可用与恢复时各输出一条日志，不再逐条报错
+ *
  * @author Byseven
  * @date 2025/1/17
- * @apiNote 修复 R8 编译器崩溃问题，改为协程同步调用
  */
 object HookSender {
     private const val TAG = "HookSender"
+    private const val CAPACITY = 2000
+    private const val BATCH_SIZE = 100
+    private const val FLUSH_INTERVAL_MS = 1000L
+    private const val MAX_ATTEMPTS = 5
+    private const val MIN_BACKOFF_MS = 1000L
+    private const val MAX_BACKOFF_MS = 30_000L
+
+    private val client = OkHttpClient.Builder()
+        .connectionPool(ConnectionPool(1, 5, TimeUnit.MINUTES))
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .writeTimeout(10, TimeUnit.SECONDS)
+        .readTimeout(10, TimeUnit.SECONDS)
+        .build()
+
+    private val NDJSON_MEDIA_TYPE: MediaType = "application/x-ndjson; charset=utf-8".toMediaType()
+
+    private val queue = ArrayDeque<String>()
+
+    // 队列从空变为非空、或攒够一批时唤醒发送协程
+    private val signal = Channel<Unit>(Channel.CONFLATED)
 
     @Volatile
-    var sendFlag: Boolean = true
+    private var targetUrl: String? = null
 
-    private val client = OkHttpClient()
+    @Volatile
+    private var sender: Job? = null
 
-    private val JSON_MEDIA_TYPE: MediaType? = "application/json; charset=utf-8".toMediaType()
+    // 调试服务器当前是否可用，用于只在状态变化时输出日志
+    @Volatile
+    private var available = true
+
+    private val sentCount = AtomicLong()
+    private val droppedCount = AtomicLong()
+    private val failedBatches = AtomicLong()
 
     fun sendHookData(jo: JSONObject, url: String) {
-        // 使用刚刚修复的 GlobalThreadPools 启动协程
-        // 这样就不需要使用 object : Callback (匿名内部类)，从而绕过 R8 的 Bug
-        GlobalThreadPools.execute {
-            try {
-                val body: RequestBody = jo.toString().toRequestBody(JSON_MEDIA_TYPE)
-                val request = Request.Builder()
-                    .url(url)
-                    .post(body)
-                    .build()
-
-                // 【关键修改】将 enqueue 改为 execute (同步执行)
-                // 协程本身就在后台线程，所以这里可以直接阻塞
-                client.newCall(request).execute().use { response ->
-                    // use 函数会自动关闭 response body，防止内存泄漏
-                    if (!response.isSuccessful) {
-                        Log.error(TAG, "Failed to receive response code: ${response.code}")
-                    } else {
-                        // 如果需要成功日志，可以在这里打印
-                        // Log.runtime(TAG, "Sent successfully")
+        val line = jo.toString()
+        targetUrl = url
+        val size = synchronized(queue) {
+            if (queue.size >= CAPACITY) {
+                queue.removeFirst()
+                droppedCount.incrementAndGet()
+            }
+            queue.addLast(line)
+            queue.size
+        }
+        if (size == 1 || size >= BATCH_SIZE) signal.trySend(Unit)
+        if (sender?.isActive != true) ensureSender()
+    }
+
+    /**
+     * 已发送、丢弃的记录数与失败的批次数
+     */
+    fun stats(): Map<String, Long> = mapOf(
+        "sent" to sentCount.get(),
+        "dropped" to droppedCount.get(),
+        "failedBatches" to failedBatches.get()
+    )
+
+    @Synchronized
+    private fun ensureSender() {
+        if (sender?.isActive == true) return
+        sender = GlobalThreadPools.execute(Dispatchers.IO) {
+            while (true) {
+                signal.receive()
+                // 攒批：未满一批时最多再等一个刷新周期
+                if (pendingCount() < BATCH_SIZE) {
+                    withTimeoutOrNull(FLUSH_INTERVAL_MS) {
+                        while (pendingCount() < BATCH_SIZE) signal.receive()
                     }
                 }
-            } catch (e: Exception) {
-                // 对应原来的 onFailure
-                if (sendFlag) { // 避免过多冗余失败记录
-                    Log.error(TAG, "Failed to send hook data: ${e.message}")
-                    // 如果网络不通，后续可能都不通，暂停报错
-                    sendFlag = false
+                while (true) {
+                    val batch = takeBatch()
+                    if (batch.isEmpty()) break
+                    sendWithRetry(batch)
+                }
+            }
+        }
+    }
+
+    private fun pendingCount(): Int = synchronized(queue) { queue.size }
+
+    private fun takeBatch(): List<String> = synchronized(queue) {
+        val count = minOf(BATCH_SIZE, queue.size)
+        List(count) { queue.removeFirst() }
+    }
+
+    private suspend fun sendWithRetry(batch: List<String>) {
+        var backoff = MIN_BACKOFF_MS
+        for (attempt in 1..MAX_ATTEMPTS) {
+            val url = targetUrl ?: return
+            val result = post(batchUrl(url), batch)
+            if (result is PostResult.Ok) {
+                sentCount.addAndGet(batch.size.toLong())
+                if (!available) {
+                    available = true
+                    Log.record(TAG, "调试服务器已恢复，累计丢弃 ${droppedCount.get()} 条")
                 }
+                return
+            }
+            result as PostResult.Failed
+            if (available) {
+                available = false
+                Log.error(TAG, "Failed to send hook data: ${result.reason}" + if (result.retryable) "，将退避重试" else "")
+            }
+            // 4xx 等请求本身的问题重发也不会成功，直接丢弃该批
+            if (!result.retryable) break
+            if (attempt < MAX_ATTEMPTS) {
+                delay(backoff)
+                backoff = (backoff * 2).coerceAtMost(MAX_BACKOFF_MS)
+            }
+        }
+        failedBatches.incrementAndGet()
+        droppedCount.addAndGet(batch.size.toLong())
+    }
+
+    /**
+     * 批量上报地址：在配置的单条上报地址（如 http://host:9527/hook）后追加 /batch
+     */
+    private fun batchUrl(url: String): String = url.trimEnd('/') + "/batch"
+
+    private sealed class PostResult {
+        object Ok : PostResult()
+
+        /**
+         * @param retryable 只有网络异常与 5xx 可以重试
+         */
+        class Failed(val reason: String, val retryable: Boolean) : PostResult()
+    }
+
+    private fun post(url: String, batch: List<String>): PostResult {
+        return try {
+            val request = Request.Builder()
+                .url(url)
+                .header("Content-Encoding", "gzip")
+                .post(gzip(batch).toRequestBody(NDJSON_MEDIA_TYPE))
+                .build()
+            client.newCall(request).execute().use { response ->
+                if (response.isSuccessful) PostResult.Ok else PostResult.Failed("HTTP ${response.code}", response.code >= 500)
+            }
+        } catch (e: IOException) {
+            PostResult.Failed(e.message ?: e.javaClass.simpleName, true)
+        } catch (e: Exception) {
+            PostResult.Failed(e.message ?: e.javaClass.simpleName, false)
+        }
+    }
+
+    private fun gzip(lines: List<String>): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        GZIPOutputStream(bytes).bufferedWriter(Charsets.UTF_8).use { writer ->
+            for (line in lines) {
+                writer.write(line)
+                writer.write("\n")
             }
         }
+        return bytes.toByteArray()
     }
-}
\ No newline at end of file
+}
@@ -7,23 +7,30 @@ import fansirsqi.xposed.sesame.data.General
 import fansirsqi.xposed.sesame.entity.UserEntity
 import fansirsqi.xposed.sesame.util.Log
 import fansirsqi.xposed.sesame.util.maps.UserMap
-import org.json.JSONObject
-import java.util.concurrent.ConcurrentHashMap
 
 
 object HookUtil {
     private const val TAG = "HookUtil"
 
-    val rpcHookMap = ConcurrentHashMap<Any, Array<Any?>>()
-
     private var lastToastTime = 0L
 
     private var microContextCache: Any? = null
 
+    // Hook 只安装一次，重复加载时只更新抓包设置
+    @Volatile
+    private var rpcBridgeExtensionHooked = false
+
+    @Volatile
+    private var defaultBridgeCallbackHooked = false
+
     /**
      * Hook RpcBridgeExtension.rpc 方法，记录请求信息
+     *
+     * @param isdebug 是否转发抓包数据到调试服务器
      */
     fun hookRpcBridgeExtension(classLoader: ClassLoader, isdebug: Boolean, debugUrl: String) {
+        RpcCapture.start(true, if (isdebug) debugUrl else null)
+        if (rpcBridgeExtensionHooked) return
         try {
             val className = "com.alibaba.ariver.commonability.network.rpc.RpcBridgeExtension"
             val jsonClassName = General.JSON_OBJECT_NAME // 替换为你项目中的实际 JSON 类名
@@ -58,73 +65,20 @@ object HookUtil {
                     override fun beforeHookedMethod(param: MethodHookParam) {
                         val args = param.args
                         if (args.size > 15) {// 参数校验
-                            // 1. 获取方法名
                             val methodName = args[0] as? String ?: return
-                            // 2. 获取参数 (这是一个反射得到的 com.alibaba.fastjson.JSONObject 对象)
-                            val rawParams = args[4]
-
-                            // 3. 这里的 rawParams 是阿里内部的 JSON 对象，不是 org.json.JSONObject
-                            // 需要转换一下。最稳妥的方法是 toString() 然后再转 org.json.JSONObject
-                            if (rawParams != null) {
-                                val jsonString = rawParams.toString()
-                                val jsonObject = JSONObject(jsonString)
-                                // ✅✅✅ 关键：把拦截到的数据扔给 VIPHook 进行分发
-                                TokenHooker.handleRpc(methodName, jsonObject)
-                            }
-
-                            val callback = args[15]
-                            val recordArray = arrayOfNulls<Any>(4).apply {
-                                this[0] = System.currentTimeMillis()
-                                this[1] = args[0] ?: "null" // method name
-                                this[2] = args[4] ?: "null" // params
-                            }
-                            rpcHookMap[callback] = recordArray
+                            // 未命中过滤的方法在 RpcCapture 内直接返回，不做序列化
+                            RpcCapture.onRequest(args[15], methodName, args[4])
                         }
                     }
 
                     override fun afterHookedMethod(param: MethodHookParam) {
                         val args = param.args
                         if (args.size > 15) {
-                            val callback = args[15]
-                            val recordArray = rpcHookMap.remove(callback)
-                            recordArray?.let {
-                                try {
-                                    val time = it[0]
-                                    val method = it.getOrNull(1)
-                                    val params = it.getOrNull(2)
-                                    val data = it.getOrNull(3)
-
-                                    val dataIsNullValue: Boolean = data == null
-                                    if (!dataIsNullValue) {
-
-                                        val res = JSONObject().apply {
-                                            put("TimeStamp", time)
-                                            put("Method", method)
-                                            put("Params", params)
-                                            put("Data", data)
-                                        }
-
-                                        val prettyRecord = """
-{
-"TimeStamp": $time,
-"Method": "$method",
-"Params": $params,
-"Data": $data
-}
-""".trimIndent()
-
-                                        if (isdebug) {
-                                            HookSender.sendHookData(res, debugUrl)
-                                        }
-                                        Log.capture(prettyRecord)
-                                    }
-                                } catch (e: Exception) {
-                                    Log.record(TAG, "JSON 构建失败: ${e.message}")
-                                }
-                            }
+                            RpcCapture.onComplete(args[15])
                         }
                     }
                 })
+            rpcBridgeExtensionHooked = true
             Log.record(TAG, "Hook RpcBridgeExtension#rpc 成功")
         } catch (t: Throwable) {
             Log.printStackTrace(TAG, "Hook RpcBridgeExtension#rpc 失败", t)
@@ -166,19 +120,19 @@ object HookUtil {
      * Hook DefaultBridgeCallback.sendJSONResponse 方法，记录响应内容
      */
     fun hookDefaultBridgeCallback(classLoader: ClassLoader) {
+        if (defaultBridgeCallbackHooked) return
         try {
             val className = "com.alibaba.ariver.engine.common.bridge.internal.DefaultBridgeCallback"
             val jsonClassName = General.JSON_OBJECT_NAME
             val jsonClass = Class.forName(jsonClassName, false, classLoader)
             XposedHelpers.findAndHookMethod(className, classLoader, "sendJSONResponse", jsonClass, object : XC_MethodHook() {
                 override fun beforeHookedMethod(param: MethodHookParam) {
-                    val callback = param.thisObject
-                    val recordArray = rpcHookMap[callback]
-                    if (recordArray != null && param.args.isNotEmpty()) {
-                        recordArray[3] = param.args[0].toString()
+                    if (param.args.isNotEmpty()) {
+                        RpcCapture.onResponse(param.thisObject, param.args[0])
                     }
                 }
             })
+            defaultBridgeCallbackHooked = true
             Log.record(TAG, "Hook DefaultBridgeCallback#sendJSONResponse 成功")
         } catch (t: Throwable) {
             Log.printStackTrace(TAG, "Hook DefaultBridgeCallback#sendJSONResponse 失败", t)
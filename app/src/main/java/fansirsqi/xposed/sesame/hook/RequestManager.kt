@@ -4,12 +4,17 @@ import android.Manifest
 import androidx.annotation.RequiresPermission
 import fansirsqi.xposed.sesame.entity.RpcEntity
 import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcBridge
+import fansirsqi.xposed.sesame.hook.rpc.bridge.requestObjectSuspend
+import fansirsqi.xposed.sesame.hook.rpc.bridge.requestStringSuspend
 import fansirsqi.xposed.sesame.model.BaseModel
 import fansirsqi.xposed.sesame.util.CoroutineUtils
 import fansirsqi.xposed.sesame.util.Log
 import fansirsqi.xposed.sesame.util.NetworkUtils
 import fansirsqi.xposed.sesame.util.Notify
 import fansirsqi.xposed.sesame.util.TimeUtil
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.delay
+import org.json.JSONObject
 import java.util.concurrent.atomic.AtomicInteger
 
 /**
@@ -25,8 +30,10 @@ object RequestManager {
     /**
      * 核心执行函数 (内联优化)
      * 流程：离线检查 -> 获取 Bridge -> 执行请求 -> 结果校验 -> 错误计数/重置
+     *
+     * @param wait 等待网络/Bridge 的方式：阻塞 API 传入 sleepCompat，挂起 API 传入 delay
      */
-    private inline fun executeRpc(methodLog: String?, block: (RpcBridge) -> String?): String {
+    private inline fun executeRpc(methodLog: String?, wait: (Long) -> Unit, block: (RpcBridge) -> String?): String {
         // 1. 【前置检查】如果已经离线，直接中断并尝试恢复
         if (ApplicationHook.offline) {
             Log.record(TAG, "当前处于离线状态，拦截请求: $methodLog")
@@ -36,7 +43,7 @@ object RequestManager {
 
         // 2. 获取 Bridge (包含网络检查)
         // 如果这里获取失败，也视为一次错误
-        val bridge = getRpcBridge()
+        val bridge = getRpcBridge(wait)
         if (bridge == null) {
             handleFailure("Network/Bridge Unavailable", "网络或Bridge不可用")
             return ""
@@ -45,6 +52,8 @@ object RequestManager {
         // 3. 执行请求
         val result = try {
             block(bridge)
+        } catch (e: CancellationException) {
+            throw e // 协程取消不计入失败
         } catch (e: Throwable) {
             Log.printStackTrace(TAG, "RPC 执行异常: $methodLog", e)
             null // 异常视为 null，触发失败逻辑
@@ -65,6 +74,20 @@ object RequestManager {
         }
     }
 
+    /**
+     * 阻塞版本的执行入口，供 Java 调用方使用
+     */
+    private inline fun executeRpc(methodLog: String?, block: (RpcBridge) -> String?): String {
+        return executeRpc(methodLog, { CoroutineUtils.sleepCompat(it) }, block)
+    }
+
+    /**
+     * 挂起版本的执行入口，等待期间不占用调度器线程
+     */
+    private suspend inline fun executeRpcSuspend(methodLog: String?, block: (RpcBridge) -> String?): String {
+        return executeRpc(methodLog, { delay(it) }, block)
+    }
+
     /**
      * 处理失败逻辑：计数、报警、熔断
      */
@@ -109,10 +132,10 @@ object RequestManager {
      * 获取 RpcBridge 实例
      */
     @RequiresPermission(Manifest.permission.ACCESS_NETWORK_STATE)
-    private fun getRpcBridge(): RpcBridge? {
+    private inline fun getRpcBridge(wait: (Long) -> Unit): RpcBridge? {
         if (!NetworkUtils.isNetworkAvailable()) {
             Log.record(TAG, "网络不可用，尝试等待 5秒...")
-            CoroutineUtils.sleepCompat(5000)
+            wait(5000)
             if (!NetworkUtils.isNetworkAvailable()) {
                 return null
             }
@@ -121,7 +144,7 @@ object RequestManager {
         var bridge = ApplicationHook.rpcBridge
         if (bridge == null) {
             Log.record(TAG, "RpcBridge 未初始化，尝试等待 5秒...")
-            CoroutineUtils.sleepCompat(5000)
+            wait(5000)
             bridge = ApplicationHook.rpcBridge
         }
 
@@ -191,6 +214,17 @@ object RequestManager {
         }
     }
 
+    /**
+     * 请求并返回响应的 JSON 视图，直接由宿主解析好的对象构建，调用方无需再解析字符串
+     *
+     * @return 请求失败或响应为空时为 null
+     */
+    @JvmStatic
+    fun requestJson(rpcEntity: RpcEntity, tryCount: Int, retryInterval: Int): JSONObject? {
+        val response = requestString(rpcEntity, tryCount, retryInterval)
+        return if (response.isEmpty()) null else rpcEntity.responseJson
+    }
+
     @JvmStatic
     fun requestObject(rpcEntity: RpcEntity?, tryCount: Int, retryInterval: Int) {
         if (rpcEntity == null) return
@@ -200,7 +234,7 @@ object RequestManager {
             return
         }
 
-        val bridge = getRpcBridge()
+        val bridge = getRpcBridge { CoroutineUtils.sleepCompat(it) }
         if (bridge == null) {
             handleFailure("requestObject", "Bridge Unavailable")
             return
@@ -216,4 +250,88 @@ object RequestManager {
             handleFailure(rpcEntity.methodName ?: "Unknown", "Exception")
         }
     }
-}
\ No newline at end of file
+
+    // ================== 挂起 API (协程调用方使用) ==================
+
+    suspend fun requestStringSuspend(rpcEntity: RpcEntity): String {
+        return executeRpcSuspend(rpcEntity.methodName) { bridge ->
+            bridge.requestStringSuspend(rpcEntity, 3, 1200)
+        }
+    }
+
+    suspend fun requestStringSuspend(rpcEntity: RpcEntity, tryCount: Int, retryInterval: Int): String {
+        return executeRpcSuspend(rpcEntity.methodName) { bridge ->
+            bridge.requestStringSuspend(rpcEntity, tryCount, retryInterval)
+        }
+    }
+
+    suspend fun requestStringSuspend(method: String?, data: String?): String {
+        return executeRpcSuspend(method) { bridge ->
+            bridge.requestStringSuspend(RpcEntity(method, data), 3, 1500)
+        }
+    }
+
+    suspend fun requestStringSuspend(method: String?, data: String?, relation: String?): String {
+        return executeRpcSuspend(method) { bridge ->
+            bridge.requestStringSuspend(RpcEntity(method, data, relation), 3, 1500)
+        }
+    }
+
+    suspend fun requestStringSuspend(
+        method: String?,
+        data: String?,
+        appName: String?,
+        methodName: String?,
+        facadeName: String?
+    ): String {
+        return executeRpcSuspend(method) { bridge ->
+            bridge.requestStringSuspend(RpcEntity(method, data, null, appName, methodName, facadeName), 3, -1)
+        }
+    }
+
+    suspend fun requestStringSuspend(method: String?, data: String?, tryCount: Int, retryInterval: Int): String {
+        return executeRpcSuspend(method) { bridge ->
+            bridge.requestStringSuspend(RpcEntity(method, data), tryCount, retryInterval)
+        }
+    }
+
+    suspend fun requestStringSuspend(
+        method: String?,
+        data: String?,
+        relation: String?,
+        tryCount: Int,
+        retryInterval: Int
+    ): String {
+        return executeRpcSuspend(method) { bridge ->
+            bridge.requestStringSuspend(RpcEntity(method, data, relation), tryCount, retryInterval)
+        }
+    }
+
+    suspend fun requestJsonSuspend(rpcEntity: RpcEntity, tryCount: Int, retryInterval: Int): JSONObject? {
+        val response = requestStringSuspend(rpcEntity, tryCount, retryInterval)
+        return if (response.isEmpty()) null else rpcEntity.responseJson
+    }
+
+    suspend fun requestObjectSuspend(rpcEntity: RpcEntity, tryCount: Int, retryInterval: Int): RpcEntity? {
+        if (ApplicationHook.offline) {
+            handleOfflineRecovery()
+            return null
+        }
+
+        val bridge = getRpcBridge { delay(it) }
+        if (bridge == null) {
+            handleFailure("requestObject", "Bridge Unavailable")
+            return null
+        }
+
+        return try {
+            bridge.requestObjectSuspend(rpcEntity, tryCount, retryInterval).also { errorCount.set(0) }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Throwable) {
+            Log.printStackTrace(TAG, "requestObject 异常: ${rpcEntity.methodName}", e)
+            handleFailure(rpcEntity.methodName ?: "Unknown", "Exception")
+            null
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package fansirsqi.xposed.sesame.hook
+
+import fansirsqi.xposed.sesame.util.GlobalThreadPools
+import fansirsqi.xposed.sesame.util.Log
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import org.json.JSONObject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 宿主 RPC 抓包管线
+ *
+ * Hook 运行在宿主每一次 RPC 的调用线程上（包括宿主自己的请求），因此这里只做最少的事：
+ * 1. 先按方法名过滤：未开启抓包且没有 [TokenHooker] 处理器的方法直接返回，不做任何序列化
+ * 2. 命中的请求在 RPC 线程上把参数与响应转成字符串快照（宿主的 fastjson 对象可能被宿主继续修改，
+ *    且不是线程安全的，不能留到后台线程再读），放入有界队列，队列满时丢弃并计数
+ * 3. 后台消费者批量取出，再做 JSON 解析、写抓包日志、转发调试服务器和分发给 [TokenHooker]
+ */
+object RpcCapture {
+    private const val TAG = "RpcCapture"
+    private const val CAPACITY = 1024
+    private const val BATCH_SIZE = 64
+
+    private class Record(val time: Long, val method: String, val params: String?, val capture: Boolean) {
+        @Volatile
+        var response: String? = null
+    }
+
+    /**
+     * 是否记录抓包日志，关闭时只为 [TokenHooker] 感兴趣的方法入队
+     */
+    @Volatile
+    var captureEnabled = false
+        private set
+
+    @Volatile
+    private var debugUrl: String? = null
+
+    // callback -> 等待响应的请求
+    private val pending = ConcurrentHashMap<Any, Record>()
+    private val queue = Channel<Record>(CAPACITY)
+    private val dropped = AtomicLong()
+
+    @Volatile
+    private var consumer: Job? = null
+
+    /**
+     * @param capture 是否记录抓包日志
+     * @param sendUrl 转发抓包数据的调试服务器地址，为 null 时不转发
+     */
+    fun start(capture: Boolean, sendUrl: String?) {
+        captureEnabled = capture
+        debugUrl = sendUrl
+        ensureConsumer()
+    }
+
+    /**
+     * 请求发出前调用（宿主 RPC 线程）
+     */
+    fun onRequest(callback: Any?, method: String, params: Any?) {
+        val capture = captureEnabled
+        if (!capture && !TokenHooker.hasHandler(method)) return
+        val record = Record(System.currentTimeMillis(), method, snapshot(params), capture)
+        if (capture && callback != null) {
+            // 等响应回来后一并入队
+            pending[callback] = record
+        } else {
+            offer(record)
+        }
+    }
+
+    /**
+     * 收到响应时调用（宿主 RPC 线程），只为等待中的请求做快照
+     */
+    fun onResponse(callback: Any?, response: Any?) {
+        if (callback == null) return
+        val record = pending[callback] ?: return
+        record.response = snapshot(response)
+    }
+
+    private fun snapshot(value: Any?): String? {
+        return try {
+            value?.toString()
+        } catch (_: Exception) {
+            null
+        }
+    }
+
+    /**
+     * 请求结束时调用（宿主 RPC 线程）
+     */
+    fun onComplete(callback: Any?) {
+        if (callback == null) return
+        pending.remove(callback)?.let { offer(it) }
+    }
+
+    private fun offer(record: Record) {
+        if (!queue.trySend(record).isSuccess) {
+            dropped.incrementAndGet()
+        }
+        if (consumer?.isActive != true) ensureConsumer()
+    }
+
+    @Synchronized
+    private fun ensureConsumer() {
+        if (consumer?.isActive == true) return
+        consumer = GlobalThreadPools.execute(Dispatchers.IO) {
+            val batch = ArrayList<Record>(BATCH_SIZE)
+            for (first in queue) {
+                batch.add(first)
+                while (batch.size < BATCH_SIZE) {
+                    batch.add(queue.tryReceive().getOrNull() ?: break)
+                }
+                process(batch)
+                batch.clear()
+            }
+        }
+    }
+
+    private fun process(batch: List<Record>) {
+        val lost = dropped.getAndSet(0)
+        if (lost > 0) {
+            Log.record(TAG, "抓包队列已满，丢弃 $lost 条")
+        }
+        val log = StringBuilder()
+        for (record in batch) {
+            try {
+                val params = record.params
+                if (params != null && TokenHooker.hasHandler(record.method)) {
+                    TokenHooker.handleRpc(record.method, JSONObject(params))
+                }
+                val data = record.response ?: continue
+                if (!record.capture) continue
+                val url = debugUrl
+                if (url != null) {
+                    HookSender.sendHookData(JSONObject().apply {
+                        put("TimeStamp", record.time)
+                        put("Method", record.method)
+                        put("Params", params ?: "null")
+                        put("Data", data)
+                    }, url)
+                }
+                if (log.isNotEmpty()) log.append('\n')
+                log.append("{\n\"TimeStamp\": ").append(record.time)
+                    .append(",\n\"Method\": \"").append(record.method)
+                    .append("\",\n\"Params\": ").append(params)
+                    .append(",\n\"Data\": ").append(data)
+                    .append("\n}")
+            } catch (e: Exception) {
+                Log.record(TAG, "抓包记录处理失败: ${e.message}")
+            }
+        }
+        if (log.isNotEmpty()) {
+            Log.capture(log.toString())
+        }
+    }
+}
@@ -4,6 +4,7 @@ import fansirsqi.xposed.sesame.util.Log
 import fansirsqi.xposed.sesame.util.maps.IdMapManager
 import fansirsqi.xposed.sesame.util.maps.VipDataIdMap
 import org.json.JSONObject
+import java.util.concurrent.ConcurrentHashMap
 
 object TokenHooker {
 
@@ -13,7 +14,7 @@ object TokenHooker {
      * 方法名 -> handler
      * 注意：这里不需要改，Handler 仍然只接收 JSONObject，UserId 通过闭包在 start 中传入
      */
-    private val rpcHandlerMap: MutableMap<String, (JSONObject) -> Unit> = mutableMapOf()
+    private val rpcHandlerMap: MutableMap<String, (JSONObject) -> Unit> = ConcurrentHashMap()
 
     /**
      * 初始化监听
@@ -39,6 +40,11 @@ object TokenHooker {
         rpcHandlerMap[methodName] = handler
     }
 
+    /**
+     * 是否有该方法的 handler，在宿主 RPC 线程上调用，只做一次查表
+     */
+    fun hasHandler(method: String): Boolean = rpcHandlerMap.containsKey(method)
+
     /**
      * 调用 handler
      * HookUtil 调用此方法时，不需要传 userId，因为它已经被 start 方法“记住”了
@@ -1,11 +1,21 @@
 package fansirsqi.xposed.sesame.hook.keepalive
 
 import android.annotation.SuppressLint
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.BroadcastReceiver
 import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.Build
 import android.os.PowerManager
+import android.os.SystemClock
+import androidx.core.content.ContextCompat
+import fansirsqi.xposed.sesame.data.General
 import fansirsqi.xposed.sesame.util.Log
 import fansirsqi.xposed.sesame.util.TimeUtil
 import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
@@ -15,20 +25,47 @@ import kotlinx.coroutines.delay
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 /**
- * 协程调度器 - 基于 Coroutines + WakeLock
+ * 协程调度器 - 基于 Coroutines + AlarmManager + 限时 WakeLock
  *
  * 核心思想：
  * 1. 抛弃 AlarmManager 的广播回调地狱，回归线性代码。
- * 2. 使用 WakeLock 确保在 delay 期间 CPU 保持运行（解决 Doze 导致的时间停滞）。
- * 3. 使用协程结构化并发管理任务。
+ * 2. 长时间等待不持锁：设备可以正常休眠，由精确闹钟在截止前 [WAKE_WINDOW_MS] 唤醒。
+ * 3. 只在截止前的短窗口内持有 WakeLock，保证最后一段 delay 不会被 Doze 拉长。
+ * 4. 截止时间相差不超过 [coalesceSlackMs] 的任务共用一次唤醒，整个调度器只挂一个闹钟。
+ * 5. 使用协程结构化并发管理任务，并按任务名统计持锁时长。
+ *
+ * 没有精确闹钟权限时退回整段持锁等待，保证任务按时执行。
  */
 object SmartSchedulerManager {
     private const val TAG = "SmartScheduler"
     private const val WAKELOCK_TAG = "Sesame:SchedulerLock"
+    private const val ALARM_WAKELOCK_TAG = "Sesame:SchedulerAlarm"
+    private const val ACTION_WAKEUP = "com.eg.android.AlipayGphone.sesame.scheduler.wakeup"
+    private const val WAKEUP_REQUEST_CODE = 12347
+
+    /** 截止前开始持锁的窗口 */
+    private const val WAKE_WINDOW_MS = 60_000L
+
+    /** 持锁统计最多区分的任务名数量，超出的归入“其他” */
+    private const val MAX_STATS_ENTRIES = 128
+
+    /** 闹钟触发后，任务协程接管之前的过渡持锁时间 */
+    private const val ALARM_HANDOFF_MS = 10_000L
+
+    /**
+     * 唤醒合并窗口：闹钟触发时，持锁窗口在此范围内开始的任务一并唤醒
+     */
+    @Volatile
+    var coalesceSlackMs: Long = 60_000L
+        set(value) {
+            field = value.coerceAtLeast(0L)
+        }
 
     // 独立的协程作用域，使用 SupervisorJob 确保单个任务崩溃不影响其他任务
     // 改为可重新创建
@@ -44,23 +81,51 @@ object SmartSchedulerManager {
     private val taskMap = ConcurrentHashMap<Int, Job>()
     // 命名任务映射，用于自动替换同名任务，防止重复调度逻辑堆积
     private val namedTasks = ConcurrentHashMap<String, Int>()
+    // 任务ID -> 计划执行时间
+    private val taskDeadlines = ConcurrentHashMap<Int, Long>()
     private val taskIdGenerator = AtomicInteger(0)
 
+    /**
+     * 等待闹钟唤醒的任务
+     * @param windowStart 开始持锁的时间点
+     */
+    private class PendingWakeup(val windowStart: Long) {
+        val armed = CompletableDeferred<Unit>()
+    }
+
+    private val pendingWakeups = ConcurrentHashMap<Int, PendingWakeup>()
+
+    // 已设置的闹钟触发时间，0 表示没有闹钟
+    private var alarmAt = 0L
+    private val alarmLock = Any()
+
+    // 按任务名累计的持锁时长（毫秒）
+    private val wakeLockHeldMillis = ConcurrentHashMap<String, AtomicLong>()
+
     @SuppressLint("StaticFieldLeak")
     private var powerManager: PowerManager? = null
 
+    @SuppressLint("StaticFieldLeak")
+    private var appContext: Context? = null
+    private var alarmManager: AlarmManager? = null
+    private var wakeupIntent: PendingIntent? = null
+    private var wakeupReceiver: BroadcastReceiver? = null
+
     // 初始化检查
     @Volatile
     private var isInitialized = false
 
     fun initialize(context: Context) {
         // 即使已初始化，如果 scope 被取消了也要允许恢复
-        if (isInitialized && _scope?.isActive == true) return
+        if (isInitialized && _scope?.isActive == true && wakeupReceiver != null) return
         try {
             val appContext = context.applicationContext ?: context
+            this.appContext = appContext
             powerManager = appContext.getSystemService(Context.POWER_SERVICE) as PowerManager
+            alarmManager = appContext.getSystemService(Context.ALARM_SERVICE) as? AlarmManager
+            registerWakeupReceiver(appContext)
             isInitialized = true
-            Log.record(TAG, "✅ 调度器已初始化 (Coroutines + WakeLock)")
+            Log.record(TAG, "✅ 调度器已初始化 (Coroutines + AlarmManager + WakeLock)")
         } catch (e: Exception) {
             Log.error(TAG, "初始化失败: ${e.message}")
         }
@@ -69,7 +134,7 @@ object SmartSchedulerManager {
     /**
      * 调度任务
      * @param delayMillis 延迟毫秒数
-     * @param taskName 任务名称（用于日志和覆盖旧任务）
+     * @param taskName 任务名称（用于日志、持锁统计和覆盖旧任务）
      * @param block 要执行的代码块
      * @return 任务ID，可用于取消
      */
@@ -88,16 +153,25 @@ object SmartSchedulerManager {
         namedTasks[taskName] = taskId
 
         val finalDelay = if (delayMillis < 0) 0L else delayMillis
+        val deadline = System.currentTimeMillis() + finalDelay
 
+        taskDeadlines[taskId] = deadline
         // 启动协程
         val job = scope.launch {
-            val wakeLock = acquireWakeLock(finalDelay + 5000)
             Log.record(TAG, "⏳ 任务调度: [$taskName] | ID:$taskId | 延迟: ${TimeUtil.formatDuration(finalDelay)}")
             Log.record( ">".repeat(40))
 
+            var wakeLock: PowerManager.WakeLock? = null
+            var heldSince = 0L
             try {
-                // 核心：在 WakeLock 保护下进行挂起
-                delay(finalDelay)
+                // 阶段一：不持锁等待，直到进入截止前的窗口
+                awaitWakeWindow(taskId, deadline)
+
+                // 阶段二：在 WakeLock 保护下等待剩余的时间
+                val remaining = (deadline - System.currentTimeMillis()).coerceAtLeast(0L)
+                wakeLock = acquireWakeLock(remaining + 5000)
+                heldSince = SystemClock.elapsedRealtime()
+                delay(remaining)
 
                 if (isActive) {
                     Log.record(TAG, "▶️ 开始执行: [$taskName] | ID:$taskId")
@@ -113,9 +187,13 @@ object SmartSchedulerManager {
             } catch (e: CancellationException) {
                 Log.record(TAG, "🚫 任务已取消: [$taskName] | ID:$taskId")
             } finally {
-                // 释放锁和清理 Map
+                // 释放锁、记录持锁时长并清理 Map
                 releaseWakeLock(wakeLock)
+                if (heldSince > 0) {
+                    recordWakeLockHeld(taskName, SystemClock.elapsedRealtime() - heldSince)
+                }
                 taskMap.remove(taskId)
+                taskDeadlines.remove(taskId)
                 if (namedTasks[taskName] == taskId) {
                     namedTasks.remove(taskName)
                 }
@@ -126,12 +204,119 @@ object SmartSchedulerManager {
         return taskId
     }
 
+    /**
+     * 不持锁等待到 [deadline] 前的持锁窗口
+     *
+     * 设备醒着时由协程计时结束等待；设备休眠时 delay 的单调时钟会停走，
+     * 由闹钟广播 [onWakeupAlarm] 提前结束等待。
+     */
+    private suspend fun awaitWakeWindow(taskId: Int, deadline: Long) {
+        val windowStart = deadline - WAKE_WINDOW_MS
+        if (windowStart <= System.currentTimeMillis() || !canScheduleExactAlarms()) return
+
+        val pending = PendingWakeup(windowStart)
+        pendingWakeups[taskId] = pending
+        try {
+            rearmAlarm()
+            withTimeoutOrNull(windowStart - System.currentTimeMillis()) {
+                pending.armed.await()
+            }
+        } finally {
+            pendingWakeups.remove(taskId)
+            rearmAlarm()
+        }
+    }
+
+    /**
+     * 闹钟触发：唤醒持锁窗口已到或在合并窗口内的任务，并为剩余任务重新挂闹钟
+     */
+    private fun onWakeupAlarm() {
+        // 广播返回后系统就会释放唤醒，先持短锁，等任务协程拿到自己的锁
+        acquireWakeLock(ALARM_HANDOFF_MS, ALARM_WAKELOCK_TAG)
+        val limit = System.currentTimeMillis() + coalesceSlackMs
+        var woken = 0
+        for (pending in pendingWakeups.values) {
+            if (pending.windowStart <= limit && pending.armed.complete(Unit)) woken++
+        }
+        Log.record(TAG, "⏰ 闹钟唤醒 | 合并唤醒任务数: $woken")
+        synchronized(alarmLock) { alarmAt = 0L }
+        rearmAlarm()
+    }
+
+    /**
+     * 只保留一个闹钟，指向最早的未唤醒窗口
+     */
+    private fun rearmAlarm() {
+        val am = alarmManager ?: return
+        val pi = wakeupIntent ?: return
+        synchronized(alarmLock) {
+            val earliest = pendingWakeups.values
+                .filter { !it.armed.isCompleted }
+                .minOfOrNull { it.windowStart } ?: 0L
+            if (earliest == alarmAt) return
+            try {
+                if (earliest == 0L) {
+                    am.cancel(pi)
+                } else {
+                    am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, earliest, pi)
+                }
+                alarmAt = earliest
+            } catch (e: Exception) {
+                Log.error(TAG, "设置唤醒闹钟失败: ${e.message}")
+            }
+        }
+    }
+
+    private fun canScheduleExactAlarms(): Boolean {
+        val am = alarmManager ?: return false
+        if (wakeupIntent == null) return false
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S || am.canScheduleExactAlarms()
+    }
+
+    private fun registerWakeupReceiver(context: Context) {
+        if (wakeupReceiver != null) return
+        try {
+            val receiver = object : BroadcastReceiver() {
+                override fun onReceive(context: Context?, intent: Intent?) {
+                    if (intent?.action == ACTION_WAKEUP) onWakeupAlarm()
+                }
+            }
+            ContextCompat.registerReceiver(context, receiver, IntentFilter(ACTION_WAKEUP), ContextCompat.RECEIVER_NOT_EXPORTED)
+            wakeupReceiver = receiver
+            val intent = Intent(ACTION_WAKEUP).setPackage(General.PACKAGE_NAME)
+            wakeupIntent = PendingIntent.getBroadcast(
+                context,
+                WAKEUP_REQUEST_CODE,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
+            )
+        } catch (e: Exception) {
+            wakeupReceiver = null
+            wakeupIntent = null
+            Log.error(TAG, "注册唤醒闹钟失败，退回整段持锁: ${e.message}")
+        }
+    }
+
+    private fun unregisterWakeupReceiver() {
+        try {
+            wakeupIntent?.let { alarmManager?.cancel(it) }
+            wakeupReceiver?.let { appContext?.unregisterReceiver(it) }
+        } catch (_: Exception) {
+            // 忽略未注册异常
+        } finally {
+            wakeupReceiver = null
+            wakeupIntent = null
+            synchronized(alarmLock) { alarmAt = 0L }
+        }
+    }
+
     /**
      * 取消特定任务
      */
     fun cancelTask(taskId: Int) {
         taskMap[taskId]?.cancel()
         taskMap.remove(taskId)
+        taskDeadlines.remove(taskId)
     }
 
     /**
@@ -142,15 +327,41 @@ object SmartSchedulerManager {
         taskMap.values.forEach { it.cancel() }
         taskMap.clear()
         namedTasks.clear()
+        taskDeadlines.clear()
+    }
+
+    /**
+     * 已调度任务的计划执行时间，按任务名
+     */
+    fun getScheduledTasks(): Map<String, Long> {
+        return namedTasks.mapNotNull { (name, taskId) -> taskDeadlines[taskId]?.let { name to it } }.toMap()
+    }
+
+    /**
+     * 当前唤醒闹钟的触发时间，0 表示没有闹钟
+     */
+    fun getAlarmTime(): Long = synchronized(alarmLock) { alarmAt }
+
+    /**
+     * 按任务名统计的累计持锁时长（毫秒）
+     */
+    fun getWakeLockStats(): Map<String, Long> {
+        return wakeLockHeldMillis.mapValues { it.value.get() }
+    }
+
+    private fun recordWakeLockHeld(taskName: String, heldMillis: Long) {
+        val key = if (wakeLockHeldMillis.size >= MAX_STATS_ENTRIES && !wakeLockHeldMillis.containsKey(taskName)) "其他" else taskName
+        val total = wakeLockHeldMillis.getOrPut(key) { AtomicLong() }.addAndGet(heldMillis)
+        Log.debug(TAG, "🔋 [$taskName] 本次持锁 ${TimeUtil.formatDuration(heldMillis)} | 累计 ${TimeUtil.formatDuration(total)}")
     }
 
     /**
      * 申请唤醒锁
      * PARTIAL_WAKE_LOCK: 保持 CPU 运行，屏幕可以关闭，键盘灯可以关闭。
      */
-    private fun acquireWakeLock(timeout: Long): PowerManager.WakeLock? {
+    private fun acquireWakeLock(timeout: Long, tag: String = WAKELOCK_TAG): PowerManager.WakeLock? {
         return try {
-            val wakeLock = powerManager?.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKELOCK_TAG)
+            val wakeLock = powerManager?.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, tag)
             wakeLock?.setReferenceCounted(false)
             // 设置超时时间，防止逻辑 bug 导致永久持锁耗电
             wakeLock?.acquire(timeout)
@@ -175,5 +386,6 @@ object SmartSchedulerManager {
         _scope?.cancel()
         _scope = null
         cancelAll()
+        unregisterWakeupReceiver()
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package fansirsqi.xposed.sesame.hook.rpc.bridge;
+
+import java.util.Map;
+
+import fansirsqi.xposed.sesame.entity.RpcEntity;
+import fansirsqi.xposed.sesame.hook.rpc.metrics.RpcMetrics;
+import fansirsqi.xposed.sesame.util.AdaptiveConcurrencyLimiter;
+
+/**
+ * 带指标统计的 RpcBridge 包装
+ * <p>
+ * 每次 {@link #attemptRequest} 的耗时、结果、错误码与限流情况上报到 {@link RpcMetrics}，
+ * 成功尝试的耗时同时上报给 {@link AdaptiveConcurrencyLimiter}，其余行为全部委托给实际的实现。
+ * 阻塞与挂起两种重试循环都经过 attemptRequest，统计口径一致，且不含间隔限制的排队时间。
+ * </p>
+ */
+public class MeteredRpcBridge implements RpcBridge {
+    private final RpcBridge delegate;
+
+    public MeteredRpcBridge(RpcBridge delegate) {
+        this.delegate = delegate;
+    }
+
+    public RpcBridge getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public RpcVersion getVersion() {
+        return delegate.getVersion();
+    }
+
+    @Override
+    public void load() throws Exception {
+        delegate.load();
+    }
+
+    @Override
+    public void unload() {
+        delegate.unload();
+    }
+
+    @Override
+    public boolean prepareRequest(RpcEntity rpcEntity) {
+        return delegate.prepareRequest(rpcEntity);
+    }
+
+    @Override
+    public RpcAttempt attemptRequest(RpcEntity rpcEntity, int count) {
+        long start = System.currentTimeMillis();
+        RpcAttempt attempt = delegate.attemptRequest(rpcEntity, count);
+        long elapsed = System.currentTimeMillis() - start;
+        String errorCode = rpcEntity.getHasError() ? getErrorCode(rpcEntity.getResponseObject()) : null;
+        RpcMetrics.recordAttempt(rpcEntity.getRequestMethod(), count, elapsed, attempt, errorCode,
+                isThrottled(rpcEntity.getResponseString()));
+        if (attempt == RpcAttempt.SUCCESS) {
+            AdaptiveConcurrencyLimiter.recordLatency(rpcEntity.getRequestMethod(), elapsed);
+        }
+        return attempt;
+    }
+
+    @Override
+    public long getRetryDelay(int retryInterval) {
+        return delegate.getRetryDelay(retryInterval);
+    }
+
+    @Override
+    public void onRetryExhausted(RpcEntity rpcEntity, int tryCount) {
+        RpcMetrics.recordExhausted(rpcEntity.getRequestMethod());
+        delegate.onRetryExhausted(rpcEntity, tryCount);
+    }
+
+    /**
+     * 宿主返回的 fastjson JSONObject 实现了 Map，直接读取错误码
+     */
+    private static String getErrorCode(Object response) {
+        if (!(response instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> map = (Map<?, ?>) response;
+        Object code = map.get("error");
+        if (code == null) {
+            code = map.get("resultCode");
+        }
+        return code != null ? String.valueOf(code) : null;
+    }
+
+    /**
+     * 与 ForestUtil.isFrequencyError 的判断一致，只检查响应原文，不解析 JSON
+     */
+    private static boolean isThrottled(String response) {
+        return response != null && (response.contains("PLUGIN_FREQUENCY_INTERCEPT")
+                || response.contains("手速太快") || response.contains("操作过于频繁"));
+    }
+}
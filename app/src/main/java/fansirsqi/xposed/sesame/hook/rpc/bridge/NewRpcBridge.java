@@ -3,20 +3,21 @@ package fansirsqi.xposed.sesame.hook.rpc.bridge;
 import fansirsqi.xposed.sesame.hook.Toast;
 import fansirsqi.xposed.sesame.util.*;
 
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import de.robv.android.xposed.XposedHelpers;
 import fansirsqi.xposed.sesame.data.General;
 import fansirsqi.xposed.sesame.entity.RpcEntity;
 import fansirsqi.xposed.sesame.hook.ApplicationHook;
-import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit;
 import fansirsqi.xposed.sesame.model.BaseModel;
 
 /**
@@ -32,6 +33,19 @@ public class NewRpcBridge implements RpcBridge {
     private Method parseObjectMethod;
     private Class<?>[] bridgeCallbackClazzArray;
     private Method newRpcCallMethod;
+    private Method toJSONStringMethod;
+    private Method getStringMethod;
+    /**
+     * 空闲的回调槽位。每个槽位持有一个 load() 时创建、此后一直复用的 BridgeCallback 代理，
+     * 槽位数随并发峰值增长，不会每次请求创建代理
+     */
+    private final ConcurrentLinkedQueue<CallbackSlot> idleSlots = new ConcurrentLinkedQueue<>();
+    /**
+     * 槽位 id -> 正在等待响应的请求，请求结束时在 finally 中移除
+     */
+    private final ConcurrentHashMap<Integer, RpcEntity> pendingCalls = new ConcurrentHashMap<>();
+    private final AtomicInteger slotIds = new AtomicInteger();
+    private static final int INITIAL_SLOTS = 4;
     private final AtomicInteger maxErrorCount = new AtomicInteger(0);
     private final Integer setMaxErrorCount = BaseModel.Companion.getSetMaxErrorCount().getValue();
 
@@ -107,16 +121,23 @@ public class NewRpcBridge implements RpcBridge {
                 }
             }
             parseObjectMethod = loader.loadClass("com.alibaba.fastjson.JSON").getMethod("parseObject", String.class);
+            Class<?> jsonObjectClazz = loader.loadClass(General.JSON_OBJECT_NAME);
+            toJSONStringMethod = jsonObjectClazz.getMethod("toJSONString");
+            getStringMethod = jsonObjectClazz.getMethod("getString", String.class);
             Class<?> bridgeCallbackClazz = loader.loadClass("com.alibaba.ariver.engine.api.bridge.extension.BridgeCallback");
             bridgeCallbackClazzArray = new Class[]{bridgeCallbackClazz};
+            idleSlots.clear();
+            for (int i = 0; i < INITIAL_SLOTS; i++) {
+                idleSlots.offer(newSlot(loader, bridgeCallbackClazzArray));
+            }
             newRpcCallMethod = newRpcInstance.getClass().getMethod("rpc"
                     , String.class
                     , boolean.class
                     , boolean.class
                     , String.class
-                    , loader.loadClass(General.JSON_OBJECT_NAME)
+                    , jsonObjectClazz
                     , String.class
-                    , loader.loadClass(General.JSON_OBJECT_NAME)
+                    , jsonObjectClazz
                     , boolean.class
                     , boolean.class
                     , int.class
@@ -137,6 +158,9 @@ public class NewRpcBridge implements RpcBridge {
     @Override
     public void unload() {
         newRpcCallMethod = null;
+        idleSlots.clear();
+        toJSONStringMethod = null;
+        getStringMethod = null;
         bridgeCallbackClazzArray = null;
         parseObjectMethod = null;
         newRpcInstance = null;
@@ -144,233 +168,266 @@ public class NewRpcBridge implements RpcBridge {
     }
 
     /**
-     * 发送RPC请求并获取响应字符串
+     * 请求前检查：离线状态与RPC组件是否就绪
      * <p>
-     * 该方法是requestObject的包装，将RPC响应对象转换为字符串返回：
-     * 1. 调用requestObject执行实际的RPC请求
-     * 2. 从返回的RPC实体中提取响应字符串
+     * 如果RPC组件未准备好，会尝试重新初始化一次
      * </p>
      *
-     * @param rpcEntity RPC请求实体，包含请求方法、参数等信息
-     * @param tryCount 最大尝试次数，设置为1表示只尝试一次不重试，设置为0表示不尝试，大于1表示有重试
-     * @param retryInterval 重试间隔（毫秒），负值表示使用默认延迟，0表示立即重试
-     * @return 响应字符串，如果请求失败则返回null
+     * @param rpcEntity RPC请求实体
+     * @return 组件可用返回true，否则返回false
      */
-    public String requestString(RpcEntity rpcEntity, int tryCount, int retryInterval) {
-        RpcEntity resRpcEntity = requestObject(rpcEntity, tryCount, retryInterval);
-        if (resRpcEntity != null) {
-            return resRpcEntity.getResponseString();
+    @Override
+    public boolean prepareRequest(RpcEntity rpcEntity) {
+        if (ApplicationHook.offline) {
+            return false;
         }
-        return null;
+        if (newRpcCallMethod == null) {
+            Log.record(TAG, "RPC方法为null，尝试重新初始化...");
+            try {
+                load();
+                Log.record(TAG, "RPC重新初始化成功");
+            } catch (Exception e) {
+                Log.error(TAG, "RPC重新初始化失败:");
+                Log.printStackTrace(e);
+                logNullResponse(rpcEntity, "RPC组件初始化失败", 0);
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * 发送RPC请求并获取响应对象
+     * 执行一次RPC调用
      * <p>
-     * 该方法负责执行实际的RPC调用，支持重试机制和错误处理：
-     * 1. 根据tryCount参数控制重试次数
-     * 2. 根据retryInterval参数控制重试间隔
-     *    - retryInterval < 0: 使用600ms+随机延迟
-     *    - retryInterval = 0: 不等待立即重试
-     *    - retryInterval > 0: 使用指定的毫秒数等待
-     * 3. 检测网络错误并根据配置进入离线模式或尝试重新登录
+     * 间隔限制与重试等待由调用方的重试循环负责（阻塞或挂起）：
+     * 1. 调用宿主 RpcBridgeExtension 并通过回调获取响应
+     * 2. 检测网络错误并根据配置进入离线模式或尝试重新登录
+     * 3. 检测安全验证错误并自动启动目标应用
      * </p>
      *
      * @param rpcEntity RPC请求实体，包含请求方法、参数等信息
-     * @param tryCount 最大尝试次数，设置为1表示只尝试一次不重试，设置为0表示不尝试，大于1表示有重试
-     * @param retryInterval 重试间隔（毫秒），负值表示使用默认延迟，0表示立即重试
-     * @return 包含响应数据的RPC实体，如果请求失败则返回null
+     * @param count     当前尝试次数
+     * @return SUCCESS 返回实体；RETRY 等待后重试；ABORT 直接返回null
      */
     @Override
-    public RpcEntity requestObject(RpcEntity rpcEntity, int tryCount, int retryInterval) {
-        // 方法开始时，将成员变量赋值给局部变量，以避免在方法执行期间因其他线程的unload()调用而导致成员变量变为null
+    public RpcAttempt attemptRequest(RpcEntity rpcEntity, int count) {
+        // 将成员变量赋值给局部变量，以避免在方法执行期间因其他线程的unload()调用而导致成员变量变为null
         Method localNewRpcCallMethod = newRpcCallMethod;
         Method localParseObjectMethod = parseObjectMethod;
+        Method localGetStringMethod = getStringMethod;
         Object localNewRpcInstance = newRpcInstance;
         ClassLoader localLoader = loader;
         Class<?>[] localBridgeCallbackClazzArray = bridgeCallbackClazzArray;
 
-        if (ApplicationHook.offline) {
-            return null;
+        if (localNewRpcCallMethod == null || localParseObjectMethod == null || localGetStringMethod == null
+                || localNewRpcInstance == null || localLoader == null || localBridgeCallbackClazzArray == null) {
+            logNullResponse(rpcEntity, "RPC组件不完整", count);
+            return RpcAttempt.ABORT;
         }
-
-        // 如果RPC组件未准备好，尝试重新初始化一次
-        if (localNewRpcCallMethod == null) {
-             Log.record(TAG, "RPC方法为null，尝试重新初始化...");
+        try {
+            // 借用一个回调槽位，响应按槽位 id 路由到本次请求，与宿主在哪个线程回调无关
+            CallbackSlot slot = idleSlots.poll();
+            if (slot == null) {
+                slot = newSlot(localLoader, localBridgeCallbackClazzArray);
+            }
+            pendingCalls.put(slot.id, rpcEntity);
             try {
-                load();
-                // 重新加载初始化后的变量
-                localNewRpcCallMethod = newRpcCallMethod;
-                localParseObjectMethod = parseObjectMethod;
-                localNewRpcInstance = newRpcInstance;
-                localLoader = loader;
-                localBridgeCallbackClazzArray = bridgeCallbackClazzArray;
-                 Log.record(TAG, "RPC重新初始化成功");
-            } catch (Exception e) {
-                Log.error(TAG, "RPC重新初始化失败:");
-                Log.printStackTrace(e);
-                logNullResponse(rpcEntity, "RPC组件初始化失败", 0);
-                return null;
+                localNewRpcCallMethod.invoke(
+                        localNewRpcInstance, rpcEntity.getRequestMethod(), false, false, "json",
+                        localParseObjectMethod.invoke(null, rpcEntity.getRpcFullRequestData()),
+                        "", null, true, false, 0, false, "", null, null, null, slot.proxy
+                );
+            } finally {
+                pendingCalls.remove(slot.id);
+                idleSlots.offer(slot);
             }
-        }
+            if (!rpcEntity.getHasResult()) {
+                logNullResponse(rpcEntity, "无响应结果", count);
+                return RpcAttempt.ABORT;
+            }
+            if (!rpcEntity.getHasError()) {
+                return RpcAttempt.SUCCESS;
+            }
+            try {
+                String errorCode = (String) localGetStringMethod.invoke(rpcEntity.getResponseObject(), "error");
+                String errorMessage = (String) localGetStringMethod.invoke(rpcEntity.getResponseObject(), "errorMessage");
+                String response = rpcEntity.getResponseString();
 
-        if (localNewRpcCallMethod == null || localParseObjectMethod == null
-                || localNewRpcInstance == null || localLoader == null || localBridgeCallbackClazzArray == null) {
-            logNullResponse(rpcEntity, "RPC组件不完整", 0);
-            return null;
-        }
-        try {
-            int count = 0;
-            do {
-                count++;
-                try {
-                    RpcIntervalLimit.INSTANCE.enterIntervalLimit(Objects.requireNonNull(rpcEntity.getRequestMethod()));
-                    Class<?>[] finalLocalBridgeCallbackClazzArray = localBridgeCallbackClazzArray;
-                    localNewRpcCallMethod.invoke(
-                            localNewRpcInstance, rpcEntity.getRequestMethod(), false, false, "json", localParseObjectMethod.invoke(null,
-                                    rpcEntity.getRpcFullRequestData()), "", null, true, false, 0, false, "", null, null, null, Proxy.newProxyInstance(localLoader,
-                                    localBridgeCallbackClazzArray, (proxy, innerMethod, args) -> {
-                                        if ("equals".equals(innerMethod.getName())) {
-                                            return proxy == args[0];
-                                        }
-                                        if ("hashCode".equals(innerMethod.getName())) {
-                                            return System.identityHashCode(proxy);
-                                        }
-                                        if ("toString".equals(innerMethod.getName())) {
-                                            return "Proxy for " + finalLocalBridgeCallbackClazzArray[0].getName();
-                                        }
-                                        if (args != null && args.length >= 1 && "sendJSONResponse".equals(innerMethod.getName())) {
-                                            try {
-                                                Object obj = args[0];
-                                                // 获取 JSON 字符串，失败时重试一次
-                                                String jsonString = null;
-                                                try {
-                                                    jsonString = (String) XposedHelpers.callMethod(obj, "toJSONString");
-                                                } catch (Exception e) {
-                                                    // 第一次失败，尝试重试
-                                                    try {
-                                                        GlobalThreadPools.sleepCompat(100L);
-                                                        jsonString = (String) XposedHelpers.callMethod(obj, "toJSONString");
-                                                    } catch (Exception retryException) {
-                                                        // 重试后仍失败，记录日志并标记错误，触发外层RPC重试
-                                                        Log.record(TAG, "toJSONString 重试后仍然失败，将触发整个 RPC 请求重试: " + retryException.getMessage());
-                                                        rpcEntity.setResponseObject(obj, null);
-                                                        rpcEntity.setError();
-                                                        return null;
-                                                    }
-                                                }
+                // 检测安全验证错误，自动启动目标应用（带防抖和版本检查）
 
-                                                rpcEntity.setResponseObject(obj, jsonString);
-                                                if (!(Boolean) XposedHelpers.callMethod(obj, "containsKey", "success")
-                                                        && !(Boolean) XposedHelpers.callMethod(obj, "containsKey", "isSuccess")) {
-                                                    rpcEntity.setError();
-                                                    if (shouldShowErrorLog(rpcEntity.getRequestMethod())) {
-                                                        Log.error(TAG, "new rpc response1 | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() + "\n " +
-                                                                "args: " + rpcEntity.getRequestData() + " |\n data: " + rpcEntity.getResponseString());
-                                                    }
-                                                }
-                                            } catch (Exception e) {
-                                                rpcEntity.setError();
-                                                Log.printStackTrace(TAG,"new rpc response2 | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() +
-                                                        " err:",e);
-                                            }
-                                        }
-                                        return null;
-                                    })
-                    );
-                    if (!rpcEntity.getHasResult()) {
-                        logNullResponse(rpcEntity, "无响应结果", count);
-                        return null;
+                if (errorMessage != null && errorMessage.contains("为了保障您的操作安全，请进行验证后继续")) {
+                    // 检查版本号，只有版本低于等于10.6.58.99999才自动启动目标应用
+                    if (!ApplicationHook.shouldEnableSimplePageManager()) {
+                      //  Log.record(TAG, "目标应用版本不支持自动启动目标应用进行滑块验证，跳过");
+                        return RpcAttempt.ABORT;
                     }
-                    if (!rpcEntity.getHasError()) {
-                        return rpcEntity;
-                    }
-                    try {
-                        String errorCode = (String) XposedHelpers.callMethod(rpcEntity.getResponseObject(), "getString", "error");
-                        String errorMessage = (String) XposedHelpers.callMethod(rpcEntity.getResponseObject(), "getString", "errorMessage");
-                        String response = rpcEntity.getResponseString();
-                        String methodName = rpcEntity.getRequestMethod();
-
-                        // 检测安全验证错误，自动启动目标应用（带防抖和版本检查）
-
-                        if (errorMessage != null && errorMessage.contains("为了保障您的操作安全，请进行验证后继续")) {
-                            // 检查版本号，只有版本低于等于10.6.58.99999才自动启动目标应用
-                            if (!ApplicationHook.shouldEnableSimplePageManager()) {
-                              //  Log.record(TAG, "目标应用版本不支持自动启动目标应用进行滑块验证，跳过");
-                                return null;
-                            }
-                            long currentTime = System.currentTimeMillis();
-                            long timeSinceLastStart = currentTime - lastAlipayStartTime;
+                    long currentTime = System.currentTimeMillis();
+                    long timeSinceLastStart = currentTime - lastAlipayStartTime;
+                    if (timeSinceLastStart < ALIPAY_START_DEBOUNCE_TIME) {
+                         Log.record(TAG, "距离上次启动目标应用仅 " + timeSinceLastStart + "ms，跳过本次启动");
+                    } else {
+                        synchronized (alipayStartLock) {
+                            // 双重检查，防止多线程竞争
+                            currentTime = System.currentTimeMillis();
+                            timeSinceLastStart = currentTime - lastAlipayStartTime;
                             if (timeSinceLastStart < ALIPAY_START_DEBOUNCE_TIME) {
-                                 Log.record(TAG, "距离上次启动目标应用仅 " + timeSinceLastStart + "ms，跳过本次启动");
+                                 Log.record(TAG, "距离上次启动目标应用仅 " + timeSinceLastStart + "ms，跳过本次启动（双重检查）");
                             } else {
-                                synchronized (alipayStartLock) {
-                                    // 双重检查，防止多线程竞争
-                                    currentTime = System.currentTimeMillis();
-                                    timeSinceLastStart = currentTime - lastAlipayStartTime;
-                                    if (timeSinceLastStart < ALIPAY_START_DEBOUNCE_TIME) {
-                                         Log.record(TAG, "距离上次启动目标应用仅 " + timeSinceLastStart + "ms，跳过本次启动（双重检查）");
-                                    } else {
-                                        lastAlipayStartTime = currentTime;
-                                         Log.record(TAG, "检测到安全验证错误，自动启动目标应用进行滑块中...");
-                                        Toast.INSTANCE.show(
-                                                "为了保障您的操作安全，请进行验证后继续,自动启动目标应用进行滑块中..."
-                                        );
-                                        // 使用增强的shell命令启动目标应用，
-                                        SwipeUtil.startAlipay(ApplicationHook.appContext);
-                                    }
-                                }
+                                lastAlipayStartTime = currentTime;
+                                 Log.record(TAG, "检测到安全验证错误，自动启动目标应用进行滑块中...");
+                                Toast.INSTANCE.show(
+                                        "为了保障您的操作安全，请进行验证后继续,自动启动目标应用进行滑块中..."
+                                );
+                                // 使用增强的shell命令启动目标应用，
+                                SwipeUtil.startAlipay(ApplicationHook.appContext);
                             }
-                            return null;
                         }
+                    }
+                    return RpcAttempt.ABORT;
+                }
 
-                        if (errorMark.contains(errorCode) || errorStringMark.contains(errorMessage)) {
-                            int currentErrorCount = maxErrorCount.incrementAndGet();
-                            if (!ApplicationHook.offline) {
-                                if (currentErrorCount > setMaxErrorCount) {
-                                    ApplicationHook.setOffline(true);
-                                    Notify.updateStatusText("网络连接异常，已进入离线模式");
-                                    if (BaseModel.Companion.getErrNotify().getValue()) {
-                                        Notify.sendNewNotification(TimeUtil.getTimeStr() + " | 网络异常次数超过阈值[" + setMaxErrorCount + "]", response);
-                                    }
-                                }
-//                                if (BaseModel.Companion.getErrNotify().getValue()) {
-//                                    Notify.sendNewNotification(TimeUtil.getTimeStr() + " | 网络异常: " + methodName, response);
-//                                }//做得多错的多，不做就不会错
-                                if (BaseModel.Companion.getTimeoutRestart().getValue()) {
-                                    Log.record(TAG, "尝试重新登录");
-                                    ApplicationHook.reLoginByBroadcast();
-                                }
+                if (errorMark.contains(errorCode) || errorStringMark.contains(errorMessage)) {
+                    int currentErrorCount = maxErrorCount.incrementAndGet();
+                    if (!ApplicationHook.offline) {
+                        if (currentErrorCount > setMaxErrorCount) {
+                            ApplicationHook.setOffline(true);
+                            Notify.updateStatusText("网络连接异常，已进入离线模式");
+                            if (BaseModel.Companion.getErrNotify().getValue()) {
+                                Notify.sendNewNotification(TimeUtil.getTimeStr() + " | 网络异常次数超过阈值[" + setMaxErrorCount + "]", response);
                             }
-                            logNullResponse(rpcEntity, "网络错误: " + errorCode + "/" + errorMessage, count);
-                            return null;
                         }
-                        return rpcEntity;
-                    } catch (Exception e) {
-                        Log.error(TAG, "new rpc response | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() + " get err:");
-                        Log.printStackTrace(e);
+//                        if (BaseModel.Companion.getErrNotify().getValue()) {
+//                            Notify.sendNewNotification(TimeUtil.getTimeStr() + " | 网络异常: " + methodName, response);
+//                        }//做得多错的多，不做就不会错
+                        if (BaseModel.Companion.getTimeoutRestart().getValue()) {
+                            Log.record(TAG, "尝试重新登录");
+                            ApplicationHook.reLoginByBroadcast();
+                        }
+                    }
+                    logNullResponse(rpcEntity, "网络错误: " + errorCode + "/" + errorMessage, count);
+                    return RpcAttempt.ABORT;
+                }
+                return RpcAttempt.SUCCESS;
+            } catch (Exception e) {
+                Log.error(TAG, "new rpc response | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() + " get err:");
+                Log.printStackTrace(e);
+            }
+        } catch (Throwable t) {
+            Log.error(TAG, "new rpc request | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() + " err:");
+            Log.printStackTrace(t);
+        }
+        return RpcAttempt.RETRY;
+    }
+
+    @Override
+    public void onRetryExhausted(RpcEntity rpcEntity, int tryCount) {
+        logNullResponse(rpcEntity, "重试次数耗尽", tryCount);
+    }
+
+    private CallbackSlot newSlot(ClassLoader classLoader, Class<?>[] callbackClazzArray) {
+        int id = slotIds.incrementAndGet();
+        Object proxy = Proxy.newProxyInstance(classLoader, callbackClazzArray, new ResponseCallback(id, callbackClazzArray[0].getName()));
+        return new CallbackSlot(id, proxy);
+    }
+
+    /**
+     * 可复用的回调槽位：固定的 id 与对应的代理实例
+     */
+    private static final class CallbackSlot {
+        final int id;
+        final Object proxy;
+
+        CallbackSlot(int id, Object proxy) {
+            this.id = id;
+            this.proxy = proxy;
+        }
+    }
+
+    /**
+     * 槽位的 BridgeCallback 处理器
+     * <p>
+     * 处理器只持有槽位 id，收到响应时从 {@link #pendingCalls} 取出当前借用该槽位的请求；
+     * 请求已结束（超时后迟到的回调）时直接忽略
+     * </p>
+     */
+    private final class ResponseCallback implements InvocationHandler {
+        private final int slotId;
+        private final String callbackClassName;
+
+        ResponseCallback(int slotId, String callbackClassName) {
+            this.slotId = slotId;
+            this.callbackClassName = callbackClassName;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method innerMethod, Object[] args) {
+            switch (innerMethod.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Proxy for " + callbackClassName;
+                case "sendJSONResponse":
+                    RpcEntity rpcEntity = pendingCalls.get(slotId);
+                    if (rpcEntity != null && args != null && args.length >= 1) {
+                        handleResponse(rpcEntity, args[0]);
                     }
-                    if (retryInterval < 0) {
-                        CoroutineUtils.sleepCompat(600 + RandomUtil.delay());
-                    } else if (retryInterval > 0) {
-                        CoroutineUtils.sleepCompat(retryInterval);
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        private void handleResponse(RpcEntity rpcEntity, Object obj) {
+            try {
+                // 获取 JSON 字符串，失败时重试一次
+                String jsonString;
+                try {
+                    jsonString = toJSONString(obj);
+                } catch (Exception e) {
+                    // 第一次失败，尝试重试
+                    try {
+                        GlobalThreadPools.sleepCompat(100L);
+                        jsonString = toJSONString(obj);
+                    } catch (Exception retryException) {
+                        // 重试后仍失败，记录日志并标记错误，触发外层RPC重试
+                        Log.record(TAG, "toJSONString 重试后仍然失败，将触发整个 RPC 请求重试: " + retryException.getMessage());
+                        rpcEntity.setResponseObject(obj, null);
+                        rpcEntity.setError();
+                        return;
                     }
-                } catch (Throwable t) {
-                    Log.error(TAG, "new rpc request | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() + " err:");
-                    Log.printStackTrace(t);
-                    if (retryInterval < 0) {
-                        CoroutineUtils.sleepCompat(600 + RandomUtil.delay());
-                    } else if (retryInterval > 0) {
-                        CoroutineUtils.sleepCompat(retryInterval);
+                }
+
+                rpcEntity.setResponseObject(obj, jsonString);
+                if (!containsKey(obj, "success") && !containsKey(obj, "isSuccess")) {
+                    rpcEntity.setError();
+                    if (shouldShowErrorLog(rpcEntity.getRequestMethod())) {
+                        Log.error(TAG, "new rpc response1 | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() + "\n " +
+                                "args: " + rpcEntity.getRequestData() + " |\n data: " + rpcEntity.getResponseString());
                     }
                 }
-            } while (count < tryCount);
-            logNullResponse(rpcEntity, "重试次数耗尽", tryCount);
-            return null;
-        } finally {
-         //   Log.record(TAG, "New RPC\n方法: " + rpcEntity.getRequestMethod() + "\n参数: " + rpcEntity.getRequestData() + "\n数据: " + rpcEntity.getResponseString() + "\n" + "\n" + "堆栈:" + new Exception().getStackTrace()[1].toString());
-         //   Log.printStack(TAG);
+            } catch (Exception e) {
+                rpcEntity.setError();
+                Log.printStackTrace(TAG, "new rpc response2 | id: " + rpcEntity.hashCode() + " | method: " + rpcEntity.getRequestMethod() +
+                        " err:", e);
+            }
+        }
 
+        private String toJSONString(Object obj) throws Exception {
+            Method method = toJSONStringMethod;
+            if (method != null && method.getDeclaringClass().isInstance(obj)) {
+                return (String) method.invoke(obj);
+            }
+            return (String) XposedHelpers.callMethod(obj, "toJSONString");
+        }
+
+        private boolean containsKey(Object obj, String key) {
+            // fastjson 的 JSONObject 实现了 Map，直接调用即可
+            if (obj instanceof Map) {
+                return ((Map<?, ?>) obj).containsKey(key);
+            }
+            return (Boolean) XposedHelpers.callMethod(obj, "containsKey", key);
         }
     }
-}
\ No newline at end of file
+}
@@ -5,13 +5,11 @@ import org.json.JSONObject;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Objects;
 
 import fansirsqi.xposed.sesame.data.General;
 import fansirsqi.xposed.sesame.data.RuntimeInfo;
 import fansirsqi.xposed.sesame.entity.RpcEntity;
 import fansirsqi.xposed.sesame.hook.ApplicationHook;
-import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit;
 import fansirsqi.xposed.sesame.model.BaseModel;
 import fansirsqi.xposed.sesame.util.Log;
 import fansirsqi.xposed.sesame.util.Notify;
@@ -73,36 +71,33 @@ public class OldRpcBridge implements RpcBridge {
         h5PageClazz = null; // 清空 H5 页面类
         loader = null; // 清空类加载器
     }
+    @Override
+    public boolean prepareRequest(RpcEntity rpcEntity) {
+        return !ApplicationHook.offline; // 如果离线，直接放弃请求
+    }
     /**
-     * 向 RPC 实体请求字符串响应。
+     * 执行一次 RPC 调用，间隔限制由重试循环负责。
      *
-     * @param rpcEntity     要发送的 RPC 实体。
-     * @param tryCount      重试次数。
-     * @param retryInterval  重试间隔。
-     * @return 响应字符串，如果失败则返回 null。
+     * @param rpcEntity 要发送的 RPC 实体。
+     * @param count     当前尝试次数。
+     * @return 调用结果，出现异常时立即重试。
      */
-    public String requestString(RpcEntity rpcEntity, int tryCount, int retryInterval) {
-        RpcEntity responseEntity = requestObject(rpcEntity, tryCount, retryInterval);
-        return responseEntity != null ? responseEntity.getResponseString() : null; // 返回响应字符串或 null
-    }
     @Override
-    public RpcEntity requestObject(RpcEntity rpcEntity, int tryCount, int retryInterval) {
-        if (ApplicationHook.offline) {
-            return null; // 如果离线，直接返回 null
-        }
+    public RpcAttempt attemptRequest(RpcEntity rpcEntity, int count) {
         int id = rpcEntity.hashCode(); // 获取请求 ID
         String method = rpcEntity.getRequestMethod(); // 获取请求方法
         String args = rpcEntity.getRequestData(); // 获取请求参数
-        for (int count = 0; count < tryCount; count++) {
-            try {
-                RpcIntervalLimit.INSTANCE.enterIntervalLimit(Objects.requireNonNull(method)); // 进入 RPC 调用间隔限制
-                Object response = invokeRpcCall(method, args); // 调用 RPC 方法
-                return processResponse(rpcEntity, response, id, method, args, retryInterval); // 处理响应
-            } catch (Throwable t) {
-                handleError(rpcEntity, t, method, id, args); // 处理错误
-            }
+        try {
+            Object response = invokeRpcCall(method, args); // 调用 RPC 方法
+            return processResponse(rpcEntity, response, id, method, args) != null ? RpcAttempt.SUCCESS : RpcAttempt.ABORT; // 处理响应
+        } catch (Throwable t) {
+            handleError(rpcEntity, t, method, id, args); // 处理错误
+            return RpcAttempt.RETRY;
         }
-        return null; // 所有尝试失败后返回 null
+    }
+    @Override
+    public long getRetryDelay(int retryInterval) {
+        return 0; // 旧版接口失败后立即重试
     }
     /**
      * 使用反射调用 RPC 方法。
@@ -127,11 +122,10 @@ public class OldRpcBridge implements RpcBridge {
      * @param id          唯一请求 ID。
      * @param method      请求的方法名。
      * @param args        请求的参数。
-     * @param retryInterval 重试间隔。
      * @return 更新后的 RPC 实体。
      * @throws Throwable 如果处理过程中出现错误。
      */
-    private RpcEntity processResponse(RpcEntity rpcEntity, Object response, int id, String method, String args, int retryInterval) throws Throwable {
+    private RpcEntity processResponse(RpcEntity rpcEntity, Object response, int id, String method, String args) throws Throwable {
         String resultStr = (String) getResponseMethod.invoke(response); // 获取响应字符串
         JSONObject resultObject = new JSONObject(resultStr);
         rpcEntity.setResponseObject(resultObject, resultStr); // 设置响应对象
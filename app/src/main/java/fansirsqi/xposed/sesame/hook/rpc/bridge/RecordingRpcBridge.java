@@ -0,0 +1,200 @@
+package fansirsqi.xposed.sesame.hook.rpc.bridge;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fansirsqi.xposed.sesame.entity.RpcEntity;
+import fansirsqi.xposed.sesame.util.Log;
+
+/**
+ * 录制 RPC 的 RpcBridge 包装
+ * <p>
+ * 每次拿到响应的尝试都以一行 JSON 追加到录制文件（NDJSON），供 {@link ReplayRpcBridge} 回放：
+ * m 方法、d 请求数据、r relation、t 耗时毫秒、e 是否错误、s 响应字符串。
+ * 其余行为全部委托给实际的实现。
+ * </p>
+ * <p>
+ * RPC 线程只把序列化好的行放入有界队列（满时丢弃并计数），由单个后台线程批量写盘；
+ * 文件超过 {@link #MAX_FILE_BYTES} 时轮转为 .1 文件，只保留一份旧录制。
+ * </p>
+ */
+public class RecordingRpcBridge implements RpcBridge {
+    private static final String TAG = RecordingRpcBridge.class.getSimpleName();
+    /**
+     * 设备上录制时使用的文件名（位于日志目录）
+     */
+    public static final String DEFAULT_FILE_NAME = "rpc_record.ndjson";
+    private static final long MAX_FILE_BYTES = 16L * 1024 * 1024;
+    private static final int CAPACITY = 1024;
+    private static final int BATCH_SIZE = 64;
+
+    private final RpcBridge delegate;
+    private final File file;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Thread writerThread;
+
+    public RecordingRpcBridge(RpcBridge delegate, File file) {
+        this.delegate = delegate;
+        this.file = file;
+    }
+
+    @Override
+    public RpcVersion getVersion() {
+        return delegate.getVersion();
+    }
+
+    @Override
+    public void load() throws Exception {
+        delegate.load();
+        synchronized (this) {
+            if (writerThread == null) {
+                writerThread = new Thread(this::writeLoop, "RpcRecorder");
+                writerThread.setDaemon(true);
+                writerThread.start();
+                Log.record(TAG, "RPC录制已开启: " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    @Override
+    public void unload() {
+        delegate.unload();
+        Thread thread;
+        synchronized (this) {
+            thread = writerThread;
+            writerThread = null;
+        }
+        if (thread != null) {
+            // 写线程收到中断后写完队列中剩余的记录再退出
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean prepareRequest(RpcEntity rpcEntity) {
+        return delegate.prepareRequest(rpcEntity);
+    }
+
+    @Override
+    public RpcAttempt attemptRequest(RpcEntity rpcEntity, int count) {
+        long start = System.currentTimeMillis();
+        RpcAttempt attempt = delegate.attemptRequest(rpcEntity, count);
+        if (rpcEntity.getHasResult() && writerThread != null) {
+            enqueue(rpcEntity, System.currentTimeMillis() - start);
+        }
+        return attempt;
+    }
+
+    @Override
+    public long getRetryDelay(int retryInterval) {
+        return delegate.getRetryDelay(retryInterval);
+    }
+
+    @Override
+    public void onRetryExhausted(RpcEntity rpcEntity, int tryCount) {
+        delegate.onRetryExhausted(rpcEntity, tryCount);
+    }
+
+    private void enqueue(RpcEntity rpcEntity, long latency) {
+        String line;
+        try {
+            line = new JSONObject()
+                    .put("m", rpcEntity.getRequestMethod())
+                    .put("d", rpcEntity.getRequestData())
+                    .put("r", rpcEntity.getRequestRelation())
+                    .put("t", latency)
+                    .put("e", rpcEntity.getHasError())
+                    .put("s", rpcEntity.getResponseString())
+                    .toString();
+        } catch (Exception e) {
+            Log.printStackTrace(TAG, e);
+            return;
+        }
+        if (!queue.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeLoop() {
+        BufferedWriter writer = null;
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        boolean running = true;
+        try {
+            while (running || !queue.isEmpty()) {
+                if (running) {
+                    try {
+                        String first = queue.poll(1, TimeUnit.SECONDS);
+                        if (first == null) {
+                            continue;
+                        }
+                        batch.add(first);
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+                queue.drainTo(batch, BATCH_SIZE - batch.size());
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                if (writer == null || file.length() >= MAX_FILE_BYTES) {
+                    writer = reopen(writer);
+                }
+                for (String line : batch) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+                writer.flush();
+                batch.clear();
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    Log.record(TAG, "录制队列已满，丢弃 " + lost + " 条");
+                }
+            }
+        } catch (IOException e) {
+            Log.printStackTrace(TAG, e);
+        } finally {
+            close(writer);
+        }
+    }
+
+    /**
+     * 打开录制文件，超过大小上限时先轮转
+     */
+    private BufferedWriter reopen(BufferedWriter writer) throws IOException {
+        close(writer);
+        if (file.length() >= MAX_FILE_BYTES) {
+            File old = new File(file.getPath() + ".1");
+            if (old.exists() && !old.delete()) {
+                Log.record(TAG, "删除旧录制失败: " + old.getName());
+            }
+            if (!file.renameTo(old)) {
+                Log.record(TAG, "录制文件轮转失败: " + file.getName());
+            }
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private static void close(BufferedWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.printStackTrace(TAG, e);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package fansirsqi.xposed.sesame.hook.rpc.bridge;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fansirsqi.xposed.sesame.entity.RpcEntity;
+import fansirsqi.xposed.sesame.util.Log;
+
+/**
+ * 回放 {@link RecordingRpcBridge} 录制文件的 RpcBridge，不依赖宿主与网络
+ * <p>
+ * 1. 按“方法 + 规范化的请求数据”查找录制的响应：JSON 键排序，并去掉时间戳、traceId 等每次都会变化的字段
+ * 2. 同一请求录制了多次时按录制顺序依次返回，用完后重复最后一次
+ * 3. 找不到完全匹配时退回按方法匹配，仍找不到则本次请求失败并计数
+ * 4. 可按录制耗时的倍数模拟延迟，并按概率注入可重试的错误；随机数使用固定种子，结果可复现
+ * </p>
+ * 注入的延迟在 attemptRequest 内阻塞当前线程，只用于离线运行与压测。
+ */
+public class ReplayRpcBridge implements RpcBridge {
+    private static final String TAG = ReplayRpcBridge.class.getSimpleName();
+
+    /**
+     * 每次请求都会变化、不参与匹配的字段
+     */
+    private static final Set<String> VOLATILE_KEYS = new HashSet<>(Arrays.asList(
+            "ariverRpcTraceId", "traceId", "bizTraceId", "requestId", "shareUniqueId", "sToken",
+            "now", "timestamp", "startTime", "completedTime", "outBizNo", "bizNo"
+    ));
+
+    private static final class Response {
+        final String body;
+        final long latency;
+        final boolean error;
+
+        Response(String body, long latency, boolean error) {
+            this.body = body;
+            this.latency = latency;
+            this.error = error;
+        }
+    }
+
+    private static final class Responses {
+        final List<Response> list = new ArrayList<>();
+        final AtomicInteger cursor = new AtomicInteger();
+
+        Response next() {
+            int index = cursor.getAndIncrement();
+            return list.get(Math.min(index, list.size() - 1));
+        }
+    }
+
+    private final File file;
+    private final double latencyScale;
+    private final double errorRate;
+    private final Random random;
+    private final Map<String, Responses> byRequest = new HashMap<>();
+    private final Map<String, Responses> byMethod = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong methodHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ReplayRpcBridge(File file) {
+        this(file, 0, 0, 0L);
+    }
+
+    /**
+     * @param latencyScale 模拟延迟为录制耗时的倍数，0 表示不延迟
+     * @param errorRate    注入错误的概率（0~1）
+     * @param seed         随机数种子
+     */
+    public ReplayRpcBridge(File file, double latencyScale, double errorRate, long seed) {
+        this.file = file;
+        this.latencyScale = latencyScale;
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public RpcVersion getVersion() {
+        return RpcVersion.NEW;
+    }
+
+    @Override
+    public void load() throws Exception {
+        byRequest.clear();
+        byMethod.clear();
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JSONObject jo = new JSONObject(line);
+                String method = jo.optString("m");
+                Response response = new Response(jo.optString("s"), jo.optLong("t"), jo.optBoolean("e"));
+                add(byRequest, key(method, jo.optString("d", null)), response);
+                add(byMethod, method, response);
+                count++;
+            }
+        }
+        Log.record(TAG, "已加载录制 " + count + " 条，" + byMethod.size() + " 个方法");
+    }
+
+    private static void add(Map<String, Responses> map, String key, Response response) {
+        Responses responses = map.get(key);
+        if (responses == null) {
+            responses = new Responses();
+            map.put(key, responses);
+        }
+        responses.list.add(response);
+    }
+
+    @Override
+    public void unload() {
+        Log.record(TAG, "回放统计: 完全匹配 " + hits.get() + "，按方法匹配 " + methodHits.get() + "，未命中 " + misses.get());
+    }
+
+    @Override
+    public boolean prepareRequest(RpcEntity rpcEntity) {
+        return true;
+    }
+
+    @Override
+    public RpcAttempt attemptRequest(RpcEntity rpcEntity, int count) {
+        String method = rpcEntity.getRequestMethod();
+        Responses responses = byRequest.get(key(method, rpcEntity.getRequestData()));
+        if (responses != null) {
+            hits.incrementAndGet();
+        } else {
+            responses = byMethod.get(method);
+            if (responses == null) {
+                misses.incrementAndGet();
+                Log.record(TAG, "没有录制的响应: " + method);
+                return RpcAttempt.ABORT;
+            }
+            methodHits.incrementAndGet();
+        }
+        Response response = responses.next();
+        boolean injectError;
+        synchronized (random) {
+            injectError = errorRate > 0 && random.nextDouble() < errorRate;
+        }
+        if (latencyScale > 0 && response.latency > 0) {
+            try {
+                Thread.sleep((long) (response.latency * latencyScale));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (injectError) {
+            rpcEntity.setResponseObject(null, "");
+            rpcEntity.setError();
+            return RpcAttempt.RETRY;
+        }
+        rpcEntity.setResponseObject(null, response.body);
+        if (response.error) {
+            rpcEntity.setError();
+        }
+        return RpcAttempt.SUCCESS;
+    }
+
+    /**
+     * 方法名 + 规范化的请求数据，无法解析为 JSON 时使用原文
+     */
+    static String key(String method, String data) {
+        if (data == null || data.isEmpty()) {
+            return method + '\u0000';
+        }
+        try {
+            StringBuilder sb = new StringBuilder(method).append('\u0000');
+            canonical(new JSONTokener(data).nextValue(), sb);
+            return sb.toString();
+        } catch (Exception e) {
+            return method + '\u0000' + data;
+        }
+    }
+
+    private static void canonical(Object value, StringBuilder sb) {
+        if (value instanceof JSONObject) {
+            JSONObject jo = (JSONObject) value;
+            List<String> keys = new ArrayList<>();
+            for (Iterator<String> it = jo.keys(); it.hasNext(); ) {
+                String k = it.next();
+                if (!VOLATILE_KEYS.contains(k)) {
+                    keys.add(k);
+                }
+            }
+            keys.sort(null);
+            sb.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(JSONObject.quote(keys.get(i))).append(':');
+                canonical(jo.opt(keys.get(i)), sb);
+            }
+            sb.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray ja = (JSONArray) value;
+            sb.append('[');
+            for (int i = 0; i < ja.length(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                canonical(ja.opt(i), sb);
+            }
+            sb.append(']');
+        } else if (value instanceof String) {
+            sb.append(JSONObject.quote((String) value));
+        } else {
+            sb.append(value);
+        }
+    }
+}
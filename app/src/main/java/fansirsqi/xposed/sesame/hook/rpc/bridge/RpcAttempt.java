@@ -0,0 +1,19 @@
+package fansirsqi.xposed.sesame.hook.rpc.bridge;
+
+/**
+ * 单次 RPC 调用的结果，由重试循环（阻塞或挂起）决定下一步动作
+ */
+public enum RpcAttempt {
+    /**
+     * 请求完成，返回实体
+     */
+    SUCCESS,
+    /**
+     * 本次失败，等待重试间隔后再次尝试
+     */
+    RETRY,
+    /**
+     * 请求失败且不应重试，直接返回 null
+     */
+    ABORT,
+}
@@ -1,5 +1,9 @@
 package fansirsqi.xposed.sesame.hook.rpc.bridge;
+import java.util.Objects;
+
 import fansirsqi.xposed.sesame.entity.RpcEntity;
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit;
+import fansirsqi.xposed.sesame.util.CoroutineUtils;
 import fansirsqi.xposed.sesame.util.RandomUtil;
 
 public interface RpcBridge {
@@ -7,8 +11,88 @@ public interface RpcBridge {
     void load() throws Exception;
     void unload();
 
-    String requestString(RpcEntity rpcEntity, int tryCount, int retryInterval);
-    RpcEntity requestObject(RpcEntity rpcEntity, int tryCount, int retryInterval);
+    /**
+     * 请求前检查（离线状态、组件是否就绪），返回 false 时直接放弃本次请求
+     *
+     * @param rpcEntity RPC请求实体
+     * @return 是否可以发起请求
+     */
+    boolean prepareRequest(RpcEntity rpcEntity);
+
+    /**
+     * 执行一次 RPC 调用，不包含间隔限制与重试等待
+     * <p>
+     * 阻塞的 {@link #requestObject(RpcEntity, int, int)} 与挂起的 {@code requestObjectSuspend} 共用此方法，
+     * 等待逻辑由各自的重试循环负责
+     * </p>
+     *
+     * @param rpcEntity RPC请求实体
+     * @param count     当前尝试次数（从1开始）
+     * @return 本次调用结果
+     */
+    RpcAttempt attemptRequest(RpcEntity rpcEntity, int count);
+
+    /**
+     * 计算重试前的等待时间
+     *
+     * @param retryInterval 重试间隔（毫秒），负值表示使用默认延迟，0表示立即重试
+     * @return 等待毫秒数
+     */
+    default long getRetryDelay(int retryInterval) {
+        return retryInterval < 0 ? 600 + RandomUtil.delay() : retryInterval;
+    }
+
+    /**
+     * 重试次数耗尽时回调
+     */
+    default void onRetryExhausted(RpcEntity rpcEntity, int tryCount) {
+    }
+
+    /**
+     * 发送RPC请求并获取响应对象（阻塞版本，供 Java 调用方使用）
+     * <p>
+     * 协程中请使用 {@code RpcBridgeSuspend.requestObjectSuspend}，避免等待时占用调度器线程
+     * </p>
+     *
+     * @param rpcEntity     RPC请求实体
+     * @param tryCount      最大尝试次数，小于1时按1次处理
+     * @param retryInterval 重试间隔（毫秒），负值表示使用默认延迟，0表示立即重试
+     * @return 包含响应数据的RPC实体，如果请求失败则返回null
+     */
+    default RpcEntity requestObject(RpcEntity rpcEntity, int tryCount, int retryInterval) {
+        if (!prepareRequest(rpcEntity)) {
+            return null;
+        }
+        String method = Objects.requireNonNull(rpcEntity.getRequestMethod());
+        // 至少请求一次，tryCount 为 0 的调用方同样会发出请求
+        int attempts = Math.max(1, tryCount);
+        for (int count = 1; count <= attempts; count++) {
+            RpcIntervalLimit.INSTANCE.enterIntervalLimit(method);
+            RpcAttempt attempt = attemptRequest(rpcEntity, count);
+            if (attempt == RpcAttempt.SUCCESS) {
+                return rpcEntity;
+            }
+            if (attempt == RpcAttempt.ABORT) {
+                return null;
+            }
+            long delay = getRetryDelay(retryInterval);
+            if (count < attempts && delay > 0) {
+                CoroutineUtils.sleepCompat(delay);
+            }
+        }
+        onRetryExhausted(rpcEntity, attempts);
+        return null;
+    }
+
+    /**
+     * 发送RPC请求并获取响应字符串（阻塞版本）
+     *
+     * @return 响应字符串，如果请求失败则返回null
+     */
+    default String requestString(RpcEntity rpcEntity, int tryCount, int retryInterval) {
+        RpcEntity resRpcEntity = requestObject(rpcEntity, tryCount, retryInterval);
+        return resRpcEntity != null ? resRpcEntity.getResponseString() : null;
+    }
 
     default String requestString(RpcEntity rpcEntity) {
         return requestString(rpcEntity, 3, -1);
@@ -0,0 +1,57 @@
+@file:JvmName("RpcBridgeSuspend")
+
+package fansirsqi.xposed.sesame.hook.rpc.bridge
+
+import fansirsqi.xposed.sesame.entity.RpcEntity
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit
+import kotlinx.coroutines.delay
+
+/**
+ * 发送RPC请求并获取响应对象（挂起版本）
+ *
+ * 与阻塞的 [RpcBridge.requestObject] 共用 [RpcBridge.attemptRequest]，
+ * 间隔限制与重试等待均通过挂起完成，不会占用调度器线程。
+ *
+ * @param rpcEntity RPC请求实体
+ * @param tryCount 最大尝试次数，小于1时按1次处理
+ * @param retryInterval 重试间隔（毫秒），负值表示使用默认延迟，0表示立即重试
+ * @return 包含响应数据的RPC实体，如果请求失败则返回null
+ */
+suspend fun RpcBridge.requestObjectSuspend(
+    rpcEntity: RpcEntity,
+    tryCount: Int = 3,
+    retryInterval: Int = -1
+): RpcEntity? {
+    if (!prepareRequest(rpcEntity)) return null
+    val method = requireNotNull(rpcEntity.requestMethod)
+    // 至少请求一次，tryCount 为 0 的调用方同样会发出请求
+    val attempts = tryCount.coerceAtLeast(1)
+    for (count in 1..attempts) {
+        RpcIntervalLimit.enterIntervalLimitSuspend(method)
+        when (attemptRequest(rpcEntity, count)) {
+            RpcAttempt.SUCCESS -> return rpcEntity
+            RpcAttempt.ABORT -> return null
+            RpcAttempt.RETRY -> {
+                val retryDelay = getRetryDelay(retryInterval)
+                if (count < attempts && retryDelay > 0) {
+                    delay(retryDelay)
+                }
+            }
+        }
+    }
+    onRetryExhausted(rpcEntity, attempts)
+    return null
+}
+
+/**
+ * 发送RPC请求并获取响应字符串（挂起版本）
+ *
+ * @return 响应字符串，如果请求失败则返回null
+ */
+suspend fun RpcBridge.requestStringSuspend(
+    rpcEntity: RpcEntity,
+    tryCount: Int = 3,
+    retryInterval: Int = -1
+): String? {
+    return requestObjectSuspend(rpcEntity, tryCount, retryInterval)?.responseString
+}
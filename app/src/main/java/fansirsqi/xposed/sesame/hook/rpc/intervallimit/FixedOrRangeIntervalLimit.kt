@@ -61,6 +61,23 @@ class FixedOrRangeIntervalLimit(
 
     private fun clamp(value: Int): Int = value.coerceIn(min, max)
 
+    companion object {
+        private val FORMAT = Regex("""\d+(-\d+)?""")
+
+        /**
+         * 严格解析用户输入：只接受单个数字或 "小-大" 形式的范围，格式错误或范围颠倒时返回 null
+         */
+        fun parseOrNull(fixedOrRangeStr: String?, min: Int, max: Int): FixedOrRangeIntervalLimit? {
+            val str = fixedOrRangeStr?.trim()
+            if (str.isNullOrEmpty() || !FORMAT.matches(str)) return null
+            return try {
+                FixedOrRangeIntervalLimit(str, min, max)
+            } catch (_: IllegalArgumentException) {
+                null
+            }
+        }
+    }
+
     /**
      * 本地辅助类用于解析结果返回
      */
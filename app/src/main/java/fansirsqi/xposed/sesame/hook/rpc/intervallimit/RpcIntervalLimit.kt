@@ -1,14 +1,45 @@
 package fansirsqi.xposed.sesame.hook.rpc.intervallimit
 
+import fansirsqi.xposed.sesame.hook.rpc.metrics.RpcMetrics
 import fansirsqi.xposed.sesame.util.GlobalThreadPools
 import fansirsqi.xposed.sesame.util.Log
+import kotlinx.coroutines.delay
 import java.util.concurrent.ConcurrentHashMap
 
+/**
+ * RPC 调用间隔限制器。
+ *
+ * 每个 [IntervalLimit] 对应一个 [TokenBucket]，以同一个限制对象注册的方法共享同一个桶；
+ * 未配置的方法默认共享一个 [DEFAULT_INTERVAL] 的桶，可选的全局预算对所有 RPC 统一限速。
+ * 获取许可时只做时间槽预约（启用全局预算时在方法桶的锁内完成两步计算），等待在锁外进行（阻塞版本休眠，挂起版本 delay）。
+ */
 object RpcIntervalLimit {
     private const val TAG = "RpcIntervalLimit"
     private const val DEFAULT_INTERVAL = 500
-    private val DEFAULT_INTERVAL_LIMIT = DefaultIntervalLimit(DEFAULT_INTERVAL)
-    private val intervalLimitMap = ConcurrentHashMap<String, IntervalLimit>()
+
+    /**
+     * 通过 addIntervalLimit/updateIntervalLimit 配置的方法
+     */
+    private val intervalLimitMap = ConcurrentHashMap<String, TokenBucket>()
+
+    /**
+     * 未配置的方法共享的默认令牌桶
+     */
+    private val defaultLimit = TokenBucket(DefaultIntervalLimit(DEFAULT_INTERVAL), DEFAULT_INTERVAL)
+
+    /**
+     * 关闭默认共享时，未配置的方法按需创建各自的默认令牌桶
+     */
+    private val defaultLimitMap = ConcurrentHashMap<String, TokenBucket>()
+
+    @Volatile
+    private var defaultShared = true
+
+    /**
+     * 全局预算，为 null 时不限制
+     */
+    @Volatile
+    private var globalLimit: TokenBucket? = null
 
     /**
      * 为指定方法添加间隔限制。
@@ -27,13 +58,11 @@ object RpcIntervalLimit {
      * @param intervalLimit 自定义的间隔限制对象
      */
     fun addIntervalLimit(method: String, intervalLimit: IntervalLimit) {
-        synchronized(intervalLimitMap) {
-            if (intervalLimitMap.containsKey(method)) {
-                Log.record(TAG, "方法：$method 间隔限制已存在")
-                throw IllegalArgumentException("方法：$method 间隔限制已存在")
-            }
-            intervalLimitMap[method] = intervalLimit
+        if (intervalLimitMap.putIfAbsent(method, bucketOf(intervalLimit)) != null) {
+            Log.record(TAG, "方法：$method 间隔限制已存在")
+            throw IllegalArgumentException("方法：$method 间隔限制已存在")
         }
+        defaultLimitMap.remove(method)
     }
 
     /**
@@ -53,31 +82,87 @@ object RpcIntervalLimit {
      * @param intervalLimit 新的自定义间隔限制对象
      */
     fun updateIntervalLimit(method: String, intervalLimit: IntervalLimit) {
-        intervalLimitMap[method] = intervalLimit
+        intervalLimitMap[method] = bucketOf(intervalLimit)
+        defaultLimitMap.remove(method)
+    }
+
+    /**
+     * 同一个限制对象复用已有的令牌桶，保持共同限速
+     */
+    @Synchronized
+    private fun bucketOf(intervalLimit: IntervalLimit): TokenBucket {
+        return intervalLimitMap.values.firstOrNull { it.intervalLimit === intervalLimit }
+            ?: TokenBucket(intervalLimit, DEFAULT_INTERVAL)
+    }
+
+    /**
+     * 设置未配置的方法是否共享默认间隔。
+     *
+     * @param shared true 时所有未配置的方法共用一个默认间隔，false 时各方法各自按默认间隔限速
+     */
+    fun setDefaultIntervalShared(shared: Boolean) {
+        defaultShared = shared
+        defaultLimitMap.clear()
+    }
+
+    /**
+     * 设置所有 RPC 共享的全局间隔限制。
+     *
+     * @param intervalLimit 全局间隔限制对象，为 null 时关闭全局限制
+     */
+    fun setGlobalIntervalLimit(intervalLimit: IntervalLimit?) {
+        globalLimit = intervalLimit?.let { TokenBucket(it, 0) }
+        Log.record(TAG, if (globalLimit != null) "全局RPC间隔限制已启用" else "全局RPC间隔限制已关闭")
     }
 
     /**
      * 进入指定方法的间隔限制，确保调用间隔时间不小于设定值。
+     * 阻塞版本，仅供 Java/非协程调用方使用。
      *
      * @param method 方法名称
      */
     fun enterIntervalLimit(method: String) {
-        val intervalLimit = intervalLimitMap.getOrDefault(method, DEFAULT_INTERVAL_LIMIT)
-        val lock = requireNotNull(intervalLimit) { "间隔限制对象不能为空" }
-
-        synchronized(lock) {
-            // 解决 Int? 的问题，使用默认值兜底
-            val interval = intervalLimit.interval ?: DEFAULT_INTERVAL
-            val now = System.currentTimeMillis()
-            val lastTime = intervalLimit.time
-            val sleep = interval - (now - lastTime)
+        val sleep = reserve(method)
+        if (sleep > 0) {
+            RpcMetrics.recordIntervalWait(method, sleep)
+            GlobalThreadPools.sleepCompat(sleep)
+        }
+    }
 
-            if (sleep > 0) {
-                GlobalThreadPools.sleepCompat(sleep)
-            }
+    /**
+     * 进入指定方法的间隔限制（挂起版本）。
+     * 等待期间挂起协程而不占用调度器线程。
+     *
+     * @param method 方法名称
+     */
+    suspend fun enterIntervalLimitSuspend(method: String) {
+        val sleep = reserve(method)
+        if (sleep > 0) {
+            RpcMetrics.recordIntervalWait(method, sleep)
+            delay(sleep)
+        }
+    }
 
-            intervalLimit.time = now
+    /**
+     * 预约下一次调用的时间槽，返回需要等待的毫秒数。
+     * 先在方法令牌桶中预约，再在全局预算中预约不早于该时间槽的位置；被全局预算推迟时，
+     * 方法令牌桶改从实际时间槽起算间隔。两步在方法桶的锁内完成（只有计算，不等待），
+     * 同一方法的下一次预约一定看到推迟后的结果。
+     */
+    private fun reserve(method: String): Long {
+        val now = System.currentTimeMillis()
+        val bucket = intervalLimitMap[method]
+            ?: if (defaultShared) defaultLimit
+            else defaultLimitMap.computeIfAbsent(method) { TokenBucket(DefaultIntervalLimit(DEFAULT_INTERVAL), DEFAULT_INTERVAL) }
+        val global = globalLimit ?: return bucket.reserve(now) - now
+        val slot = synchronized(bucket) {
+            val interval = bucket.nextInterval()
+            val methodSlot = bucket.reserve(now, interval)
+            val finalSlot = global.reserve(methodSlot)
+            if (finalSlot > methodSlot) bucket.advance(finalSlot, interval)
+            finalSlot
         }
+        return slot - now
     }
 
     /**
@@ -85,5 +170,8 @@ object RpcIntervalLimit {
      */
     fun clearIntervalLimit() {
         intervalLimitMap.clear()
+        defaultLimitMap.clear()
+        defaultShared = true
+        globalLimit = null
     }
-}
\ No newline at end of file
+}
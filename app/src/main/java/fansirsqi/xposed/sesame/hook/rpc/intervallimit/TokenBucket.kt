@@ -0,0 +1,67 @@
+package fansirsqi.xposed.sesame.hook.rpc.intervallimit
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 无锁令牌桶（GCRA 虚拟调度实现）。
+ *
+ * 每隔 [IntervalLimit.interval] 毫秒发放一个令牌，最多累积 [burst] 个；
+ * 范围间隔会在每次预约时重新取随机值，因此固定/范围两种配置语义保持不变。
+ * 调用方通过 [reserve] 预约未来的时间槽，等待在桶外进行，不持有任何锁。
+ */
+class TokenBucket(
+    val intervalLimit: IntervalLimit,
+    private val defaultInterval: Int,
+    private val burst: Int = 1
+) {
+    /**
+     * 理论到达时间：下一个令牌在不考虑突发时的可用时间
+     */
+    private val theoreticalArrival = AtomicLong(0)
+
+    init {
+        require(burst >= 1) { "burst must be >= 1" }
+    }
+
+    /**
+     * 本次预约使用的间隔，范围间隔每次调用都会重新取随机值
+     */
+    fun nextInterval(): Long = (intervalLimit.interval ?: defaultInterval).coerceAtLeast(0).toLong()
+
+    /**
+     * 预约一个不早于 [earliest] 的时间槽。
+     *
+     * @param earliest 期望的最早时间（毫秒时间戳），通常为当前时间或其他限制器给出的时间槽
+     * @return 分配到的时间槽（毫秒时间戳），调用方应等待到该时间再发起请求
+     */
+    fun reserve(earliest: Long): Long = reserve(earliest, nextInterval())
+
+    /**
+     * 以指定间隔预约一个不早于 [earliest] 的时间槽
+     */
+    fun reserve(earliest: Long, interval: Long): Long {
+        val tolerance = (burst - 1) * interval
+        while (true) {
+            val tat = theoreticalArrival.get()
+            val slot = maxOf(earliest, tat - tolerance)
+            if (theoreticalArrival.compareAndSet(tat, maxOf(tat, slot) + interval)) {
+                intervalLimit.time = slot
+                return slot
+            }
+        }
+    }
+
+    /**
+     * 预约到的时间槽被其他限制器推迟到 [slot] 时调用：把理论到达时间推到不早于 [slot] + [interval]，
+     * 保证下一次预约仍以实际发起时间计算间隔
+     */
+    fun advance(slot: Long, interval: Long) {
+        val target = slot + interval
+        while (true) {
+            val tat = theoreticalArrival.get()
+            if (tat >= target) break
+            if (theoreticalArrival.compareAndSet(tat, target)) break
+        }
+        intervalLimit.time = slot
+    }
+}
@@ -0,0 +1,72 @@
+package fansirsqi.xposed.sesame.hook.rpc.metrics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * 无锁延迟直方图（HDR 风格的对数-线性分桶）
+ *
+ * 0~15ms 每毫秒一个桶；之后每个 2 的幂区间再均分为 8 个子桶，相对误差不超过 12.5%。
+ * 最大记录约 4.6 小时，超出的样本计入最后一个桶。记录只是一次原子自增，可在任意线程并发调用。
+ */
+class LatencyHistogram {
+    companion object {
+        private const val LINEAR_LIMIT = 16
+        private const val SUB_BUCKET_BITS = 3
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        private const val MAX_EXPONENT = 23
+        private const val MAX_VALUE = (1L shl (MAX_EXPONENT + 1)) - 1
+        private const val BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - 3) * SUB_BUCKETS
+
+        private fun indexOf(value: Long): Int {
+            val v = value.coerceIn(0, MAX_VALUE)
+            if (v < LINEAR_LIMIT) return v.toInt()
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(v)
+            val sub = ((v ushr (exponent - SUB_BUCKET_BITS)) and (SUB_BUCKETS - 1).toLong()).toInt()
+            return LINEAR_LIMIT + (exponent - 4) * SUB_BUCKETS + sub
+        }
+
+        private fun upperBoundOf(index: Int): Long {
+            if (index < LINEAR_LIMIT) return index.toLong()
+            val exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + 4
+            val sub = (index - LINEAR_LIMIT) % SUB_BUCKETS
+            val width = 1L shl (exponent - SUB_BUCKET_BITS)
+            return (SUB_BUCKETS + sub) * width + width - 1
+        }
+    }
+
+    private val buckets = AtomicLongArray(BUCKET_COUNT)
+    private val count = AtomicLong()
+    private val sum = AtomicLong()
+    private val max = AtomicLong()
+
+    fun record(valueMs: Long) {
+        val v = valueMs.coerceAtLeast(0)
+        buckets.incrementAndGet(indexOf(v))
+        count.incrementAndGet()
+        sum.addAndGet(v)
+        max.accumulateAndGet(v) { a, b -> if (a >= b) a else b }
+    }
+
+    val totalCount: Long get() = count.get()
+
+    val totalMs: Long get() = sum.get()
+
+    val maxMs: Long get() = max.get()
+
+    /**
+     * 百分位数（取所在桶的上界，并不超过实际最大值）
+     * @param percentile 0~100
+     */
+    fun percentile(percentile: Double): Long {
+        val total = count.get()
+        if (total == 0L) return 0
+        val target = Math.ceil(total * percentile / 100.0).toLong().coerceIn(1, total)
+        var seen = 0L
+        for (i in 0 until BUCKET_COUNT) {
+            seen += buckets.get(i)
+            if (seen >= target) return minOf(upperBoundOf(i), max.get())
+        }
+        return max.get()
+    }
+}
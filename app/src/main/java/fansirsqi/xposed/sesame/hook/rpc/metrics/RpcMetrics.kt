@@ -0,0 +1,158 @@
+package fansirsqi.xposed.sesame.hook.rpc.metrics
+
+import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcAttempt
+import fansirsqi.xposed.sesame.util.Files
+import fansirsqi.xposed.sesame.util.Log
+import fansirsqi.xposed.sesame.util.TimeUtil
+import org.json.JSONArray
+import org.json.JSONObject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * 按 RPC 方法统计的运行指标
+ *
+ * 1. 调用数、重试数、失败数、服务端限流次数
+ * 2. 每次尝试的耗时直方图（见 [LatencyHistogram]）
+ * 3. 在 [RpcIntervalLimit][fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit] 中排队等待的时间
+ * 4. 服务端返回的错误码
+ *
+ * 记录全部基于原子计数，不加锁；由 [MeteredRpcBridge][fansirsqi.xposed.sesame.hook.rpc.bridge.MeteredRpcBridge]
+ * 包装实际的 RpcBridge 上报，[dump] 按总耗时降序写入日志目录下的 [FILE_NAME]。
+ */
+object RpcMetrics {
+    private const val TAG = "RpcMetrics"
+    const val FILE_NAME = "rpc_metrics.json"
+
+    // 每个方法最多记录的错误码种类，超出的计入“其他”
+    private const val MAX_ERROR_CODES = 32
+
+    // 两次写文件的最小间隔
+    private const val DUMP_INTERVAL_MS = 5 * 60 * 1000L
+
+    class MethodMetrics {
+        val calls = LongAdder()
+        val retries = LongAdder()
+        val failures = LongAdder()
+        val throttled = LongAdder()
+        val intervalWaits = LongAdder()
+        val intervalWaitMs = LongAdder()
+        val latency = LatencyHistogram()
+        val errorCodes = ConcurrentHashMap<String, LongAdder>()
+
+        fun toJson(method: String): JSONObject {
+            val codes = JSONObject()
+            errorCodes.forEach { (code, count) -> codes.put(code, count.sum()) }
+            return JSONObject()
+                .put("method", method)
+                .put("calls", calls.sum())
+                .put("attempts", latency.totalCount)
+                .put("retries", retries.sum())
+                .put("failures", failures.sum())
+                .put("throttled", throttled.sum())
+                .put("totalMs", latency.totalMs)
+                .put("p50", latency.percentile(50.0))
+                .put("p90", latency.percentile(90.0))
+                .put("p99", latency.percentile(99.0))
+                .put("max", latency.maxMs)
+                .put("intervalWaits", intervalWaits.sum())
+                .put("intervalWaitMs", intervalWaitMs.sum())
+                .put("errorCodes", codes)
+        }
+    }
+
+    private val methods = ConcurrentHashMap<String, MethodMetrics>()
+
+    @Volatile
+    private var startedAt = System.currentTimeMillis()
+    private val lastDumpAt = AtomicLong(0)
+
+    private fun of(method: String?): MethodMetrics = methods.computeIfAbsent(method ?: "unknown") { MethodMetrics() }
+
+    /**
+     * 记录一次尝试
+     *
+     * @param count 当前尝试次数（从1开始），大于1时计为重试
+     * @param errorCode 服务端错误码，没有时为 null
+     * @param throttled 是否为服务端限流
+     */
+    @JvmStatic
+    fun recordAttempt(method: String?, count: Int, latencyMs: Long, result: RpcAttempt, errorCode: String?, throttled: Boolean) {
+        val m = of(method)
+        if (count <= 1) m.calls.increment() else m.retries.increment()
+        m.latency.record(latencyMs)
+        if (result == RpcAttempt.ABORT) m.failures.increment()
+        if (throttled) m.throttled.increment()
+        if (!errorCode.isNullOrEmpty()) {
+            val key = if (m.errorCodes.size < MAX_ERROR_CODES || m.errorCodes.containsKey(errorCode)) errorCode else "其他"
+            m.errorCodes.computeIfAbsent(key) { LongAdder() }.increment()
+        }
+    }
+
+    /**
+     * 重试次数耗尽，计为一次失败
+     */
+    @JvmStatic
+    fun recordExhausted(method: String?) {
+        of(method).failures.increment()
+    }
+
+    /**
+     * 记录一次间隔限制的排队等待
+     */
+    @JvmStatic
+    fun recordIntervalWait(method: String, waitMs: Long) {
+        if (waitMs <= 0) return
+        val m = of(method)
+        m.intervalWaits.increment()
+        m.intervalWaitMs.add(waitMs)
+    }
+
+    /**
+     * 各方法的统计对象（只读视图，计数仍在实时更新）
+     */
+    @JvmStatic
+    fun methods(): Map<String, MethodMetrics> = methods
+
+    /**
+     * 当前统计，按总耗时降序
+     */
+    @JvmStatic
+    fun snapshot(): JSONObject {
+        val list = methods.entries.sortedByDescending { it.value.latency.totalMs }
+        val array = JSONArray()
+        list.forEach { (method, m) -> array.put(m.toJson(method)) }
+        return JSONObject()
+            .put("since", TimeUtil.getCommonDate(startedAt))
+            .put("now", TimeUtil.getCommonDate(System.currentTimeMillis()))
+            .put("methods", array)
+    }
+
+    /**
+     * 写入指标文件
+     * @param force 为 false 时距上次写入不足 [DUMP_INTERVAL_MS] 则跳过
+     */
+    @JvmStatic
+    fun dump(force: Boolean = false) {
+        val now = System.currentTimeMillis()
+        val last = lastDumpAt.get()
+        if (!force && now - last < DUMP_INTERVAL_MS) return
+        if (!lastDumpAt.compareAndSet(last, now)) return
+        if (methods.isEmpty()) return
+        try {
+            Files.write2FileAtomic(snapshot().toString(2), Files.getTargetFileofDir(Files.LOG_DIR, FILE_NAME))
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "写入RPC指标失败", e)
+        }
+    }
+
+    /**
+     * 清空统计
+     */
+    @JvmStatic
+    fun reset() {
+        methods.clear()
+        startedAt = System.currentTimeMillis()
+    }
+}
@@ -1,7 +1,10 @@
 package fansirsqi.xposed.sesame.hook.server
 
 import fansirsqi.xposed.sesame.hook.server.handlers.DebugHandler
+import fansirsqi.xposed.sesame.hook.server.handlers.FriendStatsHandler
 import fansirsqi.xposed.sesame.hook.server.handlers.HttpHandler
+import fansirsqi.xposed.sesame.hook.server.handlers.MetricsHandler
+import fansirsqi.xposed.sesame.hook.server.handlers.TasksHandler
 import fansirsqi.xposed.sesame.util.Log
 import fi.iki.elonen.NanoHTTPD
 import java.io.DataInputStream
@@ -18,9 +21,11 @@ class ModuleHttpServer(
     init {
         // 注册路由
         register("/debugHandler", DebugHandler(secretToken), "调试接口")
+        register("/metrics", MetricsHandler(secretToken), "运行指标")
+        register("/tasks", TasksHandler(secretToken), "任务状态")
+        register("/friendStats", FriendStatsHandler(secretToken), "好友能量统计")
     }
 
-    @Suppress("SameParameterValue")
     private fun register(path: String, handler: HttpHandler, description: String = "") {
         Log.record(tag, "Registering handler : $path -> $description")
         routes[path] = handler
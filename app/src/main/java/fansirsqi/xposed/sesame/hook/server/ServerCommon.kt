@@ -8,4 +8,5 @@ object ServerCommon {
     val jsonMapper: ObjectMapper = ObjectMapper().registerKotlinModule()
     const val MIME_JSON = "application/json"
     const val MIME_PLAINTEXT = "text/plain" // 补上这个
+    const val MIME_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8"
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package fansirsqi.xposed.sesame.hook.server.handlers
+
+import fansirsqi.xposed.sesame.data.FriendEnergyStats
+import fansirsqi.xposed.sesame.entity.FriendWatch
+import fansirsqi.xposed.sesame.util.maps.UserMap
+import fi.iki.elonen.NanoHTTPD.IHTTPSession
+import fi.iki.elonen.NanoHTTPD.Response
+
+/**
+ * 只读好友能量统计接口：当前用户的好友周/总统计与本周排行；
+ * 带 friendId 参数时返回该好友最近 days 天（默认 7，最多 31）的每日收取量
+ */
+class FriendStatsHandler(secretToken: String) : BaseHandler(secretToken) {
+
+    override fun onGet(session: IHTTPSession): Response {
+        val userId = UserMap.currentUid ?: return badRequest("no current user")
+        val friendId = session.parameters["friendId"]?.firstOrNull()
+        if (!friendId.isNullOrEmpty()) {
+            val days = (session.parameters["days"]?.firstOrNull()?.toIntOrNull() ?: 7).coerceIn(1, 31)
+            return ok(
+                mapOf(
+                    "friendId" to friendId,
+                    "history" to FriendEnergyStats.history(userId, friendId, days).map { mapOf("date" to it.first, "energy" to it.second) }
+                )
+            )
+        }
+        val top = (session.parameters["top"]?.firstOrNull()?.toIntOrNull() ?: 10).coerceIn(1, 100)
+        val friends = FriendWatch.getList(userId).sorted().map {
+            mapOf(
+                "userId" to it.id,
+                "name" to it.name,
+                "startTime" to it.startTime,
+                "weekGet" to it.weekGet,
+                "allGet" to it.allGet
+            )
+        }
+        return ok(
+            mapOf(
+                "topWeek" to FriendEnergyStats.topWeek(userId, top).map { mapOf("userId" to it.first, "energy" to it.second) },
+                "friends" to friends
+            )
+        )
+    }
+}
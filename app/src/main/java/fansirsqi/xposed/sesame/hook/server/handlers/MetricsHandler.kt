@@ -0,0 +1,140 @@
+package fansirsqi.xposed.sesame.hook.server.handlers
+
+import fansirsqi.xposed.sesame.hook.ApplicationHook
+import fansirsqi.xposed.sesame.hook.HookSender
+import fansirsqi.xposed.sesame.hook.keepalive.SmartSchedulerManager
+import fansirsqi.xposed.sesame.hook.rpc.metrics.RpcMetrics
+import fansirsqi.xposed.sesame.hook.server.ServerCommon.MIME_PROMETHEUS
+import fansirsqi.xposed.sesame.task.CoroutineTaskRunner
+import fansirsqi.xposed.sesame.task.antForest.EnergyWaitingManager
+import fansirsqi.xposed.sesame.task.antForest.FriendHomeCache
+import fansirsqi.xposed.sesame.util.AdaptiveConcurrencyLimiter
+import fansirsqi.xposed.sesame.util.Log
+import fi.iki.elonen.NanoHTTPD
+import fi.iki.elonen.NanoHTTPD.IHTTPSession
+import fi.iki.elonen.NanoHTTPD.Response
+
+/**
+ * 只读指标接口，Prometheus 文本格式
+ *
+ * 所有数据都读自各模块已经汇总好的计数，不发起 RPC，也不等待任何锁上的长操作。
+ */
+class MetricsHandler(secretToken: String) : BaseHandler(secretToken) {
+
+    override fun onGet(session: IHTTPSession): Response {
+        val out = StringBuilder(4096)
+        writeRpc(out)
+        writeTasks(out)
+        writeScheduler(out)
+        writeMisc(out)
+        return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, MIME_PROMETHEUS, out.toString())
+    }
+
+    private fun writeRpc(out: StringBuilder) {
+        val methods = RpcMetrics.methods()
+        header(out, "sesame_rpc_calls_total", "counter", "RPC 调用次数")
+        methods.forEach { (method, m) -> sample(out, "sesame_rpc_calls_total", m.calls.sum(), "method", method) }
+        header(out, "sesame_rpc_retries_total", "counter", "RPC 重试次数")
+        methods.forEach { (method, m) -> sample(out, "sesame_rpc_retries_total", m.retries.sum(), "method", method) }
+        header(out, "sesame_rpc_failures_total", "counter", "RPC 失败次数")
+        methods.forEach { (method, m) -> sample(out, "sesame_rpc_failures_total", m.failures.sum(), "method", method) }
+        header(out, "sesame_rpc_throttled_total", "counter", "服务端限流次数")
+        methods.forEach { (method, m) -> sample(out, "sesame_rpc_throttled_total", m.throttled.sum(), "method", method) }
+        header(out, "sesame_rpc_interval_wait_ms_total", "counter", "间隔限制排队时间")
+        methods.forEach { (method, m) -> sample(out, "sesame_rpc_interval_wait_ms_total", m.intervalWaitMs.sum(), "method", method) }
+        header(out, "sesame_rpc_errors_total", "counter", "服务端错误码")
+        methods.forEach { (method, m) ->
+            m.errorCodes.forEach { (code, count) -> sample(out, "sesame_rpc_errors_total", count.sum(), "method", method, "code", code) }
+        }
+        header(out, "sesame_rpc_latency_ms", "summary", "单次尝试耗时")
+        methods.forEach { (method, m) ->
+            val h = m.latency
+            for (q in QUANTILES) {
+                sample(out, "sesame_rpc_latency_ms", h.percentile(q * 100), "method", method, "quantile", q.toString())
+            }
+            sample(out, "sesame_rpc_latency_ms_sum", h.totalMs, "method", method)
+            sample(out, "sesame_rpc_latency_ms_count", h.totalCount, "method", method)
+        }
+    }
+
+    private fun writeTasks(out: StringBuilder) {
+        val stats = CoroutineTaskRunner.lastRunStats ?: return
+        header(out, "sesame_task_duration_ms", "gauge", "最近一次执行流程中各任务耗时")
+        stats.taskTimes.forEach { (task, time) -> sample(out, "sesame_task_duration_ms", time, "task", task) }
+        header(out, "sesame_run_duration_ms", "gauge", "最近一次执行流程总耗时")
+        sample(out, "sesame_run_duration_ms", stats.endTime - stats.startTime)
+        header(out, "sesame_run_tasks", "gauge", "最近一次执行流程的任务结果")
+        sample(out, "sesame_run_tasks", stats.success.toLong(), "result", "success")
+        sample(out, "sesame_run_tasks", stats.failure.toLong(), "result", "failure")
+        sample(out, "sesame_run_tasks", stats.skipped.toLong(), "result", "skipped")
+    }
+
+    private fun writeScheduler(out: StringBuilder) {
+        header(out, "sesame_next_execution_timestamp_ms", "gauge", "下次执行时间")
+        sample(out, "sesame_next_execution_timestamp_ms", ApplicationHook.nextExecutionTime)
+        header(out, "sesame_scheduled_task_timestamp_ms", "gauge", "已调度任务的计划执行时间")
+        SmartSchedulerManager.getScheduledTasks().forEach { (name, time) ->
+            sample(out, "sesame_scheduled_task_timestamp_ms", time, "task", name)
+        }
+        header(out, "sesame_wakeup_alarm_timestamp_ms", "gauge", "唤醒闹钟触发时间，0 表示没有")
+        sample(out, "sesame_wakeup_alarm_timestamp_ms", SmartSchedulerManager.getAlarmTime())
+        header(out, "sesame_wakelock_held_ms_total", "counter", "按任务累计持锁时间")
+        SmartSchedulerManager.getWakeLockStats().forEach { (name, held) ->
+            sample(out, "sesame_wakelock_held_ms_total", held, "task", name)
+        }
+        header(out, "sesame_energy_waiting_tasks", "gauge", "蹲点任务数")
+        sample(out, "sesame_energy_waiting_tasks", EnergyWaitingManager.getWaitingTaskCount().toLong())
+    }
+
+    private fun writeMisc(out: StringBuilder) {
+        val limiters = AdaptiveConcurrencyLimiter.all()
+        header(out, "sesame_concurrency_limit", "gauge", "自适应并发上限")
+        limiters.forEach { sample(out, "sesame_concurrency_limit", it.limit.toLong(), "limiter", it.name) }
+        header(out, "sesame_concurrency_in_flight", "gauge", "正在执行的数量")
+        limiters.forEach { sample(out, "sesame_concurrency_in_flight", it.inFlight.toLong(), "limiter", it.name) }
+        header(out, "sesame_friend_home_cache", "gauge", "好友主页缓存命中情况")
+        FriendHomeCache.stats().forEach { (key, value) -> sample(out, "sesame_friend_home_cache", value, "stat", key) }
+        header(out, "sesame_hook_sender_total", "counter", "抓包转发记录数")
+        HookSender.stats().forEach { (key, value) -> sample(out, "sesame_hook_sender_total", value, "stat", key) }
+        header(out, "sesame_log_lines_total", "counter", "各类日志累计行数")
+        Log.getLineCounts().forEach { (type, count) -> sample(out, "sesame_log_lines_total", count, "type", type) }
+    }
+
+    private fun header(out: StringBuilder, name: String, type: String, help: String) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n')
+    }
+
+    /**
+     * @param labels 依次为标签名、标签值
+     */
+    private fun sample(out: StringBuilder, name: String, value: Long, vararg labels: String) {
+        out.append(name)
+        if (labels.isNotEmpty()) {
+            out.append('{')
+            for (i in labels.indices step 2) {
+                if (i > 0) out.append(',')
+                out.append(labels[i]).append("=\"")
+                escape(out, labels[i + 1])
+                out.append('"')
+            }
+            out.append('}')
+        }
+        out.append(' ').append(value).append('\n')
+    }
+
+    private fun escape(out: StringBuilder, value: String) {
+        for (c in value) {
+            when (c) {
+                '\\' -> out.append("\\\\")
+                '"' -> out.append("\\\"")
+                '\n' -> out.append("\\n")
+                else -> out.append(c)
+            }
+        }
+    }
+
+    companion object {
+        private val QUANTILES = doubleArrayOf(0.5, 0.9, 0.99)
+    }
+}
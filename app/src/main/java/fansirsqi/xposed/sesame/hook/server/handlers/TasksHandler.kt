@@ -0,0 +1,49 @@
+package fansirsqi.xposed.sesame.hook.server.handlers
+
+import fansirsqi.xposed.sesame.hook.ApplicationHook
+import fansirsqi.xposed.sesame.hook.keepalive.SmartSchedulerManager
+import fansirsqi.xposed.sesame.task.CoroutineTaskRunner
+import fansirsqi.xposed.sesame.task.antForest.EnergyWaitingManager
+import fi.iki.elonen.NanoHTTPD.IHTTPSession
+import fi.iki.elonen.NanoHTTPD.Response
+
+/**
+ * 只读任务状态接口：最近一次执行流程、已调度任务与蹲点任务
+ */
+class TasksHandler(secretToken: String) : BaseHandler(secretToken) {
+
+    override fun onGet(session: IHTTPSession): Response {
+        val stats = CoroutineTaskRunner.lastRunStats
+        val lastRun = stats?.let {
+            mapOf(
+                "startTime" to it.startTime,
+                "endTime" to it.endTime,
+                "success" to it.success,
+                "failure" to it.failure,
+                "skipped" to it.skipped,
+                "taskTimes" to it.taskTimes
+            )
+        }
+        val waiting = EnergyWaitingManager.getWaitingTasksSnapshot().map {
+            mapOf(
+                "userId" to it.userId,
+                "userName" to it.userName,
+                "bubbleId" to it.bubbleId,
+                "produceTime" to it.produceTime,
+                "fromTag" to it.fromTag,
+                "retryCount" to it.retryCount,
+                "protectionEndTime" to it.getProtectionEndTime()
+            )
+        }
+        return ok(
+            mapOf(
+                "now" to System.currentTimeMillis(),
+                "nextExecutionTime" to ApplicationHook.nextExecutionTime,
+                "lastRun" to lastRun,
+                "scheduled" to SmartSchedulerManager.getScheduledTasks(),
+                "wakeupAlarmTime" to SmartSchedulerManager.getAlarmTime(),
+                "energyWaiting" to waiting
+            )
+        )
+    }
+}
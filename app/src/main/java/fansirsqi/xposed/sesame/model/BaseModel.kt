@@ -38,6 +38,7 @@ class BaseModel : Model() {
         modelFields.addField(stayAwake) //是否保持唤醒状态
         modelFields.addField(manualTriggerAutoSchedule) //手动触发是否自动安排下次执行
         modelFields.addField(checkInterval) //执行间隔时间
+        modelFields.addField(wakeupCoalesceSlack) //唤醒合并窗口
         modelFields.addField(taskExecutionRounds) //轮数
         modelFields.addField(modelSleepTime) //模块休眠时间范围
         modelFields.addField(execAtTimeList) //定时执行的时间点列表
@@ -49,11 +50,15 @@ class BaseModel : Model() {
         modelFields.addField(errNotify) //异常通知开关
         modelFields.addField(setMaxErrorCount) //异常次数阈值
         modelFields.addField(newRpc) //是否启用新接口
+        modelFields.addField(rpcGlobalInterval) //全局RPC间隔
+        modelFields.addField(rpcShareDefaultInterval) //未配置接口共享默认间隔
 
         if (BuildConfig.DEBUG) {
             modelFields.addField(debugMode) //是否开启抓包调试模式
             modelFields.addField(sendHookData) //启用Hook数据转发
             modelFields.addField(sendHookDataUrl) //Hook数据转发地址
+            modelFields.addField(recordRpc) //录制RPC供离线回放
+            modelFields.addField(replayRpcFile) //回放RPC录制文件
         }
 
         modelFields.addField(batteryPerm) //是否申请目标应用的后台运行权限
@@ -96,6 +101,12 @@ class BaseModel : Model() {
         @Getter
         val checkInterval: MultiplyIntegerModelField = MultiplyIntegerModelField("checkInterval", "执行间隔(分钟)", 50, 1, 12 * 60, 60000) //此处调整至30分钟执行一次，可能会比平常耗电一点。。
 
+        /**
+         * 唤醒合并窗口（秒）：截止时间相差在此范围内的调度任务共用一次闹钟唤醒
+         */
+        @Getter
+        val wakeupCoalesceSlack: MultiplyIntegerModelField = MultiplyIntegerModelField("wakeupCoalesceSlack", "唤醒合并窗口(秒)", 60, 0, 600, 1000)
+
         /**
          * 任务执行轮数配置
          */
@@ -168,6 +179,18 @@ class BaseModel : Model() {
         @Getter
         val newRpc: BooleanModelField = BooleanModelField("newRpc", "使用新接口(最低支持v10.3.96.8100)", true)
 
+        /**
+         * 所有 RPC 共享的全局间隔（毫秒），支持固定值或范围，0 表示关闭
+         */
+        @Getter
+        val rpcGlobalInterval: StringModelField = StringModelField("rpcGlobalInterval", "全局RPC间隔(毫秒|范围|关闭:0)", "0")
+
+        /**
+         * 未单独配置间隔的 RPC 是否共享同一个默认间隔（500毫秒）
+         */
+        @Getter
+        val rpcShareDefaultInterval: BooleanModelField = BooleanModelField("rpcShareDefaultInterval", "未配置接口共享默认间隔", true)
+
         /**
          * 是否开启抓包调试模式
          */
@@ -226,6 +249,18 @@ class BaseModel : Model() {
         @Getter
         val sendHookDataUrl: StringModelField = StringModelField("sendHookDataUrl", "Hook数据转发地址", "http://127.0.0.1:9527/hook")
 
+        /**
+         * 将模块发起的 RPC 及响应录制到日志目录，供离线回放
+         */
+        @Getter
+        val recordRpc: BooleanModelField = BooleanModelField("recordRpc", "录制RPC(离线回放用)", false)
+
+        /**
+         * 回放的录制文件，相对路径位于日志目录下；设置后所有 RPC 由录制文件应答，不访问网络
+         */
+        @Getter
+        val replayRpcFile: StringModelField = StringModelField("replayRpcFile", "回放RPC录制文件(为空关闭)", "")
+
         /**
          * 清理数据，在模块销毁时调用，清空 Reserve 和 Beach 数据。
          */
@@ -485,12 +485,18 @@ abstract class ModelTask : Model() {
                     waitingTasks[id] = this
                     isCounted = true
 
-                    // 增加 WakeLock 保底方案：注册一个空的调度任务，利用其 WakeLock 能力确保 CPU 活跃
+                    // 增加 WakeLock 保底方案：注册一个调度任务，由它负责休眠期间的闹钟唤醒和截止前的持锁
+                    val fired = CompletableDeferred<Unit>()
                     if (useSmartScheduler) {
-                        schedulerId = SmartSchedulerManager.schedule(delayTime, "WakeLock:$id") {}
+                        schedulerId = SmartSchedulerManager.schedule(delayTime, "WakeLock:$id") { fired.complete(Unit) }
                     }
 
-                    delay(delayTime)
+                    if (schedulerId != -1) {
+                        // 休眠期间 delay 的计时会停走，以调度器按实际时间触发为准
+                        withTimeoutOrNull(delayTime) { fired.await() }
+                    } else {
+                        delay(delayTime)
+                    }
 
                     // 等待结束，减少统计
                     waitingCount.decrementAndGet()
@@ -3,10 +3,12 @@ package fansirsqi.xposed.sesame.task
 import android.annotation.SuppressLint
 import fansirsqi.xposed.sesame.data.Status
 import fansirsqi.xposed.sesame.hook.ApplicationHook
+import fansirsqi.xposed.sesame.hook.rpc.metrics.RpcMetrics
 import fansirsqi.xposed.sesame.model.BaseModel
 import fansirsqi.xposed.sesame.model.CustomSettings
 import fansirsqi.xposed.sesame.model.Model
 import fansirsqi.xposed.sesame.task.customTasks.ManualTask
+import fansirsqi.xposed.sesame.util.AdaptiveConcurrencyLimiter
 import fansirsqi.xposed.sesame.util.Log
 import fansirsqi.xposed.sesame.util.TimeUtil
 import kotlinx.coroutines.CancellationException
@@ -14,8 +16,6 @@ import kotlinx.coroutines.TimeoutCancellationException
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.coroutineScope
-import kotlinx.coroutines.sync.Semaphore
-import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withTimeout
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicInteger
@@ -34,13 +34,32 @@ class CoroutineTaskRunner(allModels: List<Model>) {
         private const val TAG = "CoroutineTaskRunner"
         private const val DEFAULT_TASK_TIMEOUT = 10 * 60 * 1000L // 10分钟
 
-        // 最大并发数，防止请求过于频繁触发风控
-        // 可以做成配置项，目前硬编码为 3
-        private const val MAX_CONCURRENCY = 3
+        // 并发模块数，防止请求过于频繁触发风控；初始为 3，服务端限流时自动退避
+        private val moduleLimiter = AdaptiveConcurrencyLimiter.taskModules
 
         private val TIMEOUT_WHITELIST = setOf("森林", "庄园", "运动")
+
+        /**
+         * 最近一次执行流程的统计，流程结束时整体替换
+         */
+        @Volatile
+        var lastRunStats: RunStats? = null
+            private set
     }
 
+    /**
+     * 一次执行流程的统计
+     * @param taskTimes 任务（名称-轮次）-> 耗时毫秒
+     */
+    data class RunStats(
+        val startTime: Long,
+        val endTime: Long,
+        val success: Int,
+        val failure: Int,
+        val skipped: Int,
+        val taskTimes: Map<String, Long>
+    )
+
     private val taskList: List<ModelTask> = allModels.filterIsInstance<ModelTask>()
 
     // 统计数据
@@ -71,7 +90,7 @@ class CoroutineTaskRunner(allModels: List<Model>) {
         }
 
         try {
-            Log.record(TAG, "🚀 开始执行任务流程 (并发数: $MAX_CONCURRENCY)")
+            Log.record(TAG, "🚀 开始执行任务流程 (并发上限: ${moduleLimiter.limit})")
 
             CustomSettings.loadForTaskRunner()
             val status = CustomSettings.getOnceDailyStatus(enableLog = true)
@@ -98,6 +117,9 @@ class CoroutineTaskRunner(allModels: List<Model>) {
         } catch (e: Exception) {
             Log.printStackTrace(TAG, "任务流程异常", e)
         } finally {
+            // 本轮结束，立即写回合并中的状态修改
+            Status.flush()
+            RpcMetrics.dump()
             printExecutionSummary(startTime, System.currentTimeMillis())
             scheduleNext()
         }
@@ -120,8 +142,7 @@ class CoroutineTaskRunner(allModels: List<Model>) {
         Log.record(TAG, "🔄 [第 $round/$totalRounds 轮] 开始，共 ${tasksToRun.size} 个任务")
 
         // 2. 并发执行
-        // 使用 Semaphore 限制并发数量
-        val semaphore = Semaphore(MAX_CONCURRENCY)
+        // 使用自适应限制器控制并发数量
 
         // 创建所有任务的 Deferred 对象
         val deferreds = tasksToRun.map { task ->
@@ -131,7 +152,7 @@ class CoroutineTaskRunner(allModels: List<Model>) {
                      Log.record(TAG, "⏸ 任务 ${task.getName()} 因手动模式启动而中止")
                      return@async
                 }
-                semaphore.withPermit {
+                moduleLimiter.withPermit {
                     executeSingleTask(task, round)
                 }
             }
@@ -227,6 +248,9 @@ class CoroutineTaskRunner(allModels: List<Model>) {
     @SuppressLint("DefaultLocale")
     private fun printExecutionSummary(startTime: Long, endTime: Long) {
         val totalTime = endTime - startTime
+        lastRunStats = RunStats(
+            startTime, endTime, successCount.get(), failureCount.get(), skippedCount.get(), HashMap(taskExecutionTimes)
+        )
         val avgTime = if (taskExecutionTimes.isNotEmpty()) taskExecutionTimes.values.average() else 0.0
 
         Log.record(TAG, "📈 === 执行统计 (并发模式) ===")
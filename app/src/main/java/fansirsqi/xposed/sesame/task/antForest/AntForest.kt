@@ -2,6 +2,7 @@ package fansirsqi.xposed.sesame.task.antForest
 
 import android.annotation.SuppressLint
 import de.robv.android.xposed.XposedHelpers
+import fansirsqi.xposed.sesame.data.FriendEnergyStats
 import fansirsqi.xposed.sesame.data.RuntimeInfo
 import fansirsqi.xposed.sesame.data.Status
 import fansirsqi.xposed.sesame.entity.AlipayUser
@@ -12,6 +13,7 @@ import fansirsqi.xposed.sesame.entity.OtherEntityProvider.listHealthcareOptions
 import fansirsqi.xposed.sesame.entity.VitalityStore
 import fansirsqi.xposed.sesame.entity.VitalityStore.Companion.getNameById
 import fansirsqi.xposed.sesame.util.GameTask
+import fansirsqi.xposed.sesame.hook.RequestManager
 import fansirsqi.xposed.sesame.hook.RequestManager.requestString
 import fansirsqi.xposed.sesame.hook.Toast
 import fansirsqi.xposed.sesame.hook.internal.AlipayMiniMarkHelper
@@ -38,6 +40,7 @@ import fansirsqi.xposed.sesame.task.antForest.ForestUtil.hasShield
 import fansirsqi.xposed.sesame.task.antForest.Privilege.studentSignInRedEnvelope
 import fansirsqi.xposed.sesame.task.antForest.Privilege.youthPrivilege
 import fansirsqi.xposed.sesame.ui.ObjReference
+import fansirsqi.xposed.sesame.util.AdaptiveConcurrencyLimiter
 import fansirsqi.xposed.sesame.util.Average
 import fansirsqi.xposed.sesame.util.GlobalThreadPools
 import fansirsqi.xposed.sesame.util.ListUtil
@@ -57,10 +60,11 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Runnable
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
-import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
-import kotlinx.coroutines.sync.Semaphore
 import kotlinx.coroutines.withContext
 import org.json.JSONArray
 import org.json.JSONException
@@ -133,7 +137,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
 
     // 并发控制信号量，限制同时处理的好友数量，避免过多并发导致性能问题
     // 设置为60
-    private val concurrencyLimiter = Semaphore(60)
+    private val concurrencyLimiter = AdaptiveConcurrencyLimiter.forestFriends
 
     private var collectEnergy: BooleanModelField? = null // 收集能量开关
     private var pkEnergy: BooleanModelField? = null // PK能量开关
@@ -206,6 +210,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
     private val robExpandCardTime: ListModelField? = null //1.1倍能量卡时间
 
     private var cycleinterval: IntegerModelField? = null
+    private var waitingMergeWindow: IntegerModelField? = null // 蹲点合并窗口（毫秒）
     private var energyRainChance: BooleanModelField? = null
     private var energyRainTime: StringModelField? = null // 能量雨执行时间
 
@@ -655,6 +660,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
         modelFields.addField(IntegerModelField("tryCount", "尝试收取(次数)", 3, 0, 5).also { tryCount = it })
         modelFields.addField(IntegerModelField("retryInterval", "重试间隔(毫秒)", 1200, 0, 10000).also { retryInterval = it })
         modelFields.addField(IntegerModelField("cycleinterval", "循环间隔(毫秒)", 1500, 0, 10000).also { cycleinterval = it })
+        modelFields.addField(IntegerModelField("waitingMergeWindow", "蹲点合并窗口(毫秒)", 3000, 0, 60000).also { waitingMergeWindow = it })
         //modelFields.addField(BooleanModelField("showBagList", "显示背包内容", true).also { showBagList = it })
         return modelFields
     }
@@ -757,8 +763,12 @@ class AntForest : ModelTask(), EnergyCollectCallback {
         // 记录原始输入值
         Log.record(TAG, description + "原始设置值: [" + intervalStr + "]")
 
-        // 使用自定义区间限制类，处理所有边界情况
-        val limit = FixedOrRangeIntervalLimit(intervalStr, defaultMin, defaultMax)
+        // 格式错误或范围颠倒时回退到默认值，避免在启动时抛出异常
+        val limit = FixedOrRangeIntervalLimit.parseOrNull(intervalStr, defaultMin, defaultMax)
+        if (limit == null) {
+            Log.record(TAG, description + "设置无效，使用默认值")
+            return FixedOrRangeIntervalLimit(null, defaultMin, defaultMax)
+        }
         Log.record(TAG, description + "成功创建区间限制")
         return limit
     }
@@ -1034,7 +1044,9 @@ class AntForest : ModelTask(), EnergyCollectCallback {
             emptyForestCache.clear()
             // 清空跳过用户缓存，下一轮重新检测保护罩状态
             skipUsersCache.clear()
-            // 清空好友主页缓存
+            // 清空好友主页缓存并输出命中率
+            FriendHomeCache.clear()
+            FriendEnergyStats.save()
             val strTotalCollected =
                 "本次总 收:" + totalCollected + "g 帮:" + TOTAL_HELP_COLLECTED + "g 浇:" + TOTAL_WATERED + "g"
             updateLastExecText(strTotalCollected)
@@ -1493,15 +1505,31 @@ class AntForest : ModelTask(), EnergyCollectCallback {
      * @return 更新后的好友主页信息，如果发生错误则返回null。
      */
     private fun queryFriendHome(userId: String?, fromAct: String?): JSONObject? {
+        return parseFriendHome(userId, fromAct, false) {
+            AntForestRpcCall.queryFriendHomePageRpcEntity(userId, fromAct)?.let { RequestManager.requestJson(it, 3, 1000) }
+        }
+    }
+
+    /**
+     * 挂起版本的好友主页查询，等待间隔限制和重试时不占用调度器线程
+     */
+    private suspend fun queryFriendHomeSuspend(userId: String?, fromAct: String?, useCache: Boolean = true): JSONObject? {
+        return parseFriendHome(userId, fromAct, useCache) { ForestUtil.queryFriendHomePageSuspend(userId, fromAct) }
+    }
+
+    /**
+     * @param useCache 是否先读取 [FriendHomeCache]；需要实时状态的路径（蹲点收取、找能量）传 false，
+     * 实际请求成功的结果总会写入缓存
+     */
+    private inline fun parseFriendHome(userId: String?, fromAct: String?, useCache: Boolean, request: () -> JSONObject?): JSONObject? {
+        if (useCache) {
+            FriendHomeCache.get(userId, fromAct)?.let { return it }
+        }
         var friendHomeObj: JSONObject? = null
         try {
             val start = System.currentTimeMillis()
-            val response = AntForestRpcCall.queryFriendHomePage(userId, fromAct)
-            if (response.trim { it <= ' ' }.isEmpty()) {
-                //               Log.error( TAG, "获取好友主页信息失败：响应为空, userId: " + UserMap.getMaskName(userId) + response)
-                return null
-            }
-            friendHomeObj = JSONObject(response)
+            // 直接使用宿主解析好的响应，不再把字符串重新解析一遍
+            friendHomeObj = request() ?: return null
             // 检查响应是否成功
             if (!ResChecker.checkRes(TAG + "查询好友主页失败:", friendHomeObj)) {
                 // 检测并记录"手速太快"错误，避免日志刷屏
@@ -1513,6 +1541,10 @@ class AntForest : ModelTask(), EnergyCollectCallback {
             val serverTime = friendHomeObj.optLong("now", System.currentTimeMillis())
             val offsetTime = offsetTimeMath.nextInteger(((start + end) / 2 - serverTime).toInt())
             //  Log.record(TAG, "服务器时间：$serverTime，本地与服务器时间差：$offsetTime")
+            // start 包含间隔限制的排队与重试等待，缓存只用收到响应的时间计算时间差
+            FriendHomeCache.put(userId, fromAct, friendHomeObj, end - serverTime)
+        } catch (e: CancellationException) {
+            throw e
         } catch (t: Throwable) {
             Log.printStackTrace(TAG, "查询好友主页异常, userId: " + UserMap.getMaskName(userId), t)
         }
@@ -2028,62 +2060,46 @@ class AntForest : ModelTask(), EnergyCollectCallback {
             }
 
             val idList: MutableList<String?> = ArrayList()
+            for (pos in 20..<totalDatas.length()) {
+                val userId = totalDatas.getJSONObject(pos).getString("userId")
+                if (userId != selfId) idList.add(userId)
+            }
             val batchSize = 20
-            val batches = (remainingToProcess + batchSize - 1) / batchSize
+            val batches = idList.chunked(batchSize)
+            // 预取深度跟随共享并发上限：上限越高，允许提前准备好的批次越多
+            val prefetchDepth = (concurrencyLimiter.limit / batchSize).coerceIn(1, 3)
             Log.record(
                 TAG,
-                "🌟 处理所有好友：" + rankingName + "共${totalDatas.length()}位好友，需处理后续${remainingToProcess}位，共${batches}批"
+                "🌟 处理所有好友：" + rankingName + "共${totalDatas.length()}位好友，需处理后续${remainingToProcess}位，共${batches.size}批"
             )
 
-            // 串行处理批次，避免总并发数过高
-            var batchCount = 0
-
-            for (pos in 20..<totalDatas.length()) {
-                // 检查协程是否被取消
-                if (!isActive) {
-                    Log.record(TAG, "协程被取消，停止处理${rankingName}批次")
-                    return@withContext
+            // 流水线：后台按顺序预取下一批的能量标记，当前批次处理的同时下一批的标记已在路上
+            coroutineScope {
+                val robFlagBatches = Channel<JSONArray?>(prefetchDepth)
+                launch {
+                    try {
+                        for (batch in batches) {
+                            robFlagBatches.send(queryRobFlagsSuspend(batch, flag))
+                        }
+                    } finally {
+                        robFlagBatches.close()
+                    }
                 }
-
-                val friend = totalDatas.getJSONObject(pos)
-                val userId = friend.getString("userId")
-                if (userId == selfId) continue
-                idList.add(userId)
-
-                if (idList.size == batchSize) {
-                    val batch: MutableList<String?> = ArrayList(idList)
+                var batchCount = 0
+                for (friendList in robFlagBatches) {
                     val currentBatchNum = ++batchCount
-
-                    // 串行执行：等待当前批次完成再处理下一批次
-                    Log.record(TAG, "[批次$currentBatchNum/$batches] 开始处理...")
+                    if (friendList == null) {
+                        Log.record(TAG, "[批次$currentBatchNum/${batches.size}] 获取能量标记失败，跳过")
+                        continue
+                    }
+                    Log.record(TAG, "[批次$currentBatchNum/${batches.size}] 开始处理...")
                     try {
-                        processFriendsEnergyCoroutine(batch, flag, "批次$currentBatchNum")
-                        Log.record(TAG, "[批次$currentBatchNum/$batches] 处理完成")
+                        processFriendsEnergyCoroutine(friendList, flag, "批次$currentBatchNum")
+                        Log.record(TAG, "[批次$currentBatchNum/${batches.size}] 处理完成")
                     } catch (e: CancellationException) {
-                        Log.record(TAG, "[批次$currentBatchNum/$batches] 被取消")
+                        Log.record(TAG, "[批次$currentBatchNum/${batches.size}] 被取消")
                         throw e
                     }
-
-                    idList.clear()
-                }
-            }
-
-            // 处理剩余的用户
-            if (idList.isNotEmpty()) {
-                // 检查协程是否被取消
-                if (!isActive) {
-                    Log.record(TAG, "协程被取消，跳过${rankingName}剩余用户处理")
-                    return@withContext
-                }
-
-                val currentBatchNum = ++batchCount
-                Log.record(TAG, "[批次$currentBatchNum/$batches] 开始处理...")
-                try {
-                    processFriendsEnergyCoroutine(idList, flag, "批次$currentBatchNum")
-                    Log.record(TAG, "[批次$currentBatchNum/$batches] 处理完成")
-                } catch (e: CancellationException) {
-                    Log.record(TAG, "[批次$currentBatchNum/$batches] 被取消")
-                    throw e
                 }
             }
             tc.countDebug("分批处理" + rankingName + "其他好友")
@@ -2408,14 +2424,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
                 is MutableList<*> -> {
                     // 用户ID列表，需要通过API获取详细信息
                     @Suppress("UNCHECKED_CAST")
-                    val userIds = friendSource as MutableList<String?>
-                    val jsonStr = if (flag == "pk") {
-                        AntForestRpcCall.fillUserRobFlag(JSONArray(userIds), true)
-                    } else {
-                        AntForestRpcCall.fillUserRobFlag(JSONArray(userIds))
-                    }
-                    val batchObj = JSONObject(jsonStr)
-                    batchObj.optJSONArray("friendRanking")
+                    queryRobFlagsSuspend(friendSource as MutableList<String?>, flag)
                 }
 
                 else -> {
@@ -2443,23 +2452,25 @@ class AntForest : ModelTask(), EnergyCollectCallback {
                 friendNames.add(displayName)
             }
 
-            Log.record(TAG, "📋 开始处理${friendList.length()}个${sourceName}（并发数:60）")
+            Log.record(TAG, "📋 开始处理${friendList.length()}个${sourceName}（并发上限:${concurrencyLimiter.limit}）")
             Log.record(TAG, "👥 ${friendNames.joinToString(" | ")}")
             val startTime = System.currentTimeMillis()
 
-            // 使用协程并发处理每个好友（带并发控制）
+            // 使用协程并发处理每个好友（带并发控制），无需进入主页的好友不占用并发名额
             val friendJobs = mutableListOf<Deferred<Unit>>()
             for (i in 0..<friendList.length()) {
                 val friendObj = friendList.getJSONObject(i)
+                if (!needsHomePage(friendObj, flag)) continue
                 val job = async {
-                    concurrencyLimiter.acquire()
                     try {
-                        // 直接调用内部方法，减少一层包装以提高性能
-                        processEnergyInternal(friendObj, flag)
+                        concurrencyLimiter.withPermit {
+                            // 直接调用内部方法，减少一层包装以提高性能
+                            processEnergyInternal(friendObj, flag)
+                        }
+                    } catch (e: CancellationException) {
+                        throw e
                     } catch (e: Exception) {
                         Log.printStackTrace(TAG, "处理好友异常", e)
-                    } finally {
-                        concurrencyLimiter.release()
                     }
                 }
                 friendJobs.add(job)
@@ -2481,6 +2492,51 @@ class AntForest : ModelTask(), EnergyCollectCallback {
         }
     }
 
+    /**
+     * 批量查询好友的能量标记
+     *
+     * @param userIds 用户ID列表
+     * @param flag 标记（空字符串=普通好友，"pk"=PK好友）
+     * @return 带能量标记的好友列表，失败时为 null
+     */
+    private suspend fun queryRobFlagsSuspend(userIds: List<String?>, flag: String): JSONArray? {
+        val rpcEntity = if (flag == "pk") {
+            AntForestRpcCall.fillUserRobFlagRpcEntity(JSONArray(userIds), true)
+        } else {
+            AntForestRpcCall.fillUserRobFlagRpcEntity(JSONArray(userIds))
+        } ?: return null
+        return RequestManager.requestJsonSuspend(rpcEntity, 3, 1500)?.optJSONArray("friendRanking")
+    }
+
+    /**
+     * 根据排行榜/能量标记判断是否值得处理该好友，不需要查询主页的好友在排队前就丢弃
+     *
+     * 收能量只访问标记显示有可收能量或有正在成熟能量球的好友（见 [hasBubbleToVisit]），
+     * 两者都没有的好友不再进入主页，也就不会为其添加蹲点任务；护罩、礼盒条件不受影响。
+     * 与 [processEnergyInternal] 的前置条件一致，执行时仍会再检查一次
+     */
+    private fun needsHomePage(obj: JSONObject, flag: String?): Boolean {
+        val userId = obj.optString("userId")
+        if (userId.isEmpty() || userId == selfId) return false
+        if (ForestUtil.isUserInFrequencyCooldown(userId) || emptyForestCache.containsKey(userId)) return false
+        if ("pk" == flag) {
+            return collectEnergy!!.value && pkEnergy!!.value
+        }
+        val needCollectEnergy = collectEnergy!!.value && !jsonCollectMap.contains(userId) && hasBubbleToVisit(obj)
+        val needHelpProtect = helpFriendCollectType!!.value != HelpFriendCollectType.NONE && obj.optBoolean("canProtectBubble") && Status.canProtectBubbleToday(selfId)
+        val needCollectGiftBox = collectGiftBox!!.value && obj.optBoolean("canCollectGiftBox")
+        return needCollectEnergy || needHelpProtect || needCollectGiftBox
+    }
+
+    /**
+     * 能量标记中是否有可收取或正在成熟（可蹲点）的能量球
+     * 标记中没有这两个字段时无法判断，按需要查询主页处理
+     */
+    private fun hasBubbleToVisit(obj: JSONObject): Boolean {
+        if (!obj.has("canCollectEnergy") && !obj.has("canCollectLaterTime")) return true
+        return obj.optBoolean("canCollectEnergy") || obj.optLong("canCollectLaterTime", 0L) > 0L
+    }
+
     /**
      * 处理单个好友的核心逻辑（无锁）
      *
@@ -2488,7 +2544,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
      * @param flag 标记是普通好友还是PK好友
      */
     @Throws(Exception::class)
-    private fun processEnergyInternal(obj: JSONObject, flag: String?) {
+    private suspend fun processEnergyInternal(obj: JSONObject, flag: String?) {
         if (errorWait) return
         val userId = obj.getString("userId")
         if (userId == selfId) return  // 跳过自己
@@ -2513,10 +2569,10 @@ class AntForest : ModelTask(), EnergyCollectCallback {
                 return
             }
             Log.record(TAG, "  正在查询PK好友 [$userName$userId] 的主页...")
-            collectEnergy(userId, queryFriendHome(userId, "PKContest"), "pk")
+            collectEnergy(userId, queryFriendHomeSuspend(userId, "PKContest"), "pk")
         } else { // 普通好友
             val needCollectEnergy =
-                collectEnergy!!.value && !jsonCollectMap.contains(userId)
+                collectEnergy!!.value && !jsonCollectMap.contains(userId) && hasBubbleToVisit(obj)
             val needHelpProtect = helpFriendCollectType!!.value != HelpFriendCollectType.NONE && obj.optBoolean("canProtectBubble") && Status.canProtectBubbleToday(selfId)
             val needCollectGiftBox = collectGiftBox!!.value && obj.optBoolean("canCollectGiftBox")
             if (!needCollectEnergy && !needHelpProtect && !needCollectGiftBox) {
@@ -2524,18 +2580,17 @@ class AntForest : ModelTask(), EnergyCollectCallback {
                 return
             }
             var userHomeObj: JSONObject? = null
-            // 只要开启了收能量，就进去看看，以便添加蹲点
+            // 有可收能量时进入收取；只有正在成熟的能量球时也进入，以便添加蹲点任务
             if (needCollectEnergy) {
-                // 即使排行榜信息显示没有可收能量，也进去检查，以便添加蹲点任务
                 Log.record(TAG, "  正在查询好友 [$userName$userId] 的主页...")
-                userHomeObj = collectEnergy(userId, queryFriendHome(userId, null), "friend")
+                userHomeObj = collectEnergy(userId, queryFriendHomeSuspend(userId, null), "friend")
             }
             if (needHelpProtect) {
                 val isProtected = isIsProtected(userId)
                 /** lzw add end */
                 if (isProtected) {
                     if (userHomeObj == null) {
-                        userHomeObj = queryFriendHome(userId, null)
+                        userHomeObj = queryFriendHomeSuspend(userId, null)
                     }
                     if (userHomeObj != null) {
                         protectFriendEnergy(userHomeObj)
@@ -2545,7 +2600,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
             // 尝试领取礼物盒
             if (needCollectGiftBox) {
                 if (userHomeObj == null) {
-                    userHomeObj = queryFriendHome(userId, null)
+                    userHomeObj = queryFriendHomeSuspend(userId, null)
                 }
                 if (userHomeObj != null) {
                     collectGiftBox(userHomeObj)
@@ -2578,6 +2633,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
             val userEnergy = userHomeObj.optJSONObject("userEnergy")
             val userId =
                 if (userEnergy == null) UserMap.currentUid else userEnergy.optString("userId")
+            FriendHomeCache.invalidate(userId)
             if (giftBoxInfo != null) {
                 val giftBoxList = giftBoxInfo.optJSONArray("giftBoxList")
                 if (giftBoxList != null && giftBoxList.length() > 0) {
@@ -2615,6 +2671,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
             val userEnergy = userHomeObj.optJSONObject("userEnergy")
             val userId =
                 if (userEnergy == null) UserMap.currentUid else userEnergy.optString("userId")
+            FriendHomeCache.invalidate(userId)
             if (wateringBubbles != null && wateringBubbles.length() > 0) {
                 for (j in 0..<wateringBubbles.length()) {
                     try {
@@ -2661,6 +2718,8 @@ class AntForest : ModelTask(), EnergyCollectCallback {
         val runnable = Runnable {
             try {
                 val userId = collectEnergyEntity.userId
+                // 收取会改变好友主页状态
+                FriendHomeCache.invalidate(userId)
                 // 从 CollectEnergyEntity 中读取是否跳过道具检查的标记
                 val skipPropCheck = collectEnergyEntity.skipPropCheck ?: false
                 usePropBeforeCollectEnergy(userId, skipPropCheck)
@@ -2773,6 +2832,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
                                 userId
                             ) + "]#"
                         totalCollected += collected
+                        if (userId != UserMap.currentUid) FriendEnergyStats.record(userId, collected)
                         if (needDouble) {
                             Log.forest(str + "耗时[" + spendTime + "]ms[双击]")
                             Toast.show("$str[双击]")
@@ -2807,6 +2867,7 @@ class AntForest : ModelTask(), EnergyCollectCallback {
                                 userId
                             ) + "]"
                         totalCollected += collected
+                        if (userId != UserMap.currentUid) FriendEnergyStats.record(userId, collected)
                         if (needDouble) {
                             Log.forest(str + "耗时[" + spendTime + "]ms[双击]")
                             Toast.show("$str[双击]")
@@ -5112,11 +5173,16 @@ class AntForest : ModelTask(), EnergyCollectCallback {
         return 0L // 立即收取，无延迟
     }
 
+    override fun getWaitingMergeWindow(): Long {
+        return (waitingMergeWindow?.value ?: 0).toLong()
+    }
+
     override suspend fun collectUserEnergyForWaiting(task: EnergyWaitingManager.WaitingTask): CollectResult {
         return try {
             withContext(Dispatchers.Default) {
                 // 查询好友主页
-                val friendHomeObj = queryFriendHome(task.userId, task.fromTag)
+                // 到点收取必须读取实时状态，不使用缓存
+                val friendHomeObj = queryFriendHomeSuspend(task.userId, task.fromTag, useCache = false)
                 if (friendHomeObj != null) {
                     // 获取真实用户名
                     val realUserName = getAndCacheUserName(task.userId, friendHomeObj, task.fromTag)
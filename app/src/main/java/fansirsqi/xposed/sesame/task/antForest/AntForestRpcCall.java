@@ -75,6 +75,24 @@ public class AntForestRpcCall {
 
     /** 批量获取好友能量信息（标准版） */
     public static String fillUserRobFlag(JSONArray userIdList) {
+        RpcEntity r = fillUserRobFlagRpcEntity(userIdList);
+        if (r == null) {
+            return "";
+        }
+        return RequestManager.requestString(r.getRequestMethod(), r.getRequestData(), r.getRequestRelation());
+    }
+
+    /** 批量获取好友能量信息（增强版 - PK排行榜专用） */
+    public static String fillUserRobFlag(JSONArray userIdList, boolean needFillUserInfo) {
+        RpcEntity r = fillUserRobFlagRpcEntity(userIdList, needFillUserInfo);
+        if (r == null) {
+            return "";
+        }
+        return RequestManager.requestString(r.getRequestMethod(), r.getRequestData());
+    }
+
+    /** 构建批量获取好友能量信息请求（标准版），供挂起调用方使用 */
+    public static RpcEntity fillUserRobFlagRpcEntity(JSONArray userIdList) {
         try {
             JSONObject arg = new JSONObject();
             arg.put("source", "chInfo_ch_appcenter__chsub_9patch");
@@ -83,23 +101,23 @@ public class AntForestRpcCall {
             JSONObject joRelationLocal = new JSONObject();
             joRelationLocal.put("pathList", new JSONArray().put("friendRanking"));
             String relationLocal = "[" + joRelationLocal + "]";
-            return RequestManager.requestString("alipay.antforest.forest.h5.fillUserRobFlag", param, relationLocal);
+            return new RpcEntity("alipay.antforest.forest.h5.fillUserRobFlag", param, relationLocal);
         } catch (Exception e) {
-            return "";
+            return null;
         }
     }
 
-    /** 批量获取好友能量信息（增强版 - PK排行榜专用） */
-    public static String fillUserRobFlag(JSONArray userIdList, boolean needFillUserInfo) {
+    /** 构建批量获取好友能量信息请求（增强版 - PK排行榜专用），供挂起调用方使用 */
+    public static RpcEntity fillUserRobFlagRpcEntity(JSONArray userIdList, boolean needFillUserInfo) {
         try {
             JSONObject arg = new JSONObject();
             arg.put("source", "chInfo_ch_appcenter__chsub_9patch");
             arg.put("userIdList", userIdList);
             arg.put("needFillUserInfo", needFillUserInfo);
             String param = "[" + arg + "]";
-            return RequestManager.requestString("alipay.antforest.forest.h5.fillUserRobFlag", param);
+            return new RpcEntity("alipay.antforest.forest.h5.fillUserRobFlag", param);
         } catch (Exception e) {
-            return "";
+            return null;
         }
     }
 
@@ -119,6 +137,15 @@ public class AntForestRpcCall {
     }
 
     public static String queryFriendHomePage(String userId, String fromAct) {
+        RpcEntity r = queryFriendHomePageRpcEntity(userId, fromAct);
+        if (r == null) {
+            return "";
+        }
+        return RequestManager.requestString(r.getRequestMethod(), r.getRequestData(), 3, 1000);
+    }
+
+    /** 构建查询好友主页请求，供挂起调用方使用 */
+    public static RpcEntity queryFriendHomePageRpcEntity(String userId, String fromAct) {
         try {
             if (fromAct == null) {
                 fromAct = "TAKE_LOOK_FRIEND";
@@ -133,10 +160,10 @@ public class AntForestRpcCall {
             arg.put("fromAct", fromAct);
             arg.put("version", VERSION);
             String param = "[" + arg + "]";
-            return RequestManager.requestString("alipay.antforest.forest.h5.queryFriendHomePage", param, 3, 1000);
+            return new RpcEntity("alipay.antforest.forest.h5.queryFriendHomePage", param, null);
         } catch (Exception e) {
             Log.printStackTrace(e);
-            return "";
+            return null;
         }
     }
 
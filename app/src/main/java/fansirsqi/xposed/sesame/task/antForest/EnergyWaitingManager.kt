@@ -12,12 +12,13 @@ import kotlinx.coroutines.delay
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.sync.withLock
 import org.json.JSONObject
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.atomic.AtomicLong
 import kotlin.math.max
 import kotlin.random.Random
 
@@ -43,6 +44,13 @@ interface EnergyCollectCallback {
      * @return 延迟时间（毫秒）
      */
     fun getWaitingCollectDelay(): Long
+
+    /**
+     * 获取蹲点合并窗口
+     * 同一用户收取时间相差在窗口内的能量球合并为一次收取
+     * @return 窗口大小（毫秒），0表示只合并同时到期的能量球
+     */
+    fun getWaitingMergeWindow(): Long
 }
 
 /**
@@ -111,6 +119,7 @@ class SmartRetryStrategy {
  * 2. 有保护时：等到保护结束后立即收取
  * 3. 不提前收取：避免无效请求
  * 4. 精确时机：确保在正确的时间点执行收取
+ * 5. 统一调度：所有蹲点挂在同一个时间轮上，同一时刻到期的任务批量并行收取
  *
  * @author Sesame-TK Team
  */
@@ -177,15 +186,31 @@ object EnergyWaitingManager {
                 CoroutineName("PreciseEnergyWaitingManager")
     )
 
-    // 互斥锁，防止并发操作
+    // 互斥锁，保护任务列表的增删与批量维护
     private val taskMutex = Mutex()
 
-    // 最后执行时间，用于间隔控制
-    private val lastExecuteTime = AtomicLong(0)
+    /**
+     * 时间轮中挂载的阶段
+     */
+    private enum class ScheduledStage {
+        VALIDATE, // 倒计时2分钟保护罩验证
+        COLLECT   // 精确收取
+    }
 
-    // 最小间隔时间（毫秒） - 精确蹲点模式，快速收取
-    private const val MIN_INTERVAL_MS = 500L  // 最小0.5秒（精确蹲点模式）
-    private const val MAX_INTERVAL_MS = 1500L // 最大1.5秒（精确蹲点模式）
+    private data class ScheduledTask(val task: WaitingTask, val stage: ScheduledStage)
+
+    // 时间轮调度器：单一驱动协程，同一刻度到期的任务批量分发
+    private val scheduler = TimingWheelScheduler<ScheduledTask>(managerScope) { batch -> dispatchDueTasks(batch) }
+
+    // 正在验证或收取中的任务（已从时间轮摘下）
+    private val activeTaskIds: MutableSet<String> = ConcurrentHashMap.newKeySet()
+
+    // 同时收取的用户数上限，请求节奏仍由RPC间隔限制控制
+    private const val MAX_PARALLEL_COLLECT = 8
+    private val collectPermits = Semaphore(MAX_PARALLEL_COLLECT)
+
+    // 好友任务在倒计时多久时验证保护罩（毫秒）
+    private const val VALIDATE_BEFORE_MS = 2 * 60 * 1000L
 
     // 最大等待时间（毫秒） - 8小时
     private const val MAX_WAIT_TIME_MS = 8 * 60 * 60 * 1000L
@@ -281,7 +306,7 @@ object EnergyWaitingManager {
                             "智能跳过蹲点：[好友|$userName]的保护罩比能量球晚到期${formattedTimeDifference}，无法收取，已跳过。"
                         )
                         // 移除无效的蹲点任务
-                        waitingTasks.remove(taskId)
+                        removeWaitingTask(taskId)
                         EnergyWaitingPersistence.saveTasks(waitingTasks)
                         return@withLock
                     }
@@ -301,7 +326,7 @@ object EnergyWaitingManager {
                 if (waitTime > MAX_WAIT_TIME_MS) {
                      Log.record(TAG, "能量球[$bubbleId]等待时间过长(${waitTime/1000/60}分钟)，跳过蹲点")
                     // 移除过长的任务
-                    waitingTasks.remove(taskId)
+                    removeWaitingTask(taskId)
                     EnergyWaitingPersistence.saveTasks(waitingTasks)
                     return@withLock
                 }
@@ -318,7 +343,7 @@ object EnergyWaitingManager {
                 )
 
                 // 移除旧任务（如果存在）
-                waitingTasks.remove(taskId)
+                removeWaitingTask(taskId)
                 EnergyWaitingPersistence.saveTasks(waitingTasks)
 
                 // 添加新任务
@@ -348,345 +373,400 @@ object EnergyWaitingManager {
                 // 保存到持久化存储
                 EnergyWaitingPersistence.saveTasks(waitingTasks)
 
-                // 启动精确蹲点协程
-                startPreciseWaitingCoroutine(task)
+                // 挂到时间轮
+                scheduleWaitingTask(task)
             }
         }
     }
-
     /**
-     * 启动精确蹲点协程
+     * 将蹲点任务挂到时间轮
      * 核心原则：不提前收取，严格按时机执行
+     *
+     * 好友任务若等待超过2分钟，先在倒计时2分钟时触发一次保护罩验证，
+     * 验证通过后再挂到精确收取时间；主号任务直接挂到能量成熟时间。
      */
-    private fun startPreciseWaitingCoroutine(task: WaitingTask) {
-        managerScope.launch {
-            try {
-                val currentTime = System.currentTimeMillis()
-                val preciseCollectTime = calculatePreciseCollectTime(task)
-                val waitTime = preciseCollectTime - currentTime
-
-                if (waitTime > 0) {
-                    // 需要等待的任务
-                    val protectionInfo = if (task.isSelf()) {
-                        "能量成熟"
-                    } else if (task.hasProtection(currentTime)) {
-                        "保护结束"
-                    } else {
-                        "能量成熟"
-                    }
-                    val waitMinutes = waitTime / 1000 / 60
-                    Log.record(TAG, "🕐 蹲点[${task.getUserTypeTag()}${task.userName}]等待${waitMinutes}分钟(${protectionInfo}→${TimeUtil.getCommonDate(preciseCollectTime)})")
-
-                    // 倒计时前2分钟验证策略
-                    val twoMinutes = 2 * 60 * 1000L
-                    var remainingWait = waitTime
-
-                    // 阶段1：如果等待时间>2分钟且是好友任务，先等到倒计时2分钟时验证
-                    if (waitTime > twoMinutes && !task.isSelf()) {
-                        val waitBeforeValidation = waitTime - twoMinutes
-                         Log.record(TAG, "蹲点[${task.getUserTypeTag()}${task.userName}]将在${(waitBeforeValidation/1000/60).toInt()}分钟后验证")
-                        delay(waitBeforeValidation)
-
-                        // 检查任务是否被移除
-                        if (!waitingTasks.containsKey(task.taskId)) {
-                            Log.record(TAG, "⚠️ 蹲点[${task.getUserTypeTag()}${task.userName}]已被移除")
-                            return@launch
-                        }
+    private fun scheduleWaitingTask(task: WaitingTask) {
+        val currentTime = System.currentTimeMillis()
+        val preciseCollectTime = calculatePreciseCollectTime(task)
+        val waitTime = preciseCollectTime - currentTime
 
-                        // 倒计时2分钟验证：查询好友保护罩状态
-                        Log.record(TAG, "🔍 倒计时2分钟验证[${task.getUserTypeTag()}${task.userName}]保护罩状态...")
-                        try {
-                            val userHomeResponse = AntForestRpcCall.queryFriendHomePage(task.userId, task.fromTag)
-                            if (!userHomeResponse.isNullOrEmpty()) {
-                                val userHomeObj = JSONObject(userHomeResponse)
-                                if (ForestUtil.shouldSkipWaitingDueToProtection(userHomeObj, task.produceTime)) {
-                                    // 有保护罩覆盖，取消蹲点
-                                    val shieldEnd = ForestUtil.getShieldEndTime(userHomeObj)
-                                    val bombEnd = ForestUtil.getBombCardEndTime(userHomeObj)
-                                    val protectionEnd = maxOf(shieldEnd, bombEnd)
-                                    val coverMinutes = (protectionEnd - task.produceTime) / 1000 / 60
-                                    Log.record(TAG, "❌ 验证失败[${task.getUserTypeTag()}${task.userName}]球[${task.bubbleId}]：保护罩覆盖${coverMinutes}分钟，取消蹲点")
-                                    waitingTasks.remove(task.taskId)
-                                    EnergyWaitingPersistence.saveTasks(waitingTasks)
-                                    return@launch
-                                } else {
-                                    // 无保护罩，继续等待
-                                    Log.record(TAG, "✅ 验证通过[${task.getUserTypeTag()}${task.userName}]：无保护罩，继续等待2分钟")
-                                }
-                            } else {
-                                 Log.record(TAG, "验证[${task.getUserTypeTag()}${task.userName}]：无法获取主页信息，继续执行")
-                            }
-                        } catch (e: Exception) {
-                             Log.record(TAG, "验证[${task.getUserTypeTag()}${task.userName}]出错: ${e.message}，继续执行")
-                        }
+        if (waitTime <= 0) {
+            scheduler.schedule(task.taskId, preciseCollectTime, ScheduledTask(task, ScheduledStage.COLLECT))
+            return
+        }
 
-                        // 更新剩余等待时间为2分钟
-                        remainingWait = twoMinutes
-                    }
+        val protectionInfo = if (task.isSelf()) {
+            "能量成熟"
+        } else if (task.hasProtection(currentTime)) {
+            "保护结束"
+        } else {
+            "能量成熟"
+        }
+        val waitMinutes = waitTime / 1000 / 60
+        Log.record(TAG, "🕐 蹲点[${task.getUserTypeTag()}${task.userName}]等待${waitMinutes}分钟(${protectionInfo}→${TimeUtil.getCommonDate(preciseCollectTime)})")
+
+        // 倒计时前2分钟验证策略：等待时间>2分钟且是好友任务，先在倒计时2分钟时验证
+        if (waitTime > VALIDATE_BEFORE_MS && !task.isSelf()) {
+            val waitBeforeValidation = waitTime - VALIDATE_BEFORE_MS
+            Log.record(TAG, "蹲点[${task.getUserTypeTag()}${task.userName}]将在${(waitBeforeValidation / 1000 / 60).toInt()}分钟后验证")
+            scheduler.schedule(task.taskId, preciseCollectTime - VALIDATE_BEFORE_MS, ScheduledTask(task, ScheduledStage.VALIDATE))
+        } else {
+            scheduler.schedule(task.taskId, preciseCollectTime, ScheduledTask(task, ScheduledStage.COLLECT))
+        }
+    }
 
-                    // 阶段2：最后阶段等待（主号全程或好友验证后的2分钟）
-                    val checkInterval = 30000L // 30秒检查一次
-                    while (remainingWait > 0 && isActive) {
-                        val currentWait = minOf(remainingWait, checkInterval)
-                        delay(currentWait)
-                        remainingWait -= currentWait
-
-                        // 检查任务是否仍然有效
-                        if (!waitingTasks.containsKey(task.taskId)) {
-                            Log.record(TAG, "⚠️ 蹲点[${task.getUserTypeTag()}${task.userName}]已被移除")
-                            return@launch
-                        }
+    /**
+     * 移除蹲点任务并取消时间轮上的挂载
+     */
+    private fun removeWaitingTask(taskId: String) {
+        waitingTasks.remove(taskId)
+        scheduler.cancel(taskId)
+    }
 
-                        // 仅在最后1分钟显示倒计时
-                        if (remainingWait in 1..60000L) {
-                             Log.record(TAG, "蹲点[${task.getUserTypeTag()}${task.userName}]倒计时${remainingWait/1000}秒")
-                        }
+    /**
+     * 分发时间轮同一刻度到期的任务
+     * 验证任务各自并行；收取任务按用户分组，不同用户并行、同一用户内顺序执行，
+     * 请求节奏交给RPC间隔限制控制，不再逐个串行排队
+     */
+    private fun dispatchDueTasks(batch: List<ScheduledTask>) {
+        val (validateTasks, collectTasks) = batch.partition { it.stage == ScheduledStage.VALIDATE }
+        validateTasks.forEach { scheduled ->
+            activeTaskIds.add(scheduled.task.taskId)
+            managerScope.launch {
+                try {
+                    validateBeforeCollect(scheduled.task)
+                } finally {
+                    activeTaskIds.remove(scheduled.task.taskId)
+                }
+            }
+        }
+        if (collectTasks.size > 1) {
+            Log.record(TAG, "⏰ 同一时刻${collectTasks.size}个蹲点到期，并行收取")
+        }
+        collectTasks.groupBy { it.task.userId }.values.forEach { userTasks ->
+            // 同一用户同刻到期的任务本就一次收取，再并入合并窗口内即将到期的任务
+            // 等待期间被移除或被更新的任务不再执行
+            val dueTasks = userTasks.map { it.task }.filter { waitingTasks[it.taskId] === it }
+            if (dueTasks.isEmpty()) return@forEach
+            val group = dueTasks + absorbUpcomingTasks(dueTasks.first().userId)
+            group.forEach { activeTaskIds.add(it.taskId) }
+            managerScope.launch {
+                try {
+                    val leader = group.maxBy { calculatePreciseCollectTime(it) }
+                    if (group.size > 1) {
+                        Log.record(TAG, "🧺 合并蹲点[${leader.getUserTypeTag()}${leader.userName}]${group.size}个能量球，一次收取")
                     }
+                    // 许可只在实际收取请求期间持有，最终时机检查的等待不占用许可
+                    runCollectStage(leader, group.filter { it !== leader })
+                } finally {
+                    group.forEach { activeTaskIds.remove(it.taskId) }
+                }
+            }
+        }
+    }
 
-                    // 等待完成，最终检查任务有效性
-                    if (!waitingTasks.containsKey(task.taskId)) {
-                        Log.record(TAG, "⚠️ 蹲点[${task.getUserTypeTag()}${task.userName}]等待过程中被移除")
-                        return@launch
-                    }
+    /**
+     * 从时间轮上摘下该用户在合并窗口内即将到期的收取任务
+     * 好友主页查询与收取接口一次即可返回并收取多个能量球，合并后按用户只发一次请求
+     */
+    private fun absorbUpcomingTasks(userId: String): List<WaitingTask> {
+        val window = energyCollectCallback?.getWaitingMergeWindow() ?: 0L
+        if (window <= 0) return emptyList()
+        val deadline = System.currentTimeMillis() + window
+        return waitingTasks.values.filter { task ->
+            task.userId == userId &&
+                    !activeTaskIds.contains(task.taskId) &&
+                    calculatePreciseCollectTime(task) <= deadline &&
+                    scheduler.cancel(task.taskId)
+        }
+    }
+
+    /**
+     * 倒计时2分钟验证：查询好友保护罩状态，通过后挂到精确收取时间
+     */
+    private suspend fun validateBeforeCollect(task: WaitingTask) {
+        // 检查任务是否被移除
+        if (waitingTasks[task.taskId] !== task) {
+            Log.record(TAG, "⚠️ 蹲点[${task.getUserTypeTag()}${task.userName}]已被移除")
+            return
+        }
 
-                    Log.record(TAG, "✅ 蹲点[${task.getUserTypeTag()}${task.userName}]等待完成，开始收取")
+        Log.record(TAG, "🔍 倒计时2分钟验证[${task.getUserTypeTag()}${task.userName}]保护罩状态...")
+        try {
+            // 本轮刚查询过的主页（一分钟内）可直接复用，保护罩状态与查询来源无关，复用普通好友主页
+            val userHomeObj = FriendHomeCache.get(task.userId, null)
+                ?: ForestUtil.queryFriendHomePageSuspend(task.userId, task.fromTag)
+            if (userHomeObj != null) {
+                if (ForestUtil.shouldSkipWaitingDueToProtection(userHomeObj, task.produceTime)) {
+                    // 有保护罩覆盖，取消蹲点
+                    val shieldEnd = ForestUtil.getShieldEndTime(userHomeObj)
+                    val bombEnd = ForestUtil.getBombCardEndTime(userHomeObj)
+                    val protectionEnd = maxOf(shieldEnd, bombEnd)
+                    val coverMinutes = (protectionEnd - task.produceTime) / 1000 / 60
+                    Log.record(TAG, "❌ 验证失败[${task.getUserTypeTag()}${task.userName}]球[${task.bubbleId}]：保护罩覆盖${coverMinutes}分钟，取消蹲点")
+                    removeWaitingTasks(listOf(task))
+                    EnergyWaitingPersistence.saveTasks(waitingTasks)
+                    return
                 } else {
-                    // 已经到时间的任务，立即执行
-                    val overdueMinutes = (-waitTime) / 1000 / 60
-                    if (overdueMinutes > 2) {
-                        // 超时超过2分钟，记录警告
-                        Log.record(TAG, "⚡ 蹲点[${task.getUserTypeTag()}${task.userName}]已超时${overdueMinutes}分钟，立即收取")
-                    } else {
-                        // 刚到时间或刚超时，正常执行
-                        Log.record(TAG, "✅ 蹲点[${task.getUserTypeTag()}${task.userName}]时间已到，立即收取")
-                    }
+                    // 无保护罩，继续等待
+                    Log.record(TAG, "✅ 验证通过[${task.getUserTypeTag()}${task.userName}]：无保护罩，继续等待2分钟")
                 }
+            } else {
+                Log.record(TAG, "验证[${task.getUserTypeTag()}${task.userName}]：无法获取主页信息，继续执行")
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.record(TAG, "验证[${task.getUserTypeTag()}${task.userName}]出错: ${e.message}，继续执行")
+        }
 
-                // 执行收取任务
-                executePreciseWaitingTask(task)
+        // 验证期间任务可能被更新或移除
+        if (waitingTasks[task.taskId] === task) {
+            scheduler.schedule(task.taskId, calculatePreciseCollectTime(task), ScheduledTask(task, ScheduledStage.COLLECT))
+        }
+    }
 
-            } catch (_: CancellationException) {
-                 Log.record(TAG, "精确蹲点任务[${task.taskId}]被取消")
-            } catch (e: Exception) {
-                Log.printStackTrace(TAG, "精确蹲点任务[${task.taskId}]执行异常", e)
+    /**
+     * 收取阶段：时间轮到期后执行收取，异常时按智能重试策略重新挂载
+     *
+     * @param task 主任务（同组中收取时间最晚的一个）
+     * @param merged 合并到本次收取的同用户其他任务，结果与主任务一致
+     */
+    private suspend fun runCollectStage(task: WaitingTask, merged: List<WaitingTask> = emptyList()) {
+        val group = listOf(task) + merged
+        try {
+            // 等待期间被移除或被更新的任务不再执行，被它合并的任务已从时间轮摘下，需要重新挂回
+            if (waitingTasks[task.taskId] !== task) {
+                Log.record(TAG, "⚠️ 蹲点[${task.getUserTypeTag()}${task.userName}]等待过程中被移除")
+                rescheduleMerged(merged)
+                return
+            }
 
-                // 精确重试逻辑
-                val currentTime = System.currentTimeMillis()
-                val timeToTarget = calculatePreciseCollectTime(task) - currentTime
+            val waitTime = calculatePreciseCollectTime(task) - System.currentTimeMillis()
+            val overdueMinutes = (-waitTime) / 1000 / 60
+            if (overdueMinutes > 2) {
+                // 超时超过2分钟，记录警告
+                Log.record(TAG, "⚡ 蹲点[${task.getUserTypeTag()}${task.userName}]已超时${overdueMinutes}分钟，立即收取")
+            } else {
+                Log.record(TAG, "✅ 蹲点[${task.getUserTypeTag()}${task.userName}]时间已到，开始收取")
+            }
 
-                if (smartRetryStrategy.shouldRetry(task.retryCount, e.message, timeToTarget)) {
-                    val retryTask = task.withRetry()
-                    waitingTasks[task.taskId] = retryTask
+            // 执行收取任务
+            executePreciseWaitingTask(task, group)
 
-                    // 重试延迟
-                    val retryDelay = smartRetryStrategy.getRetryDelay(task.retryCount, e.message)
-                     Log.record(TAG, "精确蹲点任务[${task.taskId}]将在${retryDelay/1000}秒后重试")
-                    delay(retryDelay)
-                    startPreciseWaitingCoroutine(retryTask)
-                } else {
-                    Log.error(TAG, "精确蹲点任务[${task.taskId}]不满足重试条件，放弃")
-                    waitingTasks.remove(task.taskId)
-                    EnergyWaitingPersistence.saveTasks(waitingTasks)
-                }
+        } catch (_: CancellationException) {
+            Log.record(TAG, "精确蹲点任务[${task.taskId}]被取消")
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "精确蹲点任务[${task.taskId}]执行异常", e)
+
+            // 精确重试逻辑
+            val currentTime = System.currentTimeMillis()
+            val timeToTarget = calculatePreciseCollectTime(task) - currentTime
+
+            if (smartRetryStrategy.shouldRetry(task.retryCount, e.message, timeToTarget)) {
+                val retryDelay = smartRetryStrategy.getRetryDelay(task.retryCount, e.message)
+                Log.record(TAG, "精确蹲点任务[${task.taskId}]将在${retryDelay / 1000}秒后重试")
+                group.forEach { scheduleRetry(it, retryDelay) }
+            } else {
+                Log.error(TAG, "精确蹲点任务[${task.taskId}]不满足重试条件，放弃")
+                removeWaitingTasks(group)
+                EnergyWaitingPersistence.saveTasks(waitingTasks)
             }
         }
     }
 
     /**
-     * 执行精确蹲点收取任务
-     * 核心原则：在正确的时机执行，不提前不延后
+     * 合并收取的主任务失效时，把仍然有效的被合并任务按各自的时间重新挂到时间轮
      */
-    @SuppressLint("SimpleDateFormat")
-    private suspend fun executePreciseWaitingTask(task: WaitingTask) {
+    private suspend fun rescheduleMerged(merged: List<WaitingTask>) {
+        if (merged.isEmpty()) return
         taskMutex.withLock {
-            try {
-                // 检查任务是否仍然有效
-                if (!waitingTasks.containsKey(task.taskId)) {
-                     Log.record(TAG, "精确蹲点任务[${task.taskId}]已被移除，跳过执行")
-                    return@withLock
-                }
+            merged.filter { waitingTasks[it.taskId] === it }.forEach { scheduleWaitingTask(it) }
+        }
+    }
 
-                // 随机间隔控制：防止频繁请求，使用随机间隔更自然
-                val currentTime = System.currentTimeMillis()
-                val lastExecute = lastExecuteTime.get()
+    /**
+     * 批量移除蹲点任务
+     * 与 addWaitingTask 同在 [taskMutex] 内执行，且只移除仍是同一实例的任务，执行期间被刷新的任务保留
+     */
+    private suspend fun removeWaitingTasks(tasks: List<WaitingTask>) {
+        taskMutex.withLock {
+            tasks.forEach { task ->
+                if (waitingTasks[task.taskId] === task) removeWaitingTask(task.taskId)
+            }
+        }
+    }
 
-                if (lastExecute == 0L) {
-                    // 第一次执行，立即收取
-                    Log.record(TAG, "⚡ 首次蹲点收取，立即执行任务[${task.taskId}]")
-                } else {
-                    // 非首次执行，应用随机间隔控制
-                    val timeSinceLastExecute = currentTime - lastExecute
+    /**
+     * 以重试任务替换原任务，并在 [retryDelay] 后重新挂到时间轮
+     * 原任务已被刷新或移除时不再重试
+     */
+    private suspend fun scheduleRetry(task: WaitingTask, retryDelay: Long) {
+        taskMutex.withLock {
+            if (waitingTasks[task.taskId] !== task) return@withLock
+            val retryTask = task.withRetry()
+            waitingTasks[task.taskId] = retryTask
+            scheduler.schedule(
+                retryTask.taskId,
+                System.currentTimeMillis() + retryDelay,
+                ScheduledTask(retryTask, ScheduledStage.COLLECT)
+            )
+        }
+    }
 
-                    // 生成随机间隔时间（0.5-1.5秒，精确蹲点模式）
-                    val randomIntervalMs = Random.nextLong(MIN_INTERVAL_MS, MAX_INTERVAL_MS + 1)
+    /**
+     * 执行精确蹲点收取任务
+     * 核心原则：在正确的时机执行，不提前不延后
+     * 时间轮按秒级刻度唤醒，刻度内剩余的毫秒由最终时机检查补齐
+     */
+    @SuppressLint("SimpleDateFormat")
+    private suspend fun executePreciseWaitingTask(task: WaitingTask, group: List<WaitingTask> = listOf(task)) {
+        try {
+            // 检查任务是否仍然有效
+            if (!waitingTasks.containsKey(task.taskId)) {
+                Log.record(TAG, "精确蹲点任务[${task.taskId}]已被移除，跳过执行")
+                return
+            }
 
-                    if (timeSinceLastExecute < randomIntervalMs) {
-                        val delayTime = randomIntervalMs - timeSinceLastExecute
-                        Log.record(TAG, "🎲 随机间隔控制：延迟${delayTime / 1000}秒执行蹲点任务[${task.taskId}]（随机间隔${randomIntervalMs/1000}秒）")
-                        delay(delayTime)
-                    } else {
-                         Log.record(TAG, "⚡ 无需延迟：距离上次执行已超过${timeSinceLastExecute/1000}秒")
-                    }
+            // 验证执行时机是否正确
+            val actualTime = System.currentTimeMillis()
+            val energyTimeRemain = (task.produceTime - actualTime) / 1000
+            val isEnergyMature = task.produceTime <= actualTime
+            // 自己的账号：只检查能量成熟时间，不检查保护
+            // 好友账号：检查能量成熟和保护结束
+            val protectionEndTime = if (task.isSelf()) 0L else task.getProtectionEndTime()
+            val isProtectionEnd = if (task.isSelf()) true else protectionEndTime <= actualTime
+            if (energyTimeRemain > 300) { // 如果还有超过5分钟才成熟，直接跳过
+                Log.record(TAG, "⚠️ 能量距离成熟还有${energyTimeRemain}秒，时机过早，跳过本次收取")
+                return
+            }
+            // 判断是否需要详细日志（未成熟或刚成熟2分钟内）
+            val needDetailLog = !isEnergyMature || (!task.isSelf() && !isProtectionEnd) || energyTimeRemain > -120
+            if (needDetailLog) {
+                // 详细调试日志：用于未成熟或刚成熟的任务
+                Log.record(TAG, "🔍 蹲点任务[${task.getUserTypeTag()}${task.userName}]时机检查详情：")
+                Log.record(TAG, "  系统当前时间: ${System.currentTimeMillis()} (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date())})")
+                Log.record(TAG, "  实际执行时间: $actualTime (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date(actualTime))})")
+                Log.record(TAG, "  能量成熟时间: ${task.produceTime} (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date(task.produceTime))})")
+                if (!task.isSelf()) {
+                    Log.record(TAG, "  保护结束时间: $protectionEndTime (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date(protectionEndTime))})")
                 }
-
-                // 更新最后执行时间
-                lastExecuteTime.set(System.currentTimeMillis())
-                // 验证执行时机是否正确
-                val actualTime = System.currentTimeMillis()
-                val energyTimeRemain = (task.produceTime - actualTime) / 1000
-                val isEnergyMature = task.produceTime <= actualTime
-                // 自己的账号：只检查能量成熟时间，不检查保护
-                // 好友账号：检查能量成熟和保护结束
-                val protectionEndTime = if (task.isSelf()) 0L else task.getProtectionEndTime()
-                val isProtectionEnd = if (task.isSelf()) true else protectionEndTime <= actualTime
-                if (energyTimeRemain > 300) { // 如果还有超过5分钟才成熟，直接跳过
-                     Log.record(TAG, "⚠️ 能量距离成熟还有${energyTimeRemain}秒，时机过早，跳过本次收取")
-                    return@withLock
+                Log.record(TAG, "  时间差异: 系统时间与执行时间差${System.currentTimeMillis() - actualTime}ms")
+                Log.record(TAG, "  能量剩余时间: ${energyTimeRemain}秒")
+                Log.record(TAG, "  能量是否成熟: $isEnergyMature")
+                if (!task.isSelf()) {
+                    Log.record(TAG, "  保护是否结束: $isProtectionEnd")
                 }
-                // 判断是否需要详细日志（未成熟或刚成熟2分钟内）
-                val needDetailLog = !isEnergyMature || (!task.isSelf() && !isProtectionEnd) || energyTimeRemain > -120
-                if (needDetailLog) {
-                    // 详细调试日志：用于未成熟或刚成熟的任务
-                    Log.record(TAG, "🔍 蹲点任务[${task.getUserTypeTag()}${task.userName}]时机检查详情：")
-                    Log.record(TAG, "  系统当前时间: ${System.currentTimeMillis()} (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date())})")
-                    Log.record(TAG, "  实际执行时间: $actualTime (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date(actualTime))})")
-                    Log.record(TAG, "  能量成熟时间: ${task.produceTime} (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date(task.produceTime))})")
-                    if (!task.isSelf()) {
-                        Log.record(TAG, "  保护结束时间: $protectionEndTime (${SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Date(protectionEndTime))})")
-                    }
-                    Log.record(TAG, "  时间差异: 系统时间与执行时间差${System.currentTimeMillis() - actualTime}ms")
-                    Log.record(TAG, "  能量剩余时间: ${energyTimeRemain}秒")
-                    Log.record(TAG, "  能量是否成熟: $isEnergyMature")
-                    if (!task.isSelf()) {
-                        Log.record(TAG, "  保护是否结束: $isProtectionEnd")
-                    }
+            } else {
+                // 简化日志：用于已成熟超过2分钟的任务
+                val matureTime = (-energyTimeRemain) / 60 // 成熟了多少分钟
+                Log.record(TAG, "⚡ 蹲点任务[${task.getUserTypeTag()}${task.userName}]已成熟${matureTime.toInt()}分钟，直接收取")
+            }
+
+            // 最终时机检查
+            if (!isEnergyMature || !isProtectionEnd) {
+                val additionalWait = if (task.isSelf()) {
+                    // 自己的账号：只等待能量成熟
+                    task.produceTime - actualTime
                 } else {
-                    // 简化日志：用于已成熟超过2分钟的任务
-                    val matureTime = (-energyTimeRemain) / 60 // 成熟了多少分钟
-                    Log.record(TAG, "⚡ 蹲点任务[${task.getUserTypeTag()}${task.userName}]已成熟${matureTime.toInt()}分钟，直接收取")
+                    // 好友账号：等待能量成熟和保护结束的较晚时间
+                    max(protectionEndTime - actualTime, task.produceTime - actualTime)
                 }
 
-                // 最终时机检查
-                if (!isEnergyMature || !isProtectionEnd) {
-                    val additionalWait = if (task.isSelf()) {
-                        // 自己的账号：只等待能量成熟
-                        task.produceTime - actualTime
-                    } else {
-                        // 好友账号：等待能量成熟和保护结束的较晚时间
-                        max(protectionEndTime - actualTime, task.produceTime - actualTime)
-                    }
-
-                    if (additionalWait in 1..<1800000L) { // 最多额外等待30分钟
-                        val waitReason = if (!isEnergyMature) "能量未成熟" else ""
-                        val protectionReason = if (!task.isSelf() && !isProtectionEnd) "保护未结束" else ""
-                        val combinedReason = listOf(waitReason, protectionReason).filter { it.isNotEmpty() }.joinToString("且")
+                if (additionalWait in 1..<1800000L) { // 最多额外等待30分钟
+                    val waitReason = if (!isEnergyMature) "能量未成熟" else ""
+                    val protectionReason = if (!task.isSelf() && !isProtectionEnd) "保护未结束" else ""
+                    val combinedReason = listOf(waitReason, protectionReason).filter { it.isNotEmpty() }.joinToString("且")
 
-                        Log.record(TAG, "⏳ 最终时机检查：等待${additionalWait/1000}秒 ($combinedReason)")
-                        delay(additionalWait)
+                    Log.record(TAG, "⏳ 最终时机检查：等待${additionalWait/1000}秒 ($combinedReason)")
+                    delay(additionalWait)
 
-                        // 等待后重新检查
-                        val newActualTime = System.currentTimeMillis()
-                        val newIsEnergyMature = task.produceTime <= newActualTime
-                        if (task.isSelf()) {
-                            Log.record(TAG, "⏳ 等待完成：能量成熟[$newIsEnergyMature]")
-                        } else {
-                            val newIsProtectionEnd = task.getProtectionEndTime() <= newActualTime
-                            Log.record(TAG, "⏳ 等待完成：能量成熟[$newIsEnergyMature] 保护结束[$newIsProtectionEnd]")
-                        }
-                    } else if (additionalWait > 1800000L) {
-                        Log.error(TAG, "⚠️ 等待时间过长(${additionalWait/60000}分钟)，跳过收取")
-                        return@withLock
+                    // 等待后重新检查
+                    val newActualTime = System.currentTimeMillis()
+                    val newIsEnergyMature = task.produceTime <= newActualTime
+                    if (task.isSelf()) {
+                        Log.record(TAG, "⏳ 等待完成：能量成熟[$newIsEnergyMature]")
+                    } else {
+                        val newIsProtectionEnd = task.getProtectionEndTime() <= newActualTime
+                        Log.record(TAG, "⏳ 等待完成：能量成熟[$newIsEnergyMature] 保护结束[$newIsProtectionEnd]")
                     }
+                } else if (additionalWait > 1800000L) {
+                    Log.error(TAG, "⚠️ 等待时间过长(${additionalWait/60000}分钟)，跳过收取")
+                    return
                 }
+            }
 
-                // 执行收取
-                val startTime = System.currentTimeMillis()
-                val result = collectEnergyFromWaiting(task)
-                val executeTime = System.currentTimeMillis() - startTime
+            // 执行收取
+            val startTime = System.currentTimeMillis()
+            val result = collectPermits.withPermit { collectEnergyFromWaiting(task) }
+            val executeTime = System.currentTimeMillis() - startTime
 
-                // 更新用户模式数据
-                UserEnergyPatternManager.updateUserPattern(task.userId, result, executeTime)
-                // 处理结果
+            // 更新用户模式数据
+            UserEnergyPatternManager.updateUserPattern(task.userId, result, executeTime)
+            // 处理结果
 
-                if (result.success) {
-                    if (result.energyCount > 0) {
-                        Log.record(TAG,"✅ 蹲点收取[${task.getUserTypeTag()}${task.userName}]成功${result.energyCount}g(耗时${executeTime}ms)")
-                        waitingTasks.remove(task.taskId) // 成功后移除任务
-                        EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
+            if (result.success) {
+                if (result.energyCount > 0) {
+                    Log.record(TAG,"✅ 蹲点收取[${task.getUserTypeTag()}${task.userName}]成功${result.energyCount}g(耗时${executeTime}ms)")
+                    removeWaitingTasks(group) // 成功后移除任务
+                    EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
+                } else {
+                    Log.record(TAG, "⚠️ 蹲点收取[${task.getUserTypeTag()}${task.userName}]异常：返回0能量(${result.message})")
+
+                    // 判断是否需要重试
+                    if (task.retryCount < task.maxRetries) {
+                        Log.record(TAG, "  → 5秒后重试(${task.retryCount + 1}/${task.maxRetries})")
+                        group.forEach { scheduleRetry(it, 5000L) } // 5秒后重试
                     } else {
-                        Log.record(TAG, "⚠️ 蹲点收取[${task.getUserTypeTag()}${task.userName}]异常：返回0能量(${result.message})")
+                        Log.record(TAG, "  → 已达最大重试次数")
+                        removeWaitingTasks(group)
+                        EnergyWaitingPersistence.saveTasks(waitingTasks)
+                    }
+                }
+            } else {
+                Log.record(TAG, "❌ 蹲点收取[${task.getUserTypeTag()}${task.userName}]失败：${result.message}")
 
-                        // 判断是否需要重试
+                // 根据失败原因决定是否重试
+                when {
+                    result.hasShield || result.hasBomb -> {
+                        Log.record(TAG, "  → 检测到保护罩/炸弹卡")
+                        removeWaitingTasks(group)
+                        EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
+                    }
+                    result.message.contains("用户无可收取的能量球") -> {
+                        Log.record(TAG, "  → 能量球已不存在，移除任务")
+                        removeWaitingTasks(group)
+                        EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
+                    }
+                    result.message.contains("无法查询用户能量信息") -> {
+                        Log.record(TAG, "  → 用户能量信息查询失败，移除任务")
+                        removeWaitingTasks(group)
+                        EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
+                    }
+                    else -> {
+                        // 可重试的错误，主动触发重试
                         if (task.retryCount < task.maxRetries) {
-                            val retryTask = task.withRetry()
-                            waitingTasks[task.taskId] = retryTask
-                            val retryDelay = 5000L // 5秒后重试
-                            Log.record(TAG, "  → 5秒后重试(${retryTask.retryCount}/${task.maxRetries})")
-
-                            managerScope.launch {
-                                delay(retryDelay)
-                                startPreciseWaitingCoroutine(retryTask)
+                            // 根据错误类型决定重试延迟
+                            val retryDelay = when {
+                                result.message.contains("网络") -> 5000L // 5秒
+                                result.message.contains("频繁") -> 10000L // 10秒
+                                else -> 5000L // 默认5秒
                             }
+
+                            Log.record(TAG, "  → ${retryDelay/1000}秒后重试(${task.retryCount + 1}/${task.maxRetries})")
+                            group.forEach { scheduleRetry(it, retryDelay) }
                         } else {
                             Log.record(TAG, "  → 已达最大重试次数")
-                            waitingTasks.remove(task.taskId)
+                            removeWaitingTasks(group)
                             EnergyWaitingPersistence.saveTasks(waitingTasks)
                         }
                     }
-                } else {
-                    Log.record(TAG, "❌ 蹲点收取[${task.getUserTypeTag()}${task.userName}]失败：${result.message}")
-
-                    // 根据失败原因决定是否重试
-                    when {
-                        result.hasShield || result.hasBomb -> {
-                            Log.record(TAG, "  → 检测到保护罩/炸弹卡")
-                            waitingTasks.remove(task.taskId)
-                            EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
-                        }
-                        result.message.contains("用户无可收取的能量球") -> {
-                            Log.record(TAG, "  → 能量球已不存在，移除任务")
-                            waitingTasks.remove(task.taskId)
-                            EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
-                        }
-                        result.message.contains("无法查询用户能量信息") -> {
-                            Log.record(TAG, "  → 用户能量信息查询失败，移除任务")
-                            waitingTasks.remove(task.taskId)
-                            EnergyWaitingPersistence.saveTasks(waitingTasks) // 保存更新
-                        }
-                        else -> {
-                            // 可重试的错误，主动触发重试
-                            if (task.retryCount < task.maxRetries) {
-                                val retryTask = task.withRetry()
-                                waitingTasks[task.taskId] = retryTask
-
-                                // 根据错误类型决定重试延迟
-                                val retryDelay = when {
-                                    result.message.contains("网络") -> 5000L // 5秒
-                                    result.message.contains("频繁") -> 10000L // 10秒
-                                    else -> 5000L // 默认5秒
-                                }
-
-                                Log.record(TAG, "  → ${retryDelay/1000}秒后重试(${retryTask.retryCount}/${task.maxRetries})")
-
-                                managerScope.launch {
-                                    delay(retryDelay)
-                                    if (waitingTasks.containsKey(task.taskId)) {
-                                        startPreciseWaitingCoroutine(retryTask)
-                                    }
-                                }
-                            } else {
-                                Log.record(TAG, "  → 已达最大重试次数")
-                                waitingTasks.remove(task.taskId)
-                                EnergyWaitingPersistence.saveTasks(waitingTasks)
-                            }
-                        }
-                    }
                 }
-
-            } catch (e: Exception) {
-                Log.printStackTrace(TAG, "执行精确蹲点任务异常", e)
-                throw e
             }
+
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "执行精确蹲点任务异常", e)
+            throw e
         }
     }
 
@@ -758,9 +838,11 @@ object EnergyWaitingManager {
                     val moreText = if (matureTasks.size > 3) "等${matureTasks.size}个" else ""
                     Log.record(TAG, "🔄 重新触发蹲点：[${taskNames}${moreText}]已成熟但未执行")
 
-                    matureTasks.forEach { (_, task) ->
-                        // 重新启动倒计时协程
-                        startPreciseWaitingCoroutine(task)
+                    matureTasks.forEach { (taskId, task) ->
+                        // 仅重新挂载既不在时间轮上、也不在执行中的任务
+                        if (!scheduler.contains(taskId) && !activeTaskIds.contains(taskId)) {
+                            scheduleWaitingTask(task)
+                        }
                     }
                 }
 
@@ -778,7 +860,7 @@ object EnergyWaitingManager {
 
                     // 执行移除
                     expiredTasks.forEach { (taskId, _) ->
-                        waitingTasks.remove(taskId)
+                        removeWaitingTask(taskId)
                     }
 
                     // 持久化保存更改
@@ -850,6 +932,13 @@ object EnergyWaitingManager {
         return waitingTasks.size
     }
 
+    /**
+     * 当前所有蹲点任务，按成熟时间排序
+     */
+    fun getWaitingTasksSnapshot(): List<WaitingTask> {
+        return waitingTasks.values.sortedBy { it.produceTime }
+    }
+
     /**
      * 获取蹲点任务详细状态（仅显示最近的3个）
      */
@@ -913,16 +1002,15 @@ object EnergyWaitingManager {
                             return@forEach
                         }
 
-                        // 好友账号：重新查询用户主页以获取最新的保护罩状态
-                        val userHomeResponse = AntForestRpcCall.queryFriendHomePage(task.userId, task.fromTag)
+                        // 好友账号：查询用户主页以获取最新的保护罩状态（一分钟内查询过的普通好友主页直接复用）
+                        val userHomeObj = FriendHomeCache.get(task.userId, null)
+                            ?: ForestUtil.queryFriendHomePageSuspend(task.userId, task.fromTag)
 
-                        if (userHomeResponse.isNullOrEmpty()) {
+                        if (userHomeObj == null) {
                              Log.record(TAG, "  验证[${task.getUserTypeTag()}${task.userName}]：无法获取主页信息，保留任务")
                             return@forEach
                         }
 
-                        val userHomeObj = JSONObject(userHomeResponse)
-
                         // 好友账号：如果保护罩覆盖能量成熟期则移除
                         if (ForestUtil.shouldSkipWaitingDueToProtection(userHomeObj, task.produceTime)) {
                             val protectionEndTime = ForestUtil.getProtectionEndTime(userHomeObj)
@@ -947,7 +1035,7 @@ object EnergyWaitingManager {
 
                 // 批量移除无效任务
                 tasksToRemove.forEach { taskId ->
-                    waitingTasks.remove(taskId)
+                    removeWaitingTask(taskId)
                 }
 
                 val validCount = tasksToRevalidate.size - tasksToRemove.size
@@ -1035,8 +1123,8 @@ object EnergyWaitingManager {
                             // 添加任务到内存
                             waitingTasks[task.taskId] = task
 
-                            // 启动蹲点协程
-                            startPreciseWaitingCoroutine(task)
+                            // 挂到时间轮
+                            scheduleWaitingTask(task)
 
                             true
                         } catch (e: Exception) {
@@ -2,6 +2,8 @@
 
 package fansirsqi.xposed.sesame.task.antForest
 
+import fansirsqi.xposed.sesame.hook.RequestManager
+import fansirsqi.xposed.sesame.util.AdaptiveConcurrencyLimiter
 import fansirsqi.xposed.sesame.util.Log
 import fansirsqi.xposed.sesame.util.maps.UserMap
 import org.json.JSONObject
@@ -111,6 +113,8 @@ object ForestUtil {
         }
 
         Log.record(TAG, "⚠️ [$userName] 手速太快！第${info.failCount}次异常，休息${cooldownMinutes}分钟，下次暂不处理")
+        // 除了冷却单个用户，也让共享的并发上限退避
+        AdaptiveConcurrencyLimiter.recordThrottled()
 
         return true
     }
@@ -238,4 +242,15 @@ object ForestUtil {
         }
         return latestEndTime
     }
-}
\ No newline at end of file
+
+    /**
+     * 查询好友主页（挂起版本），等待间隔限制和重试时不占用调度器线程
+     * @param userId 用户ID
+     * @param fromAct 来源，null 时使用默认值
+     * @return 主页响应的 JSON 视图（直接由宿主解析结果构建），失败时为 null
+     */
+    suspend fun queryFriendHomePageSuspend(userId: String?, fromAct: String?): JSONObject? {
+        val rpcEntity = AntForestRpcCall.queryFriendHomePageRpcEntity(userId, fromAct) ?: return null
+        return RequestManager.requestJsonSuspend(rpcEntity, 3, 1000)
+    }
+}
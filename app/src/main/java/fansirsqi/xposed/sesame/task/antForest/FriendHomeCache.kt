@@ -0,0 +1,136 @@
+package fansirsqi.xposed.sesame.task.antForest
+
+import fansirsqi.xposed.sesame.util.Log
+import org.json.JSONObject
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.abs
+
+/**
+ * 好友主页短期缓存
+ *
+ * 同一轮中收取、帮收、领礼物盒、蹲点验证都会查询好友主页，这里让同一好友的主页在短时间内只请求一次：
+ * 1. 按 userId + fromAct 缓存校验通过的主页（PK 榜与普通好友的主页互不混用），超过 [TTL_MS] 失效，
+ *    超过 [MAX_ENTRIES] 时淘汰最久未使用的
+ * 2. 对该好友收能量、帮收、领礼物盒后立即失效，保证后续读到的是最新状态
+ * 3. 缓存时记录本地与服务器的时间差（收到响应的本地时间减服务器时间，不含请求前的排队），
+ *    读取时与最新的时间差相差超过 [SKEW_TOLERANCE_MS] 的条目失效，避免按旧时间差计算能量成熟时间
+ * 4. 主页中最早的未成熟能量球一旦成熟即失效，缓存不会掩盖新出现的可收能量
+ *
+ * 蹲点到时收取、找能量等必须读取实时状态的路径不经过缓存。
+ */
+object FriendHomeCache {
+    private const val TAG = "FriendHomeCache"
+    private const val TTL_MS = 60_000L
+    private const val MAX_ENTRIES = 256
+    private const val SKEW_TOLERANCE_MS = 2_000L
+
+    /**
+     * @param offset 本地时间减服务器时间
+     * @param nextProduceTime 最早的未成熟能量球的成熟时间（服务器时间），没有时为 [Long.MAX_VALUE]
+     */
+    private class Entry(val home: JSONObject, val cachedAt: Long, val offset: Long, val nextProduceTime: Long)
+
+    private fun key(userId: String, fromAct: String?): String = if (fromAct.isNullOrEmpty()) userId else "$userId|$fromAct"
+
+    // accessOrder = true，按访问顺序淘汰
+    private val entries = object : LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?): Boolean {
+            return size > MAX_ENTRIES
+        }
+    }
+
+    // 最近一次实际请求测得的本地与服务器时间差
+    private var latestOffset: Long? = null
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    /**
+     * 读取缓存的主页
+     * @param fromAct 查询主页时的来源，与缓存时不同视为未缓存
+     * @return 未缓存、已过期或时间差已变化时为 null
+     */
+    fun get(userId: String?, fromAct: String?): JSONObject? {
+        if (userId.isNullOrEmpty()) return null
+        val key = key(userId, fromAct)
+        val home = synchronized(entries) {
+            val entry = entries[key]
+            val offset = latestOffset
+            val now = System.currentTimeMillis()
+            when {
+                entry == null -> null
+                now - entry.cachedAt > TTL_MS || now - entry.offset >= entry.nextProduceTime -> {
+                    entries.remove(key)
+                    null
+                }
+                offset != null && abs(entry.offset - offset) > SKEW_TOLERANCE_MS -> {
+                    entries.remove(key)
+                    null
+                }
+                else -> entry.home
+            }
+        }
+        if (home != null) hits.incrementAndGet() else misses.incrementAndGet()
+        return home
+    }
+
+    /**
+     * 缓存校验通过的主页
+     * @param offset 收到响应时的本地时间减服务器时间（毫秒）
+     */
+    fun put(userId: String?, fromAct: String?, home: JSONObject, offset: Long) {
+        if (userId.isNullOrEmpty()) return
+        synchronized(entries) {
+            // 时间差变化的旧条目在读取时逐个失效，这里不整体清空
+            latestOffset = offset
+            entries[key(userId, fromAct)] = Entry(home, System.currentTimeMillis(), offset, nextProduceTime(home))
+        }
+    }
+
+    private fun nextProduceTime(home: JSONObject): Long {
+        val serverTime = home.optLong("now", System.currentTimeMillis())
+        val bubbles = home.optJSONObject("teamHomeResult")?.optJSONObject("mainMember")?.optJSONArray("bubbles")
+            ?: home.optJSONArray("bubbles")
+            ?: return Long.MAX_VALUE
+        var next = Long.MAX_VALUE
+        for (i in 0 until bubbles.length()) {
+            val produceTime = bubbles.optJSONObject(i)?.optLong("produceTime", 0L) ?: 0L
+            if (produceTime > serverTime && produceTime < next) next = produceTime
+        }
+        return next
+    }
+
+    /**
+     * 好友状态发生变化（收取、帮收、领礼物盒）后失效，包括该好友所有来源的主页
+     */
+    fun invalidate(userId: String?) {
+        if (userId.isNullOrEmpty()) return
+        val prefix = "$userId|"
+        synchronized(entries) { entries.keys.removeAll { it == userId || it.startsWith(prefix) } }
+    }
+
+    /**
+     * 清空缓存并输出本轮命中情况
+     */
+    fun clear() {
+        val size = synchronized(entries) {
+            val size = entries.size
+            entries.clear()
+            latestOffset = null
+            size
+        }
+        val hit = hits.getAndSet(0)
+        val miss = misses.getAndSet(0)
+        if (hit + miss > 0) {
+            Log.record(TAG, "好友主页缓存：命中${hit}次，未命中${miss}次，命中率${hit * 100 / (hit + miss)}%，清理${size}条")
+        }
+    }
+
+    /**
+     * 命中、未命中次数与当前条目数
+     */
+    fun stats(): Map<String, Long> {
+        val size = synchronized(entries) { entries.size }
+        return mapOf("hits" to hits.get(), "misses" to misses.get(), "size" to size.toLong())
+    }
+}
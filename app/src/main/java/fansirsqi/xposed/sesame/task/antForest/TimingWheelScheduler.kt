@@ -0,0 +1,161 @@
+package fansirsqi.xposed.sesame.task.antForest
+
+import fansirsqi.xposed.sesame.util.Log
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.TreeMap
+
+/**
+ * 蹲点任务时间轮调度器
+ *
+ * 以 [tickMs] 为刻度的哈希时间轮，任务按截止时间挂到对应槽位：
+ * 1. 插入、替换、取消均按 key 索引，时间复杂度 O(1)
+ * 2. 只有一个驱动协程，直接等待到最早的非空刻度再推进，同一刻度内到期的任务作为一批交给 [onExpired]；
+ *    各刻度的任务数另记在有序表中，用于 O(log n) 找到最早的刻度，不会在空刻度上逐秒唤醒
+ * 3. 无任务时驱动协程挂起，不空转；插入更早的任务时唤醒驱动协程重新计算等待时间；
+ *    设备休眠后醒来会一次性补齐错过的刻度
+ *
+ * 刻度只决定唤醒批次，刻度内的毫秒级精度由调用方在执行前自行补齐。
+ *
+ * @param scope 驱动协程所在的作用域
+ * @param tickMs 刻度（毫秒）
+ * @param wheelSize 槽位数量，超过一圈的任务按绝对刻度比较，不需要记录圈数
+ * @param onExpired 到期批次回调，按截止时间升序排列，需自行切换到执行协程
+ */
+class TimingWheelScheduler<T>(
+    private val scope: CoroutineScope,
+    private val tickMs: Long = 1000L,
+    wheelSize: Int = 512,
+    private val onExpired: (List<T>) -> Unit
+) {
+    private class Entry<T>(val key: String, val tick: Long, val deadline: Long, val payload: T)
+
+    private val lock = Any()
+    private val slots = Array(wheelSize) { LinkedHashMap<String, Entry<T>>() }
+    private val index = HashMap<String, Entry<T>>()
+
+    // 刻度 -> 该刻度上的任务数，用于查找最早的非空刻度
+    private val tickCounts = TreeMap<Long, Int>()
+    private val wakeup = Channel<Unit>(Channel.CONFLATED)
+
+    // 最后一个已处理的刻度
+    private var currentTick = System.currentTimeMillis() / tickMs
+    private var driver: Job? = null
+
+    /**
+     * 安排任务在 [deadline] 到期，相同 key 的旧任务会被替换
+     *
+     * @param key 任务唯一标识
+     * @param deadline 截止时间（毫秒时间戳），已过期的任务在下一刻度触发
+     * @param payload 到期时交给回调的数据
+     */
+    fun schedule(key: String, deadline: Long, payload: T) {
+        synchronized(lock) {
+            if (index.isEmpty()) {
+                // 空闲期间驱动协程没有推进刻度，这里重新对齐
+                currentTick = System.currentTimeMillis() / tickMs
+            } else {
+                removeLocked(key)
+            }
+            val tick = maxOf(deadline / tickMs, currentTick + 1)
+            val entry = Entry(key, tick, deadline, payload)
+            slots[slotOf(tick)][key] = entry
+            index[key] = entry
+            tickCounts.merge(tick, 1, Int::plus)
+            if (driver?.isActive != true) {
+                driver = scope.launch(CoroutineName("TimingWheelDriver")) { runDriver() }
+            }
+        }
+        wakeup.trySend(Unit)
+    }
+
+    /**
+     * 取消任务
+     * @return 任务是否存在
+     */
+    fun cancel(key: String): Boolean = synchronized(lock) { removeLocked(key) }
+
+    fun contains(key: String): Boolean = synchronized(lock) { index.containsKey(key) }
+
+    fun size(): Int = synchronized(lock) { index.size }
+
+    /**
+     * 清空所有任务
+     */
+    fun clear() {
+        synchronized(lock) {
+            slots.forEach { it.clear() }
+            index.clear()
+            tickCounts.clear()
+        }
+    }
+
+    private fun removeLocked(key: String): Boolean {
+        val entry = index.remove(key) ?: return false
+        slots[slotOf(entry.tick)].remove(key)
+        decrementTick(entry.tick)
+        return true
+    }
+
+    private fun decrementTick(tick: Long) {
+        val count = tickCounts[tick] ?: return
+        if (count <= 1) tickCounts.remove(tick) else tickCounts[tick] = count - 1
+    }
+
+    private fun slotOf(tick: Long): Int = (tick % slots.size).toInt()
+
+    private suspend fun runDriver() {
+        while (currentCoroutineContext().isActive) {
+            val nextTick = synchronized(lock) { if (tickCounts.isEmpty()) null else tickCounts.firstKey() }
+            if (nextTick == null) {
+                wakeup.receive()
+                continue
+            }
+            val wait = nextTick * tickMs - System.currentTimeMillis()
+            // 等待期间插入了任务则提前醒来，重新取最早的刻度
+            if (wait > 0 && withTimeoutOrNull(wait) { wakeup.receive() } != null) continue
+            val expired = advance(System.currentTimeMillis() / tickMs)
+            if (expired.isNotEmpty()) {
+                try {
+                    onExpired(expired)
+                } catch (e: Exception) {
+                    Log.printStackTrace("TimingWheelScheduler", "到期任务分发异常", e)
+                }
+            }
+        }
+    }
+
+    /**
+     * 推进到 [nowTick]，摘下所有已到期的任务
+     */
+    private fun advance(nowTick: Long): List<T> {
+        synchronized(lock) {
+            // 时钟回拨时不推进
+            if (nowTick <= currentTick) return emptyList()
+            val expired = ArrayList<Entry<T>>()
+            // 错过超过一圈时每个槽位只需扫描一次
+            val steps = minOf(nowTick - currentTick, slots.size.toLong())
+            for (i in 1..steps) {
+                val iterator = slots[slotOf(currentTick + i)].values.iterator()
+                while (iterator.hasNext()) {
+                    val entry = iterator.next()
+                    if (entry.tick <= nowTick) {
+                        iterator.remove()
+                        index.remove(entry.key)
+                        decrementTick(entry.tick)
+                        expired.add(entry)
+                    }
+                }
+            }
+            currentTick = nowTick
+            expired.sortBy { it.deadline }
+            return expired.map { it.payload }
+        }
+    }
+}
@@ -32,6 +32,8 @@ public class ListAdapter extends BaseAdapter {
     private SelectModelFieldFunc selectModelFieldFunc;
     private int findIndex = -1;
     private String findWord = null;
+    private ListSearchIndex searchIndex = null;
+    private ListSearchIndex.Result findResult = null;
     public static List<ViewHolder> viewHolderList = new ArrayList<>();
 
     public static ListAdapter get(Context c) {
@@ -61,6 +63,7 @@ public class ListAdapter extends BaseAdapter {
     public void setBaseList(List<? extends MapperEntity> l) {
         if (l != list) {
             exitFind();
+            searchIndex = null;
         }
         this.list = l;
     }
@@ -76,6 +79,9 @@ public class ListAdapter extends BaseAdapter {
                 }
                 return contains1 ? -1 : 1;
             });
+            // 排序改变了下标，索引需要重建
+            searchIndex = null;
+            resetFindState();
         } catch (Exception e) {
             Log.record(TAG,"ListAdapter error");
             Log.printStackTrace(e);
@@ -95,27 +101,33 @@ public class ListAdapter extends BaseAdapter {
             return -1;
         }
         findThis = findThis.toLowerCase();
-        if (!Objects.equals(findThis, findWord)) {
+        if (searchIndex == null) {
+            searchIndex = new ListSearchIndex(list);
+        }
+        if (!Objects.equals(findThis, findWord) || findResult == null) {
             resetFindState();
             findWord = findThis;
-        }
-        int current = Math.max(findIndex, 0);
-        int size = list.size();
-        int start = current;
-        do {
-            current = (forward) ? (current + 1) % size : (current - 1 + size) % size;
-            if (list.get(current).name.toLowerCase().contains(findThis)) {
-                findIndex = current;
-                notifyDataSetChanged();
-                return findIndex;
+            findResult = searchIndex.search(findThis);
+            // 新的查询词先定位到匹配程度最高的一项
+            if (findResult.best < 0) {
+                return -1;
             }
-        } while (current != start);
-        return -1;
+            findIndex = findResult.best;
+        } else {
+            int next = findResult.step(findIndex, forward);
+            if (next < 0) {
+                return -1;
+            }
+            findIndex = next;
+        }
+        notifyDataSetChanged();
+        return findIndex;
     }
 
     public void resetFindState() {
         findIndex = -1;
         findWord = null;
+        findResult = null;
     }
 
     public void exitFind() {
@@ -0,0 +1,134 @@
+package fansirsqi.xposed.sesame.ui.adapter;
+
+import java.util.Arrays;
+import java.util.List;
+
+import fansirsqi.xposed.sesame.entity.MapperEntity;
+
+/**
+ * 选择列表的搜索索引
+ * <p>
+ * 1. 建立时为每一项预先计算小写名称、全拼和拼音首字母，查询时不再逐项转换
+ * 2. 名称、全拼、首字母任一包含查询词即命中，并按匹配程度排名
+ * 3. 查询词在上一次的基础上追加字符时，只在上一次的命中项中继续筛选
+ * <p>
+ * 下标对应建立索引时列表的顺序，列表内容或顺序变化后需要重新建立。
+ */
+final class ListSearchIndex {
+    private static final int RANK_NONE = 0;
+    private static final int RANK_CONTAINS = 1;
+    private static final int RANK_PINYIN_PREFIX = 2;
+    private static final int RANK_NAME_PREFIX = 3;
+    private static final int RANK_EXACT = 4;
+
+    private final String[] names;
+    private final String[] fullPinyins;
+    private final String[] initials;
+
+    private String lastQuery = null;
+    private int[] lastMatches = null;
+
+    ListSearchIndex(List<? extends MapperEntity> list) {
+        int size = list.size();
+        names = new String[size];
+        fullPinyins = new String[size];
+        initials = new String[size];
+        StringBuilder full = new StringBuilder();
+        StringBuilder first = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            MapperEntity item = list.get(i);
+            full.setLength(0);
+            first.setLength(0);
+            for (String target : item.getPinyin()) {
+                if (target.isEmpty()) {
+                    continue;
+                }
+                full.append(target);
+                first.append(target.charAt(0));
+            }
+            names[i] = item.name.toLowerCase();
+            fullPinyins[i] = full.toString().toLowerCase();
+            initials[i] = first.toString().toLowerCase();
+        }
+    }
+
+    /**
+     * 查询命中项
+     *
+     * @param query 已转为小写的查询词
+     * @return 命中结果，无命中时 positions 为空数组
+     */
+    Result search(String query) {
+        int[] candidates = lastQuery != null && query.startsWith(lastQuery) ? lastMatches : null;
+        int count = candidates != null ? candidates.length : names.length;
+        int[] matches = new int[count];
+        int size = 0;
+        int best = -1;
+        int bestRank = RANK_NONE;
+        for (int k = 0; k < count; k++) {
+            int i = candidates != null ? candidates[k] : k;
+            int rank = rank(i, query);
+            if (rank == RANK_NONE) {
+                continue;
+            }
+            matches[size++] = i;
+            if (rank > bestRank) {
+                bestRank = rank;
+                best = i;
+            }
+        }
+        int[] positions = size == count ? matches : Arrays.copyOf(matches, size);
+        lastQuery = query;
+        lastMatches = positions;
+        return new Result(positions, best);
+    }
+
+    private int rank(int i, String query) {
+        String name = names[i];
+        if (name.equals(query)) {
+            return RANK_EXACT;
+        }
+        if (name.startsWith(query)) {
+            return RANK_NAME_PREFIX;
+        }
+        if (fullPinyins[i].startsWith(query) || initials[i].startsWith(query)) {
+            return RANK_PINYIN_PREFIX;
+        }
+        if (name.contains(query) || fullPinyins[i].contains(query) || initials[i].contains(query)) {
+            return RANK_CONTAINS;
+        }
+        return RANK_NONE;
+    }
+
+    static final class Result {
+        /**
+         * 命中项下标，升序
+         */
+        final int[] positions;
+        /**
+         * 排名最高的命中项下标，同排名取靠前的一项，无命中时为 -1
+         */
+        final int best;
+
+        Result(int[] positions, int best) {
+            this.positions = positions;
+            this.best = best;
+        }
+
+        /**
+         * 从 current 出发循环查找下一个（或上一个）命中项
+         */
+        int step(int current, boolean forward) {
+            if (positions.length == 0) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(positions, current);
+            if (forward) {
+                int next = index >= 0 ? index + 1 : -index - 1;
+                return positions[next < positions.length ? next : 0];
+            }
+            int prev = index >= 0 ? index - 1 : -index - 2;
+            return positions[prev >= 0 ? prev : positions.length - 1];
+        }
+    }
+}
@@ -155,7 +155,7 @@ fun LogViewerScreen(
 
     // 智能自动滚动控制
     LaunchedEffect(listState.canScrollForward, listState.isScrollInProgress) {
-        if (!state.isLoading && state.mappingList.isNotEmpty()) {
+        if (!state.isLoading && state.totalCount > 0) {
             if (!listState.canScrollForward) {
                 viewModel.toggleAutoScroll(true)
             } else if (listState.isScrollInProgress) {
@@ -402,7 +402,7 @@ fun LogViewerScreen(
                     }
                 }
         ) {
-            if (state.isLoading && state.mappingList.isEmpty()) {
+            if (state.isLoading && state.totalCount == 0) {
                 Column(
                     modifier = Modifier.align(Alignment.Center),
                     horizontalAlignment = Alignment.CenterHorizontally
@@ -427,8 +427,10 @@ fun LogViewerScreen(
                             key = { index -> index },
                             contentType = { 1 } // 🔥 显式指定 contentType，帮助 Compose 复用节点
                         ) { index ->
+                            // 按需读取可见行，内容版本变化时重新读取
+                            val line = remember(index, state.revision) { viewModel.getLineContent(index) }
                             LogLineItem(
-                                line = viewModel.getLineContent(index),
+                                line = line,
                                 searchQuery = state.searchQuery,
                                 fontSize = currentFontSize,
                                 textColor = MaterialTheme.colorScheme.onBackground
@@ -12,6 +12,8 @@ import fansirsqi.xposed.sesame.R
 import fansirsqi.xposed.sesame.SesameApplication.Companion.PREFERENCES_KEY
 import fansirsqi.xposed.sesame.util.Files
 import fansirsqi.xposed.sesame.util.Log
+import fansirsqi.xposed.sesame.util.LogIndex
+import fansirsqi.xposed.sesame.util.LongRingBuffer
 import fansirsqi.xposed.sesame.util.ToastUtil
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Dispatchers
@@ -31,8 +33,6 @@ import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import java.io.File
-import java.io.RandomAccessFile
-import java.nio.charset.StandardCharsets
 import java.util.concurrent.atomic.AtomicLong
 
 
@@ -40,12 +40,13 @@ import java.util.concurrent.atomic.AtomicLong
  * 日志 UI 状态
  */
 data class LogUiState(
-    val mappingList: List<Int> = emptyList(),
     val isLoading: Boolean = true,
     val isSearching: Boolean = false,
     val searchQuery: String = "",
     val totalCount: Int = 0,
-    val autoScroll: Boolean = true
+    val autoScroll: Boolean = true,
+    // 显示内容版本号，行内容变化（追加、丢弃旧行、重新过滤）时递增
+    val revision: Long = 0L
 )
 
 /**
@@ -77,14 +78,21 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
     private var updateJob: Job? = null // ✅ 新增:文件更新任务
 
     // --- 核心数据结构 ---
-    private var raf: RandomAccessFile? = null
-    private val allLineOffsets = ArrayList<Long>()
-    private var displayLineOffsets: List<Long> = emptyList()
+    private val maxLines = 200_000
+    private val logIndex = LogIndex(maxLines)
+
+    // 当前显示的行：搜索时为匹配行号，否则为 null 表示从 displayBase 起连续 displayCount 行
+    // 读写都在 displayLock 内进行
+    private val displayLock = Any()
+    private var displayLines: LongRingBuffer? = null
+    private var displayBase = 0L
+    private var displayCount = 0
+
+    // 以绝对行号为键
     private val lineCache = LruCache<Long, String>(200)
 
     // ✅ 使用 AtomicLong 保证线程安全
     private val lastKnownFileSize = AtomicLong(0L)
-    private val maxLines = 200_000
 
     // ✅ 用于防抖的互斥锁
     private val updateMutex = Mutex()
@@ -107,7 +115,7 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
 
         loadJob = viewModelScope.launch {
             closeFile()
-            _uiState.update { it.copy(isLoading = true, mappingList = emptyList(), totalCount = 0) }
+            _uiState.update { it.copy(isLoading = true, totalCount = 0) }
 
             val file = File(path)
             if (!file.exists() || !file.canRead()) {
@@ -124,62 +132,11 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
 
     private suspend fun indexFileContent(file: File) = withContext(Dispatchers.IO) {
         try {
-            val localRaf = RandomAccessFile(file, "r")
-            raf = localRaf
-
-            val fileSize = localRaf.length()
-            lastKnownFileSize.set(fileSize)
-            // ✅ 如果文件大小为 0，直接清空并返回
-            if (fileSize == 0L) {
-                synchronized(allLineOffsets) { allLineOffsets.clear() }
-                lineCache.evictAll()
-                refreshList()
-                return@withContext
-            }
-
-            // ✅ 优化:一次扫描同时完成计数和索引
-            val readBuffer = ByteArray(8192)
-            var currentOffset = 0L
-            var totalLines = 0L
-
-            localRaf.seek(0)
-
-            // 第一遍:快速扫描,只记录换行符位置
-            val allOffsets = mutableListOf<Long>()
-            allOffsets.add(0L) // 第一行从 0 开始
-
-            while (true) {
-                ensureActive()
-                val bytesRead = localRaf.read(readBuffer)
-                if (bytesRead == -1) break
-
-                for (i in 0 until bytesRead) {
-                    currentOffset++
-                    if (readBuffer[i] == '\n'.code.toByte()) {
-                        totalLines++
-                        // 记录下一行的起始位置
-                        if (currentOffset < fileSize) {
-                            allOffsets.add(currentOffset)
-                        }
-                    }
-                }
-            }
-
-            // ✅ 根据总行数决定保留哪些行
-            val finalOffsets = if (totalLines > maxLines) {
-                // 只保留最后 maxLines 行
-                allOffsets.takeLast(maxLines)
-            } else {
-                allOffsets
-            }
-
-            synchronized(allLineOffsets) {
-                allLineOffsets.clear()
-                allLineOffsets.addAll(finalOffsets)
-            }
-
+            // ✅ 一次顺序扫描建立原始 LongArray 行索引
+            logIndex.open(file)
+            lastKnownFileSize.set(logIndex.indexedSize)
             lineCache.evictAll()
-            refreshList()
+            updateMutex.withLock { refreshList() }
 
         } catch (e: CancellationException) {
             // ✅ 协程取消异常不记录日志，直接静默处理
@@ -196,65 +153,102 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
         }
     }
 
+    /**
+     * 按当前搜索条件重建显示列表（加载文件或搜索词变化时调用）
+     */
     private suspend fun refreshList() {
         val query = _uiState.value.searchQuery.trim()
 
-        val resultOffsets = withContext(Dispatchers.IO) {
-            synchronized(allLineOffsets) {
-                if (query.isEmpty()) {
-                    ArrayList(allLineOffsets)
-                } else {
-                    allLineOffsets.filter { offset ->
-                        ensureActive()
-                        val line = readLineAt(offset)
-                        line?.contains(query, ignoreCase = true) ?: false
-                    }
-                }
+        if (query.isEmpty()) {
+            synchronized(displayLock) {
+                displayLines = null
+                displayBase = logIndex.firstLine
+                displayCount = logIndex.lineCount
+            }
+        } else {
+            // ✅ 并行顺序扫描，不再逐行随机读取
+            val matched = logIndex.search(query)
+            val lines = LongRingBuffer(maxLines, matched.size.coerceAtLeast(1))
+            matched.forEach { lines.add(it) }
+            synchronized(displayLock) {
+                displayLines = lines
             }
         }
+        publishDisplay()
+    }
 
-        displayLineOffsets = resultOffsets
-        val newMapping = List(resultOffsets.size) { it }
+    /**
+     * 文件追加后只处理新增的尾部：未过滤时直接扩展窗口，过滤时只搜索新行再追加到匹配列表
+     * @param fromLine 需要重新评估的第一行（追加前的最后一行可能尚未写完）
+     */
+    private suspend fun applyAppendedTail(fromLine: Long) {
+        val query = _uiState.value.searchQuery.trim()
+        if (query.isEmpty()) {
+            synchronized(displayLock) {
+                if (displayLines != null) return
+                displayBase = logIndex.firstLine
+                displayCount = logIndex.lineCount
+            }
+        } else {
+            val tail = logIndex.search(query, fromLine)
+            // 搜索期间搜索词已变化，交给新的 refreshList 处理
+            if (query != _uiState.value.searchQuery.trim()) return
+            synchronized(displayLock) {
+                val lines = displayLines ?: return
+                lines.truncate(lines.lowerBound(fromLine))
+                tail.forEach { lines.add(it) }
+                // 丢弃已被索引淘汰的旧行
+                lines.removeFirst(lines.lowerBound(logIndex.firstLine))
+            }
+        }
+        publishDisplay()
+    }
 
+    private suspend fun publishDisplay() {
+        val resultCount = currentDisplayCount()
         _uiState.update {
             it.copy(
-                mappingList = newMapping,
-                totalCount = resultOffsets.size,
+                totalCount = resultCount,
                 isLoading = false,
-                isSearching = false
+                isSearching = false,
+                revision = it.revision + 1
             )
         }
 
-        if (_uiState.value.autoScroll && resultOffsets.isNotEmpty()) {
-            _scrollEvent.send(resultOffsets.size - 1)
+        if (_uiState.value.autoScroll && resultCount > 0) {
+            _scrollEvent.send(resultCount - 1)
         }
     }
 
+    private fun currentDisplayCount(): Int = synchronized(displayLock) {
+        displayLines?.size ?: displayCount
+    }
+
     fun getLineContent(position: Int): String {
-        if (position !in displayLineOffsets.indices) return ""
-        val offset = displayLineOffsets[position]
+        val lineNo = synchronized(displayLock) {
+            val lines = displayLines
+            when {
+                lines != null -> if (position in 0 until lines.size) lines[position] else return ""
+                position in 0 until displayCount -> displayBase + position
+                else -> return ""
+            }
+        }
 
-        val cachedLine = lineCache.get(offset)
+        val cachedLine = lineCache.get(lineNo)
         if (cachedLine != null) {
             return cachedLine
         }
 
-        val line = readLineAt(offset) ?: " [读取错误]"
-        lineCache.put(offset, line)
+        val line = readLineAt(lineNo) ?: " [读取错误]"
+        lineCache.put(lineNo, line)
         return line
     }
 
-    private fun readLineAt(offset: Long): String? {
-        val localRaf = raf ?: return null
-
+    private fun readLineAt(lineNo: Long): String? {
         return try {
-            synchronized(localRaf) {
-                localRaf.seek(offset)
-                val lineBytes = localRaf.readLine()?.toByteArray(StandardCharsets.ISO_8859_1)
-                lineBytes?.let { bytes -> String(bytes, StandardCharsets.UTF_8) }
-            }
+            logIndex.readLine(lineNo)
         } catch (e: Exception) {
-            Log.printStackTrace(tag, "readLineAt failed at offset $offset", e)
+            Log.printStackTrace(tag, "readLineAt failed at line $lineNo", e)
             null
         }
     }
@@ -322,53 +316,18 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
     }
 
     private suspend fun appendNewLines(currentFileSize: Long) = withContext(Dispatchers.IO) {
-        val localRaf = raf ?: return@withContext
         try {
-            val startPosition = lastKnownFileSize.get()
-
             // ✅ 再次验证,防止并发问题
-            if (currentFileSize <= startPosition) {
+            if (currentFileSize <= lastKnownFileSize.get()) {
                 return@withContext
             }
 
-            val newOffsets = mutableListOf<Long>()
-            val readBuffer = ByteArray(8192) // 8KB 缓冲区
-
-            synchronized(localRaf) {
-                localRaf.seek(startPosition)
-                var currentOffset = startPosition
-                // ✅ 读取新增的内容，找到所有换行符位置
-                while (currentOffset < currentFileSize) {
-                    ensureActive()
-                    val remainingBytes = (currentFileSize - currentOffset).toInt()
-                    val bytesToRead = minOf(readBuffer.size, remainingBytes)
-                    if (bytesToRead <= 0) break
-                    val bytesRead = localRaf.read(readBuffer, 0, bytesToRead)
-                    if (bytesRead == -1) break
-                    // ✅ 遍历读取的字节，找到换行符
-                    for (i in 0 until bytesRead) {
-                        currentOffset++
-                        if (readBuffer[i] == '\n'.code.toByte()) {
-                            // 记录下一行的起始位置
-                            if (currentOffset < currentFileSize) {
-                                newOffsets.add(currentOffset)
-                            }
-                        }
-                    }
-                }
-            }
-            
-            if (newOffsets.isNotEmpty()) {
-                // ✅ 先更新文件大小,再修改列表
-                lastKnownFileSize.set(currentFileSize)
-                synchronized(allLineOffsets) {
-                    allLineOffsets.addAll(newOffsets)
-                    while (allLineOffsets.size > maxLines) {
-                        allLineOffsets.removeAt(0)
-                    }
-                }
-                refreshList()
-            }
+            // 原来的最后一行可能尚未写完，追加后需要重新读取和过滤
+            val lastLine = logIndex.firstLine + logIndex.lineCount - 1
+            logIndex.indexTo(currentFileSize)
+            lastKnownFileSize.set(logIndex.indexedSize)
+            lineCache.remove(lastLine)
+            applyAppendedTail(lastLine.coerceAtLeast(0L))
         } catch (e: CancellationException) {
             // ✅ 协程取消异常不记录日志，直接静默处理
             // 这是正常的协程生命周期管理，不需要打印错误
@@ -385,7 +344,7 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
             if (query.isNotEmpty()) {
                 delay(300)
             }
-            refreshList()
+            updateMutex.withLock { refreshList() }
         }
     }
 
@@ -469,7 +428,7 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
         if (_uiState.value.autoScroll == enabled) return
         _uiState.update { it.copy(autoScroll = enabled) }
         if (enabled) viewModelScope.launch {
-            val size = _uiState.value.mappingList.size
+            val size = _uiState.value.totalCount
             if (size > 0) _scrollEvent.send(size - 1)
         }
     }
@@ -477,8 +436,7 @@ class LogViewerViewModel(application: Application) : AndroidViewModel(applicatio
     private fun closeFile() {
         try {
             // updateJob?.cancel()
-            raf?.close()
-            raf = null
+            logIndex.close()
             fileObserver?.stopWatching()
             fileObserver = null
         } catch (e: Exception) {
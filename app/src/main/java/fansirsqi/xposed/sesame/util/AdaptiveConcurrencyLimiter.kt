@@ -0,0 +1,252 @@
+package fansirsqi.xposed.sesame.util
+
+import kotlinx.coroutines.sync.Semaphore
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * 自适应并发限制器（AIMD）
+ *
+ * 1. 加性增长：延迟正常且并发已被用满时，每成功完成约一个“当前并发数”的请求，并发上限 +1
+ * 2. 乘性退避：服务端提示“手速太快”时上限乘以 [backoffRatio]；
+ *    某个方法的平滑延迟超过其基线的 [latencyTolerance] 倍时上限下调 10%。
+ *    延迟按方法分别统计，基线取该方法最近 [WINDOW_SIZE] 个样本的 [BASELINE_PERCENTILE] 分位，
+ *    不会被偶尔一次极快的响应永久压低
+ * 3. 退避之后有 [cooldownMs] 的冷静期，避免同一波并发失败把上限连续砍到底
+ *
+ * 上限通过一个容量为 [maxLimit] 的 [Semaphore] 实现：限制器自己扣留多余的许可，
+ * 调小上限时在许可归还时顺带扣下，不需要打断正在执行的请求。
+ *
+ * 所有实例登记在伴生对象中，单次 RPC 尝试的耗时（不含间隔限制排队与重试等待）由
+ * [MeteredRpcBridge][fansirsqi.xposed.sesame.hook.rpc.bridge.MeteredRpcBridge] 上报，
+ * 限流信号由 [ForestUtil][fansirsqi.xposed.sesame.task.antForest.ForestUtil] 上报，各模块共享同一份判断。
+ *
+ * @param name 名称，用于日志
+ * @param initialLimit 初始并发上限
+ * @param minLimit 最小并发上限
+ * @param maxLimit 最大并发上限
+ * @param trackLatency 是否根据 RPC 延迟调整，否则只响应限流信号
+ * @param methodPrefixes 只统计以这些前缀开头的方法的延迟，为空时统计所有方法
+ */
+class AdaptiveConcurrencyLimiter(
+    val name: String,
+    initialLimit: Int,
+    private val minLimit: Int,
+    private val maxLimit: Int,
+    private val trackLatency: Boolean = true,
+    private val methodPrefixes: List<String> = emptyList(),
+    private val backoffRatio: Double = 0.5,
+    private val latencyTolerance: Double = 2.0,
+    private val cooldownMs: Long = 3000L
+) {
+    companion object {
+        private const val TAG = "ConcurrencyLimiter"
+
+        // 平滑延迟的权重
+        private const val SMOOTHING = 0.2
+
+        // 每个方法保留的最近样本数，基线在该窗口内取分位数
+        private const val WINDOW_SIZE = 64
+
+        // 基线分位：取窗口内较快的一端，但不是最小值
+        private const val BASELINE_PERCENTILE = 0.2
+
+        // 样本不足时不做判断
+        private const val MIN_SAMPLES = 16
+
+        // 每隔多少个样本重新计算一次基线
+        private const val BASELINE_REFRESH = 8
+
+        private val limiters = CopyOnWriteArrayList<AdaptiveConcurrencyLimiter>()
+
+        /**
+         * 森林好友处理（查询主页、收取能量）
+         */
+        @JvmField
+        val forestFriends = AdaptiveConcurrencyLimiter(
+            "森林好友", 16, 2, 60,
+            methodPrefixes = listOf("alipay.antforest.", "alipay.antmember.forest.")
+        )
+
+        /**
+         * 并发执行的任务模块数，模块内的 RPC 数量不固定，不按延迟调整
+         */
+        @JvmField
+        val taskModules = AdaptiveConcurrencyLimiter("任务模块", 3, 1, 6, trackLatency = false)
+
+        /**
+         * 上报一次成功 RPC 尝试的耗时
+         */
+        @JvmStatic
+        fun recordLatency(method: String?, latencyMs: Long) {
+            if (method == null) return
+            limiters.forEach { it.onLatency(method, latencyMs) }
+        }
+
+        /**
+         * 上报一次服务端限流（如“手速太快”）
+         */
+        @JvmStatic
+        fun recordThrottled() {
+            limiters.forEach { it.onThrottled() }
+        }
+
+        /**
+         * 各限制器当前的状态
+         */
+        @JvmStatic
+        fun snapshot(): Map<String, String> = limiters.associate { it.name to it.toString() }
+
+        /**
+         * 所有已创建的限制器
+         */
+        @JvmStatic
+        fun all(): List<AdaptiveConcurrencyLimiter> = limiters.toList()
+    }
+
+    private val lock = Any()
+    private val semaphore = Semaphore(maxLimit)
+
+    // 当前上限
+    @Volatile
+    var limit: Int = initialLimit.coerceIn(minLimit, maxLimit)
+        private set
+
+    // 正在执行的数量
+    @Volatile
+    var inFlight: Int = 0
+        private set
+
+    // 限制器扣留的许可数，与 limit 之和恒为 maxLimit（不含尚未扣到的 debt）
+    private var reserved = 0
+
+    // 调小上限后还需扣留、等待归还的许可数
+    private var debt = 0
+
+    private var completedSinceIncrease = 0
+    private var cooldownUntil = 0L
+
+    /**
+     * 单个方法的延迟窗口，只在 lock 内访问
+     */
+    private class LatencyWindow {
+        val samples = LongArray(WINDOW_SIZE)
+        var count = 0
+        var smoothed = 0.0
+        var baseline = 0.0
+
+        fun add(sample: Long) {
+            samples[count % WINDOW_SIZE] = sample
+            count++
+            smoothed = if (count == 1) sample.toDouble() else smoothed + (sample - smoothed) * SMOOTHING
+            if (count >= MIN_SAMPLES && (baseline == 0.0 || count % BASELINE_REFRESH == 0)) {
+                val sorted = samples.copyOf(minOf(count, WINDOW_SIZE)).apply { sort() }
+                baseline = sorted[(sorted.size * BASELINE_PERCENTILE).toInt()].coerceAtLeast(1L).toDouble()
+            }
+        }
+    }
+
+    private val latencies = HashMap<String, LatencyWindow>()
+
+    init {
+        repeat(maxLimit - limit) {
+            if (semaphore.tryAcquire()) reserved++
+        }
+        limiters.add(this)
+    }
+
+    /**
+     * 在许可内执行 [block]，执行正常结束计为一次成功
+     */
+    suspend fun <T> withPermit(block: suspend () -> T): T {
+        semaphore.acquire()
+        synchronized(lock) { inFlight++ }
+        try {
+            return block().also { onCompleted() }
+        } finally {
+            release()
+        }
+    }
+
+    private fun release() {
+        synchronized(lock) {
+            inFlight--
+            if (debt > 0) {
+                debt--
+                reserved++
+                return
+            }
+        }
+        semaphore.release()
+    }
+
+    /**
+     * 一次执行完成：并发被用满时累计，满一个上限的数量后加性增长
+     */
+    private fun onCompleted() {
+        synchronized(lock) {
+            if (System.currentTimeMillis() < cooldownUntil) return
+            if (inFlight < limit) return
+            completedSinceIncrease++
+            if (completedSinceIncrease >= limit && limit < maxLimit) {
+                completedSinceIncrease = 0
+                increase()
+            }
+        }
+    }
+
+    private fun onLatency(method: String, latencyMs: Long) {
+        if (!trackLatency) return
+        if (methodPrefixes.isNotEmpty() && methodPrefixes.none { method.startsWith(it) }) return
+        synchronized(lock) {
+            val window = latencies.getOrPut(method) { LatencyWindow() }
+            window.add(latencyMs)
+            if (window.baseline > 0.0 && window.smoothed > window.baseline * latencyTolerance) {
+                decrease(
+                    0.9,
+                    "$method 延迟 ${window.smoothed.toLong()}ms > 基线 ${window.baseline.toLong()}ms×$latencyTolerance"
+                )
+            }
+        }
+    }
+
+    private fun onThrottled() {
+        synchronized(lock) {
+            decrease(backoffRatio, "服务端限流")
+        }
+    }
+
+    private fun increase() {
+        if (debt > 0) {
+            debt--
+        } else {
+            reserved--
+            semaphore.release()
+        }
+        limit++
+    }
+
+    private fun decrease(ratio: Double, reason: String) {
+        val now = System.currentTimeMillis()
+        if (now < cooldownUntil) return
+        val newLimit = (limit * ratio).toInt().coerceAtLeast(minLimit)
+        cooldownUntil = now + cooldownMs
+        completedSinceIncrease = 0
+        if (newLimit >= limit) return
+        debt += limit - newLimit
+        while (debt > 0 && semaphore.tryAcquire()) {
+            debt--
+            reserved++
+        }
+        Log.record(TAG, "⬇️ [$name] 并发上限 $limit -> $newLimit ($reason)")
+        limit = newLimit
+    }
+
+    override fun toString(): String {
+        return synchronized(lock) {
+            val slowest = latencies.entries.maxByOrNull { it.value.smoothed / it.value.baseline.coerceAtLeast(1.0) }
+            if (slowest == null) "limit=$limit, inFlight=$inFlight"
+            else "limit=$limit, inFlight=$inFlight, slowest=${slowest.key} " +
+                    "${slowest.value.smoothed.toLong()}ms/${slowest.value.baseline.toLong()}ms"
+        }
+    }
+}
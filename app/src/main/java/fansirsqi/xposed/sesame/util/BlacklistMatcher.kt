@@ -0,0 +1,145 @@
+package fansirsqi.xposed.sesame.util
+
+/**
+ * 编译后的任务黑名单匹配器（不可变，可在多线程中无锁共享）
+ *
+ * 匹配规则与 [TaskBlacklist.isTaskInBlacklist] 一致：
+ * 1. 完全匹配：哈希集合
+ * 2. 含中文的项双向匹配：任务信息包含该项（Aho-Corasick 多模式扫描），或该项包含任务信息
+ * 3. 纯英文/数字/符号项单向匹配：该项包含任务信息
+ *
+ * “某项包含任务信息”对所有项成立，统一用一个后缀自动机判断，一次查询与黑名单长度无关。
+ *
+ * @param items 黑名单项（已合并默认黑名单）
+ */
+class BlacklistMatcher(items: Collection<String>) {
+
+    private val exact: Set<String> = items.filterTo(HashSet()) { it.isNotBlank() }
+    private val chineseItems = AhoCorasick(exact.filter { item -> item.any { it in '\u4e00'..'\u9fa5' } })
+    private val allItems = SubstringIndex(exact)
+
+    val size: Int
+        get() = exact.size
+
+    fun matches(taskInfo: String): Boolean {
+        if (taskInfo.isEmpty()) return false
+        if (taskInfo in exact) return true
+        return chineseItems.containsAny(taskInfo) || allItems.isSubstring(taskInfo)
+    }
+
+    /**
+     * Aho-Corasick 自动机：判断文本中是否出现任一模式串
+     */
+    private class AhoCorasick(patterns: Collection<String>) {
+        private val next = ArrayList<HashMap<Char, Int>>()
+        private val fail: IntArray
+        private val terminal: BooleanArray
+
+        init {
+            next.add(HashMap())
+            val ends = ArrayList<Int>()
+            for (pattern in patterns) {
+                var state = 0
+                for (c in pattern) {
+                    state = next[state].getOrPut(c) {
+                        next.add(HashMap())
+                        next.size - 1
+                    }
+                }
+                ends.add(state)
+            }
+            fail = IntArray(next.size)
+            terminal = BooleanArray(next.size)
+            ends.forEach { terminal[it] = true }
+
+            // 广度优先构建失败指针，并把后缀上的命中传递到当前状态
+            val queue = ArrayDeque<Int>()
+            next[0].values.forEach { queue.addLast(it) }
+            while (queue.isNotEmpty()) {
+                val state = queue.removeFirst()
+                for ((c, child) in next[state]) {
+                    var f = fail[state]
+                    while (f != 0 && next[f][c] == null) f = fail[f]
+                    fail[child] = next[f][c]?.takeIf { it != child } ?: 0
+                    terminal[child] = terminal[child] || terminal[fail[child]]
+                    queue.addLast(child)
+                }
+            }
+        }
+
+        fun containsAny(text: String): Boolean {
+            if (next.size == 1) return false
+            var state = 0
+            for (c in text) {
+                while (state != 0 && next[state][c] == null) state = fail[state]
+                state = next[state][c] ?: 0
+                if (terminal[state]) return true
+            }
+            return false
+        }
+    }
+
+    /**
+     * 后缀自动机：判断查询串是否为任一文本的子串
+     * 各文本以分隔符拼接后构建，查询串不含分隔符时命中即说明落在单个文本内
+     */
+    private class SubstringIndex(texts: Collection<String>) {
+        private val next = ArrayList<HashMap<Char, Int>>()
+        private val link = ArrayList<Int>()
+        private val length = ArrayList<Int>()
+
+        init {
+            addState(0, -1)
+            var last = 0
+            for (text in texts) {
+                for (c in text) last = extend(last, c)
+                last = extend(last, SEPARATOR)
+            }
+        }
+
+        private fun addState(len: Int, suffixLink: Int): Int {
+            next.add(HashMap())
+            link.add(suffixLink)
+            length.add(len)
+            return next.size - 1
+        }
+
+        private fun extend(last: Int, c: Char): Int {
+            val cur = addState(length[last] + 1, 0)
+            var p = last
+            while (p != -1 && next[p][c] == null) {
+                next[p][c] = cur
+                p = link[p]
+            }
+            if (p != -1) {
+                val q = next[p].getValue(c)
+                if (length[p] + 1 == length[q]) {
+                    link[cur] = q
+                } else {
+                    val clone = addState(length[p] + 1, link[q])
+                    next[clone].putAll(next[q])
+                    while (p != -1 && next[p][c] == q) {
+                        next[p][c] = clone
+                        p = link[p]
+                    }
+                    link[q] = clone
+                    link[cur] = clone
+                }
+            }
+            return cur
+        }
+
+        fun isSubstring(query: String): Boolean {
+            var state = 0
+            for (c in query) {
+                if (c == SEPARATOR) return false
+                state = next[state][c] ?: return false
+            }
+            return true
+        }
+
+        companion object {
+            private const val SEPARATOR = '\u0000'
+        }
+    }
+}
@@ -6,37 +6,59 @@ import com.fasterxml.jackson.core.type.TypeReference
 import com.fasterxml.jackson.core.util.DefaultIndenter
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter
 import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.exc.MismatchedInputException
+import com.fasterxml.jackson.databind.node.ObjectNode
 import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
-import com.fasterxml.jackson.module.kotlin.readValue
 import java.io.File
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
 import java.nio.file.Path
 import java.nio.file.StandardWatchEventKinds
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.locks.ReentrantReadWriteLock
 import kotlin.concurrent.read
 import kotlin.concurrent.thread
 import kotlin.concurrent.write
-import kotlin.math.abs
 
+/**
+ * 跨进程共享的键值存储
+ *
+ * 存储格式：
+ * - DataStore.json：快照，保存压缩时刻的完整数据
+ * - DataStore.journal：追加日志，首行为头部 {"gen":代数,"seq":基准序号}，之后每行一条 put/del 记录
+ *
+ * 写入只追加一行日志，日志过大时压缩为新快照并开启新一代日志。
+ * 各进程记录已应用的代数、序号和日志偏移量，写入前只读取新增的日志尾部，
+ * 代数变化（其他进程完成了压缩）时才重新加载快照。
+ */
 object DataStore {
     private const val TAG = "DataStore"
     private const val FILE_NAME = "DataStore.json"
+    private const val JOURNAL_NAME = "DataStore.journal"
+    private const val LOCK_NAME = "DataStore.lock"
+
+    // 日志压缩阈值：记录条数或文件大小任一超过即压缩
+    private const val COMPACT_ENTRY_THRESHOLD = 256
+    private const val COMPACT_SIZE_THRESHOLD = 256 * 1024L
 
     // 配置 Jackson：忽略未知的属性，防止版本升级导致崩溃
     private val mapper = jacksonObjectMapper().apply {
         configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
     }
 
-    private val data = ConcurrentHashMap<String, Any>()
+    // 值以 JsonNode 保存，put 时即完成序列化，调用方之后修改原对象不会影响存储
+    private val data = ConcurrentHashMap<String, JsonNode>()
     private val lock = ReentrantReadWriteLock()
     private lateinit var storageFile: File
+    private lateinit var journalFile: File
+    private lateinit var lockFile: File
 
-    // 用于防抖：记录最后一次加载的文件修改时间
-    private val lastLoadedTime = AtomicLong(0)
-    // 用于防抖：记录最后一次写入的时间，避免自己写文件触发自己的监听
-    private val lastWriteTime = AtomicLong(0)
+    // 以下状态只在 lock.write 内访问
+    private var journalGeneration = -1L // 已加载日志的代数
+    private var journalOffset = 0L // 已应用到的日志字节偏移
+    private var journalEntries = 0 // 当前日志中的记录条数
+    private var lastSeq = 0L // 已应用的最大序号
 
     private var onChangeListener: (() -> Unit)? = null
 
@@ -61,6 +83,8 @@ object DataStore {
         setWorldReadableWritable(dir)
 
         storageFile = File(dir, FILE_NAME)
+        journalFile = File(dir, JOURNAL_NAME)
+        lockFile = File(dir, LOCK_NAME)
 
         // 3. 确保文件存在
         if (!storageFile.exists()) {
@@ -74,8 +98,19 @@ object DataStore {
                 Log.e(TAG, "Failed to create storage file", e)
             }
         }
+        if (!lockFile.exists()) {
+            try {
+                lockFile.createNewFile()
+                setWorldReadableWritable(lockFile)
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to create lock file", e)
+            }
+        }
 
-        loadFromDisk()
+        lock.write {
+            journalGeneration = -1L
+            withFileLock { syncFromDisk() }
+        }
         startWatcherNio()
     }
 
@@ -107,28 +142,37 @@ object DataStore {
         }
     }
 
+    /**
+     * 无锁读取内存中的原始节点，不与磁盘同步
+     * 值变化时节点会被整体替换，调用方可用引用比较判断键是否变化
+     */
+    fun peekNode(key: String): JsonNode? = data[key]
+
     /* -------------------------------------------------- */
     /*  类型安全读取                                       */
     /* -------------------------------------------------- */
     fun <T : Any> getOrCreate(key: String, typeRef: TypeReference<T>): T = lock.write {
-        // 在写入前，强制从磁盘重新加载，以获取其他进程的修改
-        forceLoadFromDisk()
-        // 1. 尝试从内存获取
-        data[key]?.let {
-            try {
-                return mapper.convertValue(it, typeRef)
-            } catch (e: Exception) {
-                Log.w(TAG, "Data mismatch for key $key, overwriting with default.", e)
+        withFileLock {
+            // 只读取其他进程新追加的日志，而不是重新解析整个文件
+            syncFromDisk()
+            // 1. 尝试从内存获取
+            data[key]?.let {
+                try {
+                    return mapper.convertValue(it, typeRef)
+                } catch (e: Exception) {
+                    Log.w(TAG, "Data mismatch for key $key, overwriting with default.", e)
+                }
             }
-        }
 
-        // 2. 内存没有，创建默认值
-        val default: T = createDefault(typeRef)
-        data[key] = default
+            // 2. 内存没有，创建默认值
+            val default: T = createDefault(typeRef)
+            val node: JsonNode = mapper.valueToTree(default)
+            data[key] = node
 
-        // 3. 只有当确实是新数据时才保存，避免频繁 IO
-        saveToDisk()
-        default
+            // 3. 只追加这一个键
+            appendEntry("put", key, node)
+            default
+        }
     }
 
     @Suppress("UNCHECKED_CAST")
@@ -155,67 +199,221 @@ object DataStore {
     }
 
     /**
-     * 强制从磁盘加载最新数据到内存。
-     * 在每次写入操作（put, remove, getOrCreate）之前调用，以防止多进程冲突。
+     * 持有跨进程文件锁执行操作（调用方需已持有 lock.write）
+     */
+    private inline fun <T> withFileLock(block: () -> T): T {
+        if (!hasLockFile()) return block()
+        RandomAccessFile(lockFile, "rw").use { raf ->
+            raf.channel.lock().use {
+                return block()
+            }
+        }
+    }
+
+    // lateinit 的初始化检查不能直接写在内联函数中
+    private fun hasLockFile(): Boolean = ::lockFile.isInitialized
+
+    /**
+     * 与磁盘同步：日志代数未变时只应用新增的尾部记录，否则重新加载快照与整个日志。
+     * 需在 lock.write 与文件锁内调用。
+     *
+     * @return 内存数据是否发生变化
      */
-    private fun forceLoadFromDisk() {
+    private fun syncFromDisk(): Boolean {
+        if (!::journalFile.isInitialized) return false
         try {
-            if (!::storageFile.isInitialized || !storageFile.exists() || storageFile.length() == 0L) {
-                // 如果文件不存在或为空，我们假设内存是空的。
-                data.clear()
-                return
+            val header = readJournalHeader()
+            if (header == null || header.first != journalGeneration || journalFile.length() < journalOffset) {
+                reloadAll(header)
+                return true
             }
-            // 不进行任何时间检查，直接读取文件
-            val loaded: Map<String, Any> = mapper.readValue(storageFile)
-            data.clear()
-            data.putAll(loaded)
-            // 更新加载时间戳，这样文件监控的 loadFromDisk 就不会因我们自己的写入而重复加载
-            lastLoadedTime.set(storageFile.lastModified())
+            return applyJournalTail() > 0
         } catch (e: Exception) {
-            // 如果文件正在被另一个进程写入，可能会导致解析异常，这里我们选择忽略，
-            // 在下一个写入周期，数据会被同步。
+            // 解析失败时保留内存数据，并作废已加载的代数，下次同步重新加载快照与整个日志，
+            // 避免偏移量停在不确定的位置
+            journalGeneration = -1L
             if (e !is MismatchedInputException) {
-                Log.w(TAG, "Force load from disk failed: ${e.message}")
+                Log.w(TAG, "Sync from disk failed: ${e.message}")
             }
+            return false
         }
     }
 
-    private fun loadFromDisk() {
-        if (!::storageFile.isInitialized || !storageFile.exists()) return
+    /**
+     * 读取日志头部
+     * @return (代数, 基准序号)，日志不存在或头部损坏时返回 null
+     */
+    private fun readJournalHeader(): Pair<Long, Long>? {
+        if (!journalFile.exists() || journalFile.length() == 0L) return null
+        val line = journalFile.bufferedReader().use { it.readLine() } ?: return null
+        return try {
+            val node = mapper.readTree(line)
+            Pair(node.path("gen").asLong(-1L), node.path("seq").asLong(0L))
+        } catch (_: Exception) {
+            null
+        }
+    }
 
-        // 检查文件修改时间，防止重复加载
-        val currentModTime = storageFile.lastModified()
-        if (currentModTime <= lastLoadedTime.get()) {
+    /**
+     * 重新加载快照，并从头应用日志。
+     * 日志缺失时以快照为基准开启新一代日志；头部损坏时先宽松重放整个日志（无法解析的行跳过），
+     * 把结果写入快照后再开启新一代日志，尚未压缩的记录不会因为重写头部而丢失。
+     */
+    private fun reloadAll(header: Pair<Long, Long>?) {
+        data.clear()
+        if (storageFile.exists() && storageFile.length() > 0L) {
+            val snapshot = mapper.readTree(storageFile)
+            if (snapshot is ObjectNode) {
+                snapshot.fields().forEach { (key, value) -> data[key] = value }
+            }
+        }
+        if (header == null || header.first < 0) {
+            lastSeq = maxOf(lastSeq, 0L)
+            if (journalFile.exists() && journalFile.length() > 0L) {
+                Log.w(TAG, "Journal header missing or corrupt, replaying existing entries")
+                journalOffset = 0L
+                journalEntries = 0
+                applyJournalTail()
+                if (!saveToDisk()) {
+                    // 快照未写入时保留旧日志，下次同步再重放
+                    journalGeneration = -1L
+                    return
+                }
+            }
+            writeJournalHeader(System.currentTimeMillis(), lastSeq)
             return
         }
+        journalGeneration = header.first
+        lastSeq = header.second
+        journalOffset = headerLength()
+        journalEntries = 0
+        applyJournalTail()
+    }
 
-        // 如果文件修改时间非常接近我们最后一次写入的时间（< 500ms），说明是我们自己写的，忽略
-        if (abs(currentModTime - lastWriteTime.get()) < 500) {
-            lastLoadedTime.set(currentModTime)
-            return
+    private fun headerLength(): Long {
+        journalFile.inputStream().buffered().use { input ->
+            var length = 0L
+            while (true) {
+                val b = input.read()
+                if (b == -1) return length
+                length++
+                if (b == '\n'.code) return length
+            }
         }
+    }
 
-        lock.write {
-            try {
-                // 双重检查，防止在等待锁的过程中文件又被改了
-                if (storageFile.length() == 0L) return@write
+    /**
+     * 从 journalOffset 开始应用新增的完整记录。进程崩溃留下的半行会被截断，无法解析的完整行跳过并计数。
+     *
+     * @return 应用的记录条数
+     */
+    private fun applyJournalTail(): Int {
+        val length = journalFile.length()
+        if (length <= journalOffset) return 0
+        val bytes = ByteArray((length - journalOffset).toInt())
+        RandomAccessFile(journalFile, "rw").use { raf ->
+            raf.seek(journalOffset)
+            raf.readFully(bytes)
+            var applied = 0
+            var skipped = 0
+            var lineStart = 0
+            for (i in bytes.indices) {
+                if (bytes[i] != '\n'.code.toByte()) continue
+                if (i > lineStart) {
+                    try {
+                        applyEntry(mapper.readTree(bytes, lineStart, i - lineStart))
+                        applied++
+                    } catch (_: Exception) {
+                        skipped++
+                    }
+                }
+                lineStart = i + 1
+            }
+            journalOffset += lineStart
+            journalEntries += applied + skipped
+            if (skipped > 0) {
+                Log.w(TAG, "Skipped $skipped malformed journal entries")
+            }
+            if (lineStart < bytes.size) {
+                Log.w(TAG, "Truncating incomplete journal entry at $journalOffset")
+                raf.setLength(journalOffset)
+            }
+            return applied
+        }
+    }
 
-                val loaded: Map<String, Any> = mapper.readValue(storageFile)
-                data.clear()
-                data.putAll(loaded)
+    private fun applyEntry(entry: JsonNode) {
+        val key = entry.path("key").asText()
+        when (entry.path("op").asText()) {
+            "put" -> data[key] = entry.path("value")
+            "del" -> data.remove(key)
+        }
+        lastSeq = maxOf(lastSeq, entry.path("seq").asLong(lastSeq))
+    }
 
-                lastLoadedTime.set(currentModTime)
+    /**
+     * 追加一条记录，超过阈值时压缩。需在 lock.write 与文件锁内调用。
+     */
+    private fun appendEntry(op: String, key: String, value: JsonNode?) {
+        if (!::journalFile.isInitialized) return
+        try {
+            val entry = mapper.createObjectNode()
+                .put("seq", lastSeq + 1)
+                .put("op", op)
+                .put("key", key)
+            if (value != null) entry.set<JsonNode>("value", value)
+            val bytes = (mapper.writeValueAsString(entry) + "\n").toByteArray()
+            // 偏移量取追加后的文件长度（文件锁内，已应用之前的全部记录），不在旧值上累加
+            journalOffset = FileOutputStream(journalFile, true).use { out ->
+                out.write(bytes)
+                out.channel.size()
+            }
+            lastSeq++
+            journalEntries++
+            if (journalEntries >= COMPACT_ENTRY_THRESHOLD || journalOffset >= COMPACT_SIZE_THRESHOLD) {
+                compact()
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to append journal", e)
+        }
+    }
 
-                // 通知监听器
-                onChangeListener?.invoke()
+    /**
+     * 压缩：写入完整快照后开启新一代日志。
+     * 快照写入成功但日志尚未重置时崩溃也是安全的，重放旧日志的结果与快照一致。
+     */
+    private fun compact() {
+        if (saveToDisk()) {
+            writeJournalHeader(journalGeneration + 1, lastSeq)
+        }
+    }
 
-            } catch (e: Exception) {
-                // 仅记录严重错误，忽略文件被占用导致的临时错误
-                if (e !is MismatchedInputException) {
-                    Log.w(TAG, "Failed to load config: ${e.message}")
-                }
+    private fun writeJournalHeader(generation: Long, seq: Long) {
+        val header = mapper.createObjectNode().put("gen", generation).put("seq", seq)
+        val bytes = (mapper.writeValueAsString(header) + "\n").toByteArray()
+        val tempFile = File(journalFile.parentFile, journalFile.name + ".tmp")
+        tempFile.writeBytes(bytes)
+        setWorldReadableWritable(tempFile)
+        if (!tempFile.renameTo(journalFile)) {
+            journalFile.delete()
+            if (!tempFile.renameTo(journalFile)) {
+                journalFile.writeBytes(bytes)
+                tempFile.delete()
             }
         }
+        setWorldReadableWritable(journalFile)
+        journalGeneration = generation
+        journalOffset = bytes.size.toLong()
+        journalEntries = 0
+    }
+
+    private fun loadFromDisk() {
+        if (!::storageFile.isInitialized) return
+        lock.write {
+            val changed = withFileLock { syncFromDisk() }
+            // 通知监听器
+            if (changed) onChangeListener?.invoke()
+        }
     }
 
     private val prettyPrinter = DefaultPrettyPrinter().apply {
@@ -223,19 +421,17 @@ object DataStore {
         indentObjectsWith(DefaultIndenter("    ", DefaultIndenter.SYS_LF))
     }
 
-    private fun saveToDisk() {
-        if (!::storageFile.isInitialized) return
+    private fun saveToDisk(): Boolean {
+        if (!::storageFile.isInitialized) return false
         try {
             val tempFile = File(storageFile.parentFile, storageFile.name + ".tmp")
             // 1. 写入临时文件
             mapper.writer(prettyPrinter).writeValue(tempFile, data)
             // 2. 设置临时文件权限 (关键：确保 .tmp 也是 666)
             setWorldReadableWritable(tempFile)
-            // 3. 记录写入时间
-            lastWriteTime.set(System.currentTimeMillis())
-            // 4. 尝试原子重命名 (Atomic Rename)
+            // 3. 尝试原子重命名 (Atomic Rename)
             var renameSuccess = tempFile.renameTo(storageFile)
-            // 5. 如果重命名失败 (常见于目标文件已存在或不同挂载点)
+            // 4. 如果重命名失败 (常见于目标文件已存在或不同挂载点)
             if (!renameSuccess) {
                 // 尝试先删除旧文件
                 if (storageFile.exists()) {
@@ -244,7 +440,7 @@ object DataStore {
                 // 再次尝试重命名
                 renameSuccess = tempFile.renameTo(storageFile)
             }
-            // 6. 如果依然失败，使用流复制 (Copy Stream) 作为最终手段
+            // 5. 如果依然失败，使用流复制 (Copy Stream) 作为最终手段
             if (!renameSuccess) {
                 Log.w(TAG, "renameTo failed, falling back to copy stream.")
                 try {
@@ -258,14 +454,13 @@ object DataStore {
                 }
             }
             if (renameSuccess) {
-                // 7. 再次确保最终文件的权限 (防止 copy 后权限丢失)
+                // 6. 再次确保最终文件的权限 (防止 copy 后权限丢失)
                 setWorldReadableWritable(storageFile)
-
-                // 更新加载时间，避免 Watcher 再次触发加载
-                lastLoadedTime.set(storageFile.lastModified())
             }
+            return renameSuccess
         } catch (e: Exception) {
             Log.e(TAG, "Failed to save config", e)
+            return false
         }
     }
 
@@ -275,7 +470,7 @@ object DataStore {
 
             val path = storageFile.toPath().parent ?: return@thread
             val watchService = path.fileSystem.newWatchService()
-            path.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY)
+            path.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE)
 
             while (true) {
                 val key = try {
@@ -290,7 +485,7 @@ object DataStore {
                     val changedPath = event.context() as? Path
                     val fileName = changedPath?.toString()
 
-                    if (fileName == storageFile.name) {
+                    if (fileName == storageFile.name || fileName == journalFile.name) {
                         shouldReload = true
                     }
                 }
@@ -298,6 +493,7 @@ object DataStore {
                 if (shouldReload) {
                     // 稍微延迟一下，等待文件写入完成
                     Thread.sleep(100)
+                    // 自己的写入已推进偏移量，这里不会重复加载
                     loadFromDisk()
                 }
 
@@ -310,17 +506,24 @@ object DataStore {
         }
     }
 
-    fun put(key: String, value: Any) = lock.write {
-        // 在写入前，强制从磁盘重新加载，以获取其他进程的修改
-        forceLoadFromDisk()
-        data[key] = value
-        saveToDisk()
+    fun put(key: String, value: Any): Unit = lock.write {
+        withFileLock {
+            // 写入前先应用其他进程追加的记录
+            syncFromDisk()
+            val node: JsonNode = mapper.valueToTree(value)
+            // 值未变化时不写日志
+            if (data[key] == node) return@withFileLock
+            data[key] = node
+            appendEntry("put", key, node)
+        }
     }
 
-    fun remove(key: String) = lock.write {
-        // 在写入前，强制从磁盘重新加载，以获取其他进程的修改
-        forceLoadFromDisk()
-        data.remove(key)
-        saveToDisk()
+    fun remove(key: String): Unit = lock.write {
+        withFileLock {
+            syncFromDisk()
+            if (data.remove(key) != null) {
+                appendEntry("del", key, null)
+            }
+        }
     }
 }
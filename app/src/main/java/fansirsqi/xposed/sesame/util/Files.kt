@@ -200,11 +200,6 @@ object Files {
         return getTargetFileofUser(userId, "status.json")
     }
 
-    @JvmStatic
-    fun getFriendWatchFile(userId: String): File? {
-        return getTargetFileofUser(userId, "friendWatch.json")
-    }
-
     @JvmStatic
     fun exportFile(file: File, hasTime: Boolean): File? {
         val exportDir = File(
@@ -375,6 +370,26 @@ object Files {
         }
     }
 
+    /**
+     * 原子写入：先写入同目录临时文件，再重命名覆盖目标文件，
+     * 避免进程被杀时留下写了一半的文件。重命名失败时退回普通写入。
+     */
+    @JvmStatic
+    fun write2FileAtomic(s: String, f: File): Boolean {
+        if (beforWrite(f)) return false
+        val tempFile = File(f.parentFile, f.name + ".tmp")
+        try {
+            tempFile.writeText(s)
+            if (tempFile.renameTo(f)) return true
+            if (f.delete() && tempFile.renameTo(f)) return true
+        } catch (e: IOException) {
+            Log.printStackTrace(TAG, e)
+        } finally {
+            if (tempFile.exists()) tempFile.delete()
+        }
+        return write2File(s, f)
+    }
+
     @JvmStatic
     fun copy(source: File, dest: File): Boolean {
         // Kotlin 扩展方法，内部使用了 FileChannel 或 Files.copy
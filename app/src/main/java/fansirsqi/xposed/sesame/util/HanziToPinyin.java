@@ -1,9 +1,10 @@
 package fansirsqi.xposed.sesame.util;
 
-import android.text.TextUtils;
-
+import java.nio.charset.StandardCharsets;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -221,6 +222,26 @@ public class HanziToPinyin {
      */
     private static final char FIRST_UNIHAN = '㐀';
     private static final Collator COLLATOR = Collator.getInstance(Locale.CHINA);
+    /**
+     * Last character of the CJK unified range covered by the direct lookup table
+     */
+    private static final char LAST_INDEXED_UNIHAN = '\u9fff';
+    private static final short NOT_RESOLVED = -2;
+    private static final short NOT_PINYIN = -1;
+    private static final char SORT_KEY_TERMINATOR = '\u0000';
+    /**
+     * UNIHANS offset of each character in [FIRST_UNIHAN, LAST_INDEXED_UNIHAN], NOT_PINYIN when
+     * the character has no pinyin, NOT_RESOLVED until first looked up. Entries are filled with
+     * the collator result on demand, so the device collator stays the single source of truth.
+     */
+    private static final short[] PINYIN_INDEX = newPinyinIndex();
+    /**
+     * PINYINS decoded once, shared by all tokens
+     */
+    private static final String[] PINYIN_STRINGS = newPinyinStrings();
+    private static CollationKey[] sUnihanKeys;
+    private static CollationKey sFirstPinyinKey;
+    private static CollationKey sLastPinyinKey;
     private static HanziToPinyin sInstance;
     private final boolean mHasChinaCollator;
 
@@ -273,8 +294,6 @@ public class HanziToPinyin {
             Token token = new Token();
             final String letter = Character.toString(character);
             token.source = letter;
-            int offset = -1;
-            int cmp;
             if (character < 256) {
                 token.type = Token.LATIN;
                 token.target = letter;
@@ -283,49 +302,15 @@ public class HanziToPinyin {
                 token.type = Token.UNKNOWN;
                 token.target = letter;
                 return token;
-            } else {
-                cmp = COLLATOR.compare(letter, FIRST_PINYIN_UNIHAN);
-                if (cmp < 0) {
-                    token.type = Token.UNKNOWN;
-                    token.target = letter;
-                    return token;
-                } else if (cmp == 0) {
-                    token.type = Token.PINYIN;
-                    offset = 0;
-                } else {
-                    cmp = COLLATOR.compare(letter, LAST_PINYIN_UNIHAN);
-                    if (cmp > 0) {
-                        token.type = Token.UNKNOWN;
-                        token.target = letter;
-                        return token;
-                    } else if (cmp == 0) {
-                        token.type = Token.PINYIN;
-                        offset = UNIHANS.length - 1;
-                    }
-                }
             }
-            token.type = Token.PINYIN;
-            if (offset < 0) {
-                int begin = 0;
-                int end = UNIHANS.length - 1;
-                while (begin <= end) {
-                    offset = (begin + end) / 2;
-                    final String unihan = Character.toString(UNIHANS[offset]);
-                    cmp = COLLATOR.compare(letter, unihan);
-                    if (cmp == 0) {
-                        break;
-                    } else if (cmp > 0) {
-                        begin = offset + 1;
-                    } else {
-                        end = offset - 1;
-                    }
-                }
-            }
-            StringBuilder pinyin = new StringBuilder();
-            for (int j = 0; j < PINYINS[offset].length && PINYINS[offset][j] != 0; j++) {
-                pinyin.append((char) PINYINS[offset][j]);
+            int offset = getPinyinOffset(character);
+            if (offset == NOT_PINYIN) {
+                token.type = Token.UNKNOWN;
+                token.target = letter;
+                return token;
             }
-            token.target = pinyin.toString();
+            token.type = Token.PINYIN;
+            token.target = PINYIN_STRINGS[offset];
             return token;
         } catch (Throwable th) {
             Log.record(TAG, "字符'" + character + "'转换失败");
@@ -333,6 +318,101 @@ public class HanziToPinyin {
         }
     }
 
+    /**
+     * Look up the UNIHANS offset of a character not below FIRST_UNIHAN. Characters of the CJK
+     * unified range are resolved once and then read from PINYIN_INDEX.
+     */
+    private static int getPinyinOffset(char character) {
+        if (character > LAST_INDEXED_UNIHAN) {
+            synchronized (COLLATOR) {
+                return resolvePinyinOffset(character);
+            }
+        }
+        final int index = character - FIRST_UNIHAN;
+        int offset = PINYIN_INDEX[index];
+        if (offset == NOT_RESOLVED) {
+            synchronized (COLLATOR) {
+                offset = resolvePinyinOffset(character);
+            }
+            PINYIN_INDEX[index] = (short) offset;
+        }
+        return offset;
+    }
+
+    /**
+     * Find the UNIHANS offset by zh collation. Collation keys of UNIHANS are built once, so each
+     * probe is a byte comparison instead of a full Collator.compare. Must hold the COLLATOR lock.
+     */
+    private static int resolvePinyinOffset(char character) {
+        final CollationKey letter = COLLATOR.getCollationKey(Character.toString(character));
+        if (sUnihanKeys == null) {
+            CollationKey[] keys = new CollationKey[UNIHANS.length];
+            for (int i = 0; i < UNIHANS.length; i++) {
+                keys[i] = COLLATOR.getCollationKey(Character.toString(UNIHANS[i]));
+            }
+            sFirstPinyinKey = COLLATOR.getCollationKey(FIRST_PINYIN_UNIHAN);
+            sLastPinyinKey = COLLATOR.getCollationKey(LAST_PINYIN_UNIHAN);
+            sUnihanKeys = keys;
+        }
+        int cmp = letter.compareTo(sFirstPinyinKey);
+        if (cmp < 0) {
+            return NOT_PINYIN;
+        } else if (cmp == 0) {
+            return 0;
+        }
+        cmp = letter.compareTo(sLastPinyinKey);
+        if (cmp > 0) {
+            return NOT_PINYIN;
+        } else if (cmp == 0) {
+            return UNIHANS.length - 1;
+        }
+        int offset = -1;
+        int begin = 0;
+        int end = UNIHANS.length - 1;
+        while (begin <= end) {
+            offset = (begin + end) / 2;
+            cmp = letter.compareTo(sUnihanKeys[offset]);
+            if (cmp == 0) {
+                break;
+            } else if (cmp > 0) {
+                begin = offset + 1;
+            } else {
+                end = offset - 1;
+            }
+        }
+        return offset;
+    }
+
+    private static short[] newPinyinIndex() {
+        short[] index = new short[LAST_INDEXED_UNIHAN - FIRST_UNIHAN + 1];
+        Arrays.fill(index, NOT_RESOLVED);
+        return index;
+    }
+
+    private static String[] newPinyinStrings() {
+        String[] strings = new String[PINYINS.length];
+        for (int i = 0; i < PINYINS.length; i++) {
+            int length = 0;
+            while (length < PINYINS[i].length && PINYINS[i][length] != 0) {
+                length++;
+            }
+            strings[i] = new String(PINYINS[i], 0, length, StandardCharsets.US_ASCII);
+        }
+        return strings;
+    }
+
+    /**
+     * Build a sort key whose String order equals comparing the pinyin targets of two inputs
+     * token by token: targets are joined with a terminator that sorts before any character.
+     */
+    public String getSortKey(final String input) {
+        StringBuilder sb = new StringBuilder();
+        for (Token token : get(input)) {
+            sb.append(token.target).append(SORT_KEY_TERMINATOR);
+        }
+        return sb.toString();
+    }
+
     /**
      * Convert the input to a array of tokens. The sequence of ASCII or Unknown
      * characters without
@@ -342,7 +422,7 @@ public class HanziToPinyin {
      */
     public ArrayList<Token> get(final String input) {
         ArrayList<Token> tokens = new ArrayList<>();
-        if (!mHasChinaCollator || TextUtils.isEmpty(input)) {
+        if (!mHasChinaCollator || input == null || input.isEmpty()) {
             // return empty tokens.
             return tokens;
         }
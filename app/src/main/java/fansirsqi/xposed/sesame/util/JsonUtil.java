@@ -12,13 +12,18 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 
 public class JsonUtil {
@@ -447,6 +452,59 @@ public class JsonUtil {
         return list; // 返回列表
     }
 
+    /**
+     * 将已解析的 Map/List 结构（如宿主返回的 fastjson 对象）直接转换为 JSONObject，不经过字符串
+     * <p>
+     * 数值类型与 new JSONObject(String) 的解析结果保持一致：小数转为 Double，超出 long 的整数转为 Double
+     *
+     * @param map 源对象
+     * @return JSONObject对象
+     */
+    public static JSONObject toJSONObject(Map<?, ?> map) {
+        JSONObject jo = new JSONObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getKey() == null) {
+                continue;
+            }
+            try {
+                jo.put(String.valueOf(entry.getKey()), toJSONValue(entry.getValue()));
+            } catch (JSONException ignored) {
+                // NaN/Infinity 无法放入 JSONObject，与解析字符串时一样丢弃该字段
+            }
+        }
+        return jo;
+    }
+
+    private static Object toJSONValue(Object value) throws JSONException {
+        if (value == null) {
+            return JSONObject.NULL;
+        }
+        if (value instanceof Map) {
+            return toJSONObject((Map<?, ?>) value);
+        }
+        if (value instanceof Collection) {
+            JSONArray ja = new JSONArray();
+            for (Object item : (Collection<?>) value) {
+                ja.put(toJSONValue(item));
+            }
+            return ja;
+        }
+        if (value instanceof BigDecimal || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof BigInteger) {
+            BigInteger bi = (BigInteger) value;
+            return bi.bitLength() < 64 ? (Object) bi.longValue() : (Object) bi.doubleValue();
+        }
+        if (value instanceof Byte || value instanceof Short) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        return String.valueOf(value);
+    }
+
     /**
      * 内部方法，执行 JSON 操作并处理异常
      *
@@ -6,6 +6,7 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
 
 /**
  * 日志工具类，负责初始化和管理各种类型的日志记录器，并提供日志输出方法。
@@ -17,6 +18,9 @@ object Log {
     // 错误去重机制
     private val errorCountMap = ConcurrentHashMap<String, AtomicInteger>()
 
+    // 各类日志的累计行数，用于统计日志吞吐
+    private val lineCounts = ConcurrentHashMap<String, LongAdder>()
+
     // Logger 实例
     private val RECORD_LOGGER: Logger
     private val DEBUG_LOGGER: Logger
@@ -59,6 +63,7 @@ object Log {
     @JvmStatic
     fun record(msg: String) {
         if (BaseModel.recordLog.value == true) {
+            count("record")
             RECORD_LOGGER.info("$DEFAULT_TAG{}", msg)
         }
     }
@@ -71,6 +76,7 @@ object Log {
     @JvmStatic
     fun forest(msg: String) {
         record(msg)
+        count("forest")
         FOREST_LOGGER.debug("{}", msg)
     }
 
@@ -82,11 +88,13 @@ object Log {
     @JvmStatic
     fun farm(msg: String) {
         record(msg)
+        count("farm")
         FARM_LOGGER.debug("{}", msg)
     }
 
     @JvmStatic
     fun other(msg: String) {
+        count("other")
         OTHER_LOGGER.debug("{}", msg)
     }
 
@@ -97,6 +105,7 @@ object Log {
 
     @JvmStatic
     fun debug(msg: String) {
+        count("debug")
         DEBUG_LOGGER.debug("{}", msg)
     }
 
@@ -107,6 +116,7 @@ object Log {
 
     @JvmStatic
     fun error(msg: String) {
+        count("error")
         ERROR_LOGGER.error("$DEFAULT_TAG{}", msg)
     }
 
@@ -117,6 +127,7 @@ object Log {
 
     @JvmStatic
     fun capture(msg: String) {
+        count("capture")
         CAPTURE_LOGGER.info("$DEFAULT_TAG{}", msg)
     }
 
@@ -125,6 +136,16 @@ object Log {
         capture("[$tag]: $msg")
     }
 
+    private fun count(type: String) {
+        lineCounts.computeIfAbsent(type) { LongAdder() }.increment()
+    }
+
+    /**
+     * 各类日志的累计行数
+     */
+    @JvmStatic
+    fun getLineCounts(): Map<String, Long> = lineCounts.mapValues { it.value.sum() }
+
     fun d(tag: String, msg: String) {
         DEBUG_LOGGER.debug("[$tag]: $msg")
     }
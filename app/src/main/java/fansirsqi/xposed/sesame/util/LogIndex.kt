@@ -0,0 +1,303 @@
+package fansirsqi.xposed.sesame.util
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import java.io.Closeable
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+
+/**
+ * 日志文件行索引
+ *
+ * 1. 行起始偏移保存在 [LongRingBuffer] 中，不装箱；超过 [maxLines] 时覆盖最早的行
+ * 2. 行号为绝对行号（从打开文件起递增），丢弃旧行不会让已有行号失效
+ * 3. 索引、读取、搜索都通过 [FileChannel] 定位读取整块数据，不再逐字节 readLine
+ * 4. 搜索按行区间切分并行扫描，直接在 UTF-8 字节上做大小写不敏感匹配
+ * 5. 文件增长时只扫描新增部分，搜索也可以只针对新增的尾部
+ *
+ * 日志文件可能被模块进程清空或轮转，映射区域被截断会触发 SIGBUS，
+ * 因此这里不长期持有 MappedByteBuffer，而是用大块顺序读取代替。
+ *
+ * @param maxLines 最多保留的行数
+ */
+class LogIndex(private val maxLines: Int) : Closeable {
+
+    companion object {
+        private const val SCAN_BLOCK_SIZE = 256 * 1024
+        private const val MAX_LINE_BYTES = 64 * 1024
+        private const val NEWLINE = '\n'.code.toByte()
+        private const val CARRIAGE_RETURN = '\r'.code.toByte()
+    }
+
+    private var channel: FileChannel? = null
+
+    // 有效的行起始偏移
+    private val offsets = LongRingBuffer(maxLines)
+
+    // 第一条有效行的绝对行号
+    private var firstLineNo = 0L
+
+    // 已索引到的文件位置
+    private var indexedEnd = 0L
+
+    // 上一次扫描以换行结束，下一个字节即新行起点
+    private var lineStartPending = true
+
+    /**
+     * 当前保留的行数
+     */
+    val lineCount: Int
+        get() = synchronized(this) { offsets.size }
+
+    /**
+     * 第一条有效行的绝对行号
+     */
+    val firstLine: Long
+        get() = synchronized(this) { firstLineNo }
+
+    /**
+     * 已索引的文件长度
+     */
+    val indexedSize: Long
+        get() = synchronized(this) { indexedEnd }
+
+    /**
+     * 打开并完整索引文件，会关闭之前打开的文件
+     */
+    suspend fun open(file: File) {
+        close()
+        val newChannel = RandomAccessFile(file, "r").channel
+        synchronized(this) {
+            channel = newChannel
+        }
+        indexTo(newChannel.size())
+    }
+
+    /**
+     * 将索引扩展到 [newSize]
+     * @return 新增的行数
+     */
+    suspend fun indexTo(newSize: Long): Int {
+        val ch = synchronized(this) { channel } ?: return 0
+        var position = synchronized(this) { indexedEnd }
+        if (newSize <= position) return 0
+
+        val buffer = ByteBuffer.allocate(SCAN_BLOCK_SIZE)
+        val found = LongBuilder()
+        var pending = synchronized(this) { lineStartPending }
+        while (position < newSize) {
+            currentCoroutineContext().ensureActive()
+            buffer.clear()
+            buffer.limit(minOf(SCAN_BLOCK_SIZE.toLong(), newSize - position).toInt())
+            val read = ch.read(buffer, position)
+            if (read <= 0) break
+            val bytes = buffer.array()
+            for (i in 0 until read) {
+                if (pending) {
+                    found.add(position + i)
+                    pending = false
+                }
+                if (bytes[i] == NEWLINE) pending = true
+            }
+            position += read
+        }
+
+        synchronized(this) {
+            if (channel !== ch) return 0
+            appendOffsets(found)
+            indexedEnd = position
+            lineStartPending = pending
+        }
+        return found.size
+    }
+
+    private fun appendOffsets(found: LongBuilder) {
+        for (i in 0 until found.size) {
+            if (offsets.add(found.array[i])) firstLineNo++
+        }
+    }
+
+    /**
+     * 读取指定绝对行号的内容
+     * @return 行内容，行已被丢弃或读取失败时返回 null
+     */
+    fun readLine(lineNo: Long): String? {
+        val ch: FileChannel
+        val start: Long
+        val end: Long
+        synchronized(this) {
+            ch = channel ?: return null
+            val i = lineNo - firstLineNo
+            if (i < 0 || i >= offsets.size) return null
+            start = offsets[i.toInt()]
+            end = if (i + 1 < offsets.size) offsets[i.toInt() + 1] else indexedEnd
+        }
+        val length = minOf(end - start, MAX_LINE_BYTES.toLong()).toInt()
+        val buffer = ByteBuffer.allocate(length)
+        readFully(ch, buffer, start)
+        val bytes = buffer.array()
+        return String(bytes, 0, trimLineEnd(bytes, 0, buffer.position()), StandardCharsets.UTF_8)
+    }
+
+    /**
+     * 搜索包含 [query] 的行（忽略大小写）
+     * @param fromLine 只搜索不小于该绝对行号的行，用于增量过滤新增的尾部
+     * @param parallelism 并行扫描的分段数
+     * @return 匹配行的绝对行号，升序
+     */
+    suspend fun search(
+        query: String,
+        fromLine: Long = 0L,
+        parallelism: Int = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+    ): LongArray {
+        if (query.isEmpty()) return LongArray(0)
+        val snapshot = synchronized(this) {
+            val ch = channel ?: return LongArray(0)
+            val from = (fromLine - firstLineNo).coerceIn(0L, offsets.size.toLong()).toInt()
+            Snapshot(ch, offsets.toLongArray(from), firstLineNo + from, indexedEnd)
+        }
+        if (snapshot.offsets.isEmpty()) return LongArray(0)
+
+        val matcher = LineMatcher(query)
+        val lines = snapshot.offsets.size
+        val segments = parallelism.coerceAtMost(lines)
+        val step = (lines + segments - 1) / segments
+        return coroutineScope {
+            (0 until lines step step).map { lo ->
+                async(Dispatchers.IO) { scanSegment(snapshot, lo, minOf(lo + step, lines), matcher) }
+            }.awaitAll()
+        }.let { parts ->
+            val result = LongArray(parts.sumOf { it.size })
+            var pos = 0
+            parts.forEach { part ->
+                System.arraycopy(part.array, 0, result, pos, part.size)
+                pos += part.size
+            }
+            result
+        }
+    }
+
+    /**
+     * 顺序扫描 [lo, hi) 行：按块读取连续字节，逐行在缓冲区内匹配
+     */
+    private suspend fun scanSegment(snapshot: Snapshot, lo: Int, hi: Int, matcher: LineMatcher): LongBuilder {
+        val result = LongBuilder()
+        val buffer = ByteBuffer.allocate(SCAN_BLOCK_SIZE)
+        val bytes = buffer.array()
+        var line = lo
+        while (line < hi) {
+            currentCoroutineContext().ensureActive()
+            val blockStart = snapshot.offsets[line]
+            var last = line
+            while (last + 1 < hi && snapshot.lineEnd(last + 1) - blockStart <= SCAN_BLOCK_SIZE) last++
+            val blockLength = minOf(snapshot.lineEnd(last) - blockStart, SCAN_BLOCK_SIZE.toLong()).toInt()
+            buffer.clear()
+            buffer.limit(blockLength)
+            val read = readFully(snapshot.channel, buffer, blockStart)
+            for (l in line..last) {
+                val from = (snapshot.offsets[l] - blockStart).toInt()
+                if (from >= read) break
+                val to = trimLineEnd(bytes, from, minOf((snapshot.lineEnd(l) - blockStart).toInt(), read))
+                if (matcher.matches(bytes, from, to)) {
+                    result.add(snapshot.firstLineNo + l)
+                }
+            }
+            line = last + 1
+        }
+        return result
+    }
+
+    private fun readFully(ch: FileChannel, buffer: ByteBuffer, position: Long): Int {
+        var total = 0
+        while (buffer.hasRemaining()) {
+            val read = ch.read(buffer, position + total)
+            if (read <= 0) break
+            total += read
+        }
+        return total
+    }
+
+    private fun trimLineEnd(bytes: ByteArray, from: Int, to: Int): Int {
+        var end = to
+        while (end > from && (bytes[end - 1] == NEWLINE || bytes[end - 1] == CARRIAGE_RETURN)) end--
+        return end
+    }
+
+    override fun close() {
+        val old = synchronized(this) {
+            val ch = channel
+            channel = null
+            offsets.clear()
+            firstLineNo = 0L
+            indexedEnd = 0L
+            lineStartPending = true
+            ch
+        }
+        try {
+            old?.close()
+        } catch (_: Exception) {
+        }
+    }
+
+    private class Snapshot(
+        val channel: FileChannel,
+        val offsets: LongArray,
+        val firstLineNo: Long,
+        val end: Long
+    ) {
+        fun lineEnd(line: Int): Long = if (line + 1 < offsets.size) offsets[line + 1] else end
+    }
+
+    /**
+     * UTF-8 字节匹配器
+     *
+     * ASCII 字母在字节上折叠大小写；中文等多字节字符本身没有大小写，按原字节匹配。
+     * 只有查询中含非 ASCII 且区分大小写的字符（如西里尔字母）时才退回解码后匹配。
+     */
+    private class LineMatcher(private val query: String) {
+        private val needle = query.toByteArray(StandardCharsets.UTF_8).also { bytes ->
+            for (i in bytes.indices) bytes[i] = lower(bytes[i])
+        }
+        private val decodeFallback = query.any { it.code > 127 && it.lowercaseChar() != it.uppercaseChar() }
+
+        fun matches(bytes: ByteArray, from: Int, to: Int): Boolean {
+            if (decodeFallback) {
+                return String(bytes, from, to - from, StandardCharsets.UTF_8).contains(query, ignoreCase = true)
+            }
+            val first = needle[0]
+            val last = to - needle.size
+            var i = from
+            while (i <= last) {
+                if (lower(bytes[i]) == first) {
+                    var j = 1
+                    while (j < needle.size && lower(bytes[i + j]) == needle[j]) j++
+                    if (j == needle.size) return true
+                }
+                i++
+            }
+            return false
+        }
+
+        private fun lower(b: Byte): Byte = if (b >= 'A'.code && b <= 'Z'.code) (b + 32).toByte() else b
+    }
+
+    /**
+     * 可增长的原始 long 数组
+     */
+    private class LongBuilder {
+        var array = LongArray(64)
+        var size = 0
+
+        fun add(value: Long) {
+            if (size == array.size) array = array.copyOf(size * 2)
+            array[size++] = value
+        }
+    }
+}
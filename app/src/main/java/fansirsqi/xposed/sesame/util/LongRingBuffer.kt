@@ -0,0 +1,109 @@
+package fansirsqi.xposed.sesame.util
+
+/**
+ * 原始 long 环形缓冲区
+ *
+ * 容量按需翻倍增长到 [maxSize] 为止，写满后新元素覆盖最旧的元素；
+ * 追加、按下标读取、丢弃头部/尾部都不移动数据，也不装箱。
+ * 非线程安全，由调用方加锁。
+ *
+ * @param maxSize 最多保留的元素个数
+ */
+class LongRingBuffer(private val maxSize: Int, initialCapacity: Int = 1024) {
+
+    private var elements = LongArray(initialCapacity.coerceIn(1, maxSize))
+
+    // 最旧元素的数组下标
+    private var start = 0
+
+    var size = 0
+        private set
+
+    init {
+        require(maxSize > 0) { "The size must be greater than 0" }
+    }
+
+    /**
+     * 追加元素
+     * @return 是否覆盖了最旧的元素
+     */
+    fun add(value: Long): Boolean {
+        if (size == elements.size) {
+            if (elements.size < maxSize) {
+                grow()
+            } else {
+                elements[start] = value
+                start = (start + 1) % elements.size
+                return true
+            }
+        }
+        elements[(start + size) % elements.size] = value
+        size++
+        return false
+    }
+
+    operator fun get(index: Int): Long {
+        if (index < 0 || index >= size) throw IndexOutOfBoundsException("index $index, size $size")
+        return elements[(start + index) % elements.size]
+    }
+
+    fun last(): Long = get(size - 1)
+
+    /**
+     * 丢弃最旧的 [n] 个元素
+     */
+    fun removeFirst(n: Int) {
+        val count = n.coerceIn(0, size)
+        start = (start + count) % elements.size
+        size -= count
+    }
+
+    /**
+     * 只保留最旧的 [newSize] 个元素
+     */
+    fun truncate(newSize: Int) {
+        size = newSize.coerceIn(0, size)
+    }
+
+    fun clear() {
+        start = 0
+        size = 0
+    }
+
+    /**
+     * 对升序内容二分查找第一个不小于 [value] 的下标
+     */
+    fun lowerBound(value: Long): Int {
+        var lo = 0
+        var hi = size
+        while (lo < hi) {
+            val mid = (lo + hi) ushr 1
+            if (get(mid) < value) lo = mid + 1 else hi = mid
+        }
+        return lo
+    }
+
+    /**
+     * 复制 [from, to) 区间为连续数组
+     */
+    fun toLongArray(from: Int = 0, to: Int = size): LongArray {
+        val result = LongArray((to - from).coerceAtLeast(0))
+        if (result.isEmpty()) return result
+        val first = (start + from) % elements.size
+        val firstPart = minOf(result.size, elements.size - first)
+        System.arraycopy(elements, first, result, 0, firstPart)
+        if (firstPart < result.size) {
+            System.arraycopy(elements, 0, result, firstPart, result.size - firstPart)
+        }
+        return result
+    }
+
+    private fun grow() {
+        val grown = LongArray(minOf(maxOf(elements.size * 2, 1), maxSize))
+        val firstPart = minOf(size, elements.size - start)
+        System.arraycopy(elements, start, grown, 0, firstPart)
+        System.arraycopy(elements, 0, grown, firstPart, size - firstPart)
+        elements = grown
+        start = 0
+    }
+}
@@ -1,15 +1,24 @@
 package fansirsqi.xposed.sesame.util
 
 import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.JsonNode
 
 /**
  * 通用任务黑名单管理器
- * 使用DataStore持久化存储黑名单数据
+ * 使用DataStore持久化存储黑名单数据，查询使用编译后的内存快照
  */
 object TaskBlacklist {
     private const val TAG = "TaskBlacklist"
     private const val BLACKLIST_KEY = "task_blacklist"
 
+    /**
+     * 编译快照：来源节点 + 匹配器，来源节点变化时才重新编译
+     */
+    private class CompiledBlacklist(val source: JsonNode?, val matcher: BlacklistMatcher)
+
+    @Volatile
+    private var compiled: CompiledBlacklist? = null
+
     /**
      * 获取黑名单列表
      * @return 黑名单任务集合
@@ -48,27 +57,28 @@ object TaskBlacklist {
      */
     fun isTaskInBlacklist(taskInfo: String?): Boolean {
         if (taskInfo.isNullOrBlank()) return false
-        
-        val blacklist = getBlacklist()
-        return blacklist.any { item ->
-            if (item.isBlank()) return@any false
-
-            // 完全匹配（最精确）
-            if (taskInfo == item) return@any true
-
-            // 区分处理中文关键词和纯英文的匹配模式。
-            val itemHasChinese = item.any { it in '\u4e00'..'\u9fa5' }
+        // 包含中文的项维持双向模糊匹配逻辑；
+        // 纯英文/数字/符号项使用单向模糊匹配逻辑，防止黑名单中"TAOBAO"这类比较简短、通用的字段匹配到任务
+        // "TAOBAO_tab2gzy"，导致不是在黑名单中的任务被跳过
+        return currentMatcher().matches(taskInfo)
+    }
 
-            if (itemHasChinese) {
-                // 包含中文的项维持双向模糊匹配逻辑
-                taskInfo.contains(item) || item.contains(taskInfo)
-            } else {
-                /* 纯英文/数字/符号项使用单向模糊匹配逻辑；防止黑名单中"TAOBAO"这类比较简短、通用的字段匹配到任务
-                    "TAOBAO_tab2gzy" ，导致不是在黑名单中的任务被跳过
-                 */
-                item.contains(taskInfo)
-            }
+    /**
+     * 获取当前黑名单的编译快照
+     * 只读取内存中的节点做引用比较，不加锁、不读磁盘；其他进程的修改由 DataStore 的文件监听同步进来
+     */
+    private fun currentMatcher(): BlacklistMatcher {
+        val source = DataStore.peekNode(BLACKLIST_KEY)
+        compiled?.let { if (it.source === source) return it.matcher }
+        val matcher = try {
+            val stored = source?.mapNotNullTo(LinkedHashSet()) { node -> node.asText().takeIf { it.isNotBlank() } }.orEmpty()
+            BlacklistMatcher(stored + defaultBlacklist)
+        } catch (e: Exception) {
+            Log.printStackTrace(TAG, "编译黑名单失败，使用默认黑名单", e)
+            BlacklistMatcher(defaultBlacklist)
         }
+        compiled = CompiledBlacklist(source, matcher)
+        return matcher
     }
     
     /**
@@ -0,0 +1,101 @@
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+/**
+ * 纯 JVM 基准测试模块
+ *
+ * 直接编译 app 模块中不依赖 Android 的源码（见 sharedSources），Android/Xposed 相关的少量依赖
+ * 由 src/main 下的桩代码提供；基准测试使用 JMH 注解处理器生成，不需要额外的 Gradle 插件。
+ *
+ * 运行：gradle :benchmark:jmh [-Pjmh.args="TokenBucket -f 1"]
+ * 无头森林压测：gradle :benchmark:forestHarness [-Pharness.args="--friends 10000 --rounds 3"]
+ */
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+}
+
+val appSources = rootProject.file("app/src/main/java")
+
+// 与 app 共用的源码，路径相对于 app/src/main/java/fansirsqi/xposed/sesame
+val sharedSources = listOf(
+    "entity/RpcEntity.kt",
+    "hook/rpc/bridge/RpcAttempt.java",
+    "hook/rpc/bridge/RpcBridge.java",
+    "hook/rpc/bridge/RpcBridgeSuspend.kt",
+    "hook/rpc/bridge/RpcVersion.java",
+    "hook/rpc/intervallimit/IntervalLimit.kt",
+    "hook/rpc/intervallimit/DefaultIntervalLimit.kt",
+    "hook/rpc/intervallimit/FixedOrRangeIntervalLimit.kt",
+    "hook/rpc/intervallimit/TokenBucket.kt",
+    "hook/rpc/intervallimit/RpcIntervalLimit.kt",
+    "hook/rpc/metrics/LatencyHistogram.kt",
+    "task/antForest/TimingWheelScheduler.kt",
+    "util/BlacklistMatcher.kt",
+    "util/CircularFifoQueue.java",
+    "util/CoroutineUtils.kt",
+    "util/DataStore.kt",
+    "util/GlobalThreadPools.kt",
+    "util/HanziToPinyin.java",
+    "util/JsonUtil.java",
+    "util/LogIndex.kt",
+    "util/LongRingBuffer.kt",
+    "util/RandomUtil.java",
+    "util/TimeUtil.java",
+)
+
+val syncAppSources by tasks.registering(Sync::class) {
+    from(appSources) {
+        include(sharedSources.map { "fansirsqi/xposed/sesame/$it" })
+    }
+    into(layout.buildDirectory.dir("generated/appSources"))
+}
+
+sourceSets {
+    main {
+        java.srcDir(syncAppSources)
+        kotlin.srcDir(syncAppSources)
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+kotlin {
+    compilerOptions {
+        jvmTarget.set(JvmTarget.JVM_17)
+    }
+}
+
+dependencies {
+    implementation(libs.kotlinx.coroutines.core)
+    implementation(libs.jackson.kotlin)
+    implementation(libs.jackson.core)
+    implementation(libs.jackson.databind)
+    implementation(libs.jackson.annotations)
+    implementation(libs.org.json)
+    implementation(libs.jmh.core)
+    compileOnly(libs.lombok)
+    annotationProcessor(libs.lombok)
+    annotationProcessor(libs.jmh.generator.annprocess)
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "运行 JMH 基准测试，参数通过 -Pjmh.args 传入"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args = (providers.gradleProperty("jmh.args").orNull ?: "").split(' ').filter { it.isNotBlank() }
+}
+
+tasks.register<JavaExec>("forestHarness") {
+    group = "benchmark"
+    description = "对模拟森林服务端运行无头好友收取轮次，参数通过 -Pharness.args 传入"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("fansirsqi.xposed.sesame.benchmark.harness.ForestHarnessKt")
+    args = (providers.gradleProperty("harness.args").orNull ?: "").split(' ').filter { it.isNotBlank() }
+}
@@ -0,0 +1,47 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * JVM 桩：android.util.Log 输出到标准错误，基准测试时只有警告与错误会走到这里
+ */
+public final class Log {
+    private Log() {
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        System.err.println("W/" + tag + ": " + msg);
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return w(tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int e(String tag, String msg) {
+        System.err.println("E/" + tag + ": " + msg);
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return e(tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        StringWriter sw = new StringWriter();
+        tr.printStackTrace(new PrintWriter(sw));
+        return sw.toString();
+    }
+}
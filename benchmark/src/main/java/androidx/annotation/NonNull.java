@@ -0,0 +1,15 @@
+package androidx.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * JVM 桩：与 androidx.annotation 中的同名注解一致，只用于编译共用源码
+ */
+@Target({ElementType.METHOD, ElementType.PARAMETER, ElementType.FIELD, ElementType.LOCAL_VARIABLE,
+        ElementType.ANNOTATION_TYPE, ElementType.PACKAGE})
+@Retention(RetentionPolicy.CLASS)
+public @interface NonNull {
+}
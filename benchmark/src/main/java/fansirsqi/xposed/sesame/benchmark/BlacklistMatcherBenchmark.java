@@ -0,0 +1,63 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.util.BlacklistMatcher;
+
+/**
+ * 任务黑名单匹配：[items] 个黑名单项（中英文混合）下，一批命中与未命中的任务信息各查询一次
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlacklistMatcherBenchmark {
+    private static final String[] WORDS = {"浏览", "逛一逛", "签到", "会员", "蚂蚁庄园", "芭芭农场", "视频", "答题", "广告", "积分"};
+
+    @Param({"50", "500"})
+    public int items;
+
+    private BlacklistMatcher matcher;
+    private String[] queries;
+
+    @Setup
+    public void setup() {
+        List<String> list = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            list.add(i % 3 == 0 ? "TASK_ID_" + i : WORDS[i % WORDS.length] + "任务" + i);
+        }
+        matcher = new BlacklistMatcher(list);
+        queries = new String[]{
+                "TASK_ID_3",
+                "去" + WORDS[4] + "任务12做任务",
+                "ID_6",
+                "完全不相关的任务描述文本",
+                "ANTFOREST_DAILY_SIGN",
+                "任务4"
+        };
+    }
+
+    @Benchmark
+    public void matches(Blackhole bh) {
+        for (String query : queries) {
+            bh.consume(matcher.matches(query));
+        }
+    }
+}
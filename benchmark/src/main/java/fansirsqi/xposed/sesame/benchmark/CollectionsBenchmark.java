@@ -0,0 +1,73 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.hook.rpc.metrics.LatencyHistogram;
+import fansirsqi.xposed.sesame.util.CircularFifoQueue;
+import fansirsqi.xposed.sesame.util.LongRingBuffer;
+
+/**
+ * 小型数据结构：日志行偏移环形缓冲、固定容量 FIFO 队列、RPC 延迟直方图
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollectionsBenchmark {
+    private LongRingBuffer ring;
+    private CircularFifoQueue<Long> fifo;
+    private LatencyHistogram histogram;
+    private long next;
+
+    @Setup
+    public void setup() {
+        ring = new LongRingBuffer(100_000, 1024);
+        fifo = new CircularFifoQueue<>(1000);
+        histogram = new LatencyHistogram();
+        for (int i = 0; i < 100_000; i++) {
+            ring.add(next);
+            next += 80;
+            histogram.record(i % 2000);
+        }
+    }
+
+    /**
+     * 满容量时追加一个偏移量（淘汰最旧的），再按偏移量二分定位行号
+     */
+    @Benchmark
+    public int ringBufferAddAndLowerBound() {
+        ring.add(next);
+        next += 80;
+        return ring.lowerBound(next - 40L * 100_000);
+    }
+
+    @Benchmark
+    public boolean circularFifoQueueAdd() {
+        return fifo.add(next++);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void latencyHistogramRecordContended() {
+        histogram.record(next++ & 4095);
+    }
+
+    @Benchmark
+    public long latencyHistogramP99() {
+        return histogram.percentile(99.0);
+    }
+}
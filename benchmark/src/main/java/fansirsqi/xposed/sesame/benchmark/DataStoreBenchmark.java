@@ -0,0 +1,60 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.util.DataStore;
+
+/**
+ * 持久化存储：单键写入（追加日志条目）与读取
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataStoreBenchmark {
+    private final Map<String, Object> value = new LinkedHashMap<>();
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File dir = Files.createTempDirectory("sesame-datastore").toFile();
+        dir.deleteOnExit();
+        DataStore.INSTANCE.init(dir);
+        for (int i = 0; i < 200; i++) {
+            DataStore.INSTANCE.put("key" + i, "value" + i);
+        }
+        value.put("date", "2026-10-18");
+        value.put("count", 0);
+        DataStore.INSTANCE.put("friendCount", value);
+    }
+
+    @Benchmark
+    public void put() {
+        value.put("count", counter++);
+        DataStore.INSTANCE.put("friendCount", value);
+    }
+
+    @Benchmark
+    public Map<?, ?> get() {
+        return DataStore.INSTANCE.get("friendCount", Map.class);
+    }
+}
@@ -0,0 +1,47 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.util.HanziToPinyin;
+
+/**
+ * 拼音转换与排序键：好友列表按拼音排序、搜索时的主要开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HanziToPinyinBenchmark {
+    private static final String NAME = "蚂蚁森林的好友Alice张三";
+
+    private HanziToPinyin pinyin;
+
+    @Setup
+    public void setup() {
+        pinyin = HanziToPinyin.getInstance();
+    }
+
+    @Benchmark
+    public ArrayList<HanziToPinyin.Token> tokens() {
+        return pinyin.get(NAME);
+    }
+
+    @Benchmark
+    public String sortKey() {
+        return pinyin.getSortKey(NAME);
+    }
+}
@@ -0,0 +1,80 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.util.LogIndex;
+
+/**
+ * 日志查看器：[lines] 行日志的完整索引与全文搜索
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogIndexBenchmark {
+    @Param({"100000"})
+    public int lines;
+
+    private File file;
+    private LogIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("sesame-log", ".log");
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write("10月18日 12:00:" + (i % 60) + ".123 [森林] 收取[好友" + (i % 300) + "]的能量" + (i % 50) + "g #" + i);
+                writer.newLine();
+            }
+        }
+        index = new LogIndex(lines);
+        Blocking.open(index, file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.close();
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Benchmark
+    public int openAndIndex() {
+        LogIndex fresh = new LogIndex(lines);
+        Blocking.open(fresh, file);
+        int count = fresh.getLineCount();
+        fresh.close();
+        return count;
+    }
+
+    @Benchmark
+    public int search() {
+        return Blocking.search(index, "好友42]").length;
+    }
+
+    @Benchmark
+    public String readLine() {
+        return index.readLine(lines / 2);
+    }
+}
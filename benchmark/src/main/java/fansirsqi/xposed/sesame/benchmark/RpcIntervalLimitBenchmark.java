@@ -0,0 +1,74 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.DefaultIntervalLimit;
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit;
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.TokenBucket;
+
+/**
+ * 间隔限制的预约开销：间隔为 0，不产生等待，只测量令牌桶与全局预算的预约路径
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RpcIntervalLimitBenchmark {
+    private static final String METHOD = "alipay.antforest.forest.h5.collectEnergy";
+
+    @Param({"false", "true"})
+    public boolean globalLimit;
+
+    private TokenBucket bucket;
+
+    @Setup
+    public void setup() {
+        bucket = new TokenBucket(new DefaultIntervalLimit(0), 0, 1);
+        RpcIntervalLimit.INSTANCE.clearIntervalLimit();
+        RpcIntervalLimit.INSTANCE.addIntervalLimit(METHOD, 0);
+        RpcIntervalLimit.INSTANCE.setGlobalIntervalLimit(globalLimit ? new DefaultIntervalLimit(0) : null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RpcIntervalLimit.INSTANCE.clearIntervalLimit();
+    }
+
+    @Benchmark
+    public long tokenBucketReserve() {
+        return bucket.reserve(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long tokenBucketReserveContended() {
+        return bucket.reserve(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public void enterIntervalLimit() {
+        RpcIntervalLimit.INSTANCE.enterIntervalLimit(METHOD);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void enterIntervalLimitContended() {
+        RpcIntervalLimit.INSTANCE.enterIntervalLimit(METHOD);
+    }
+}
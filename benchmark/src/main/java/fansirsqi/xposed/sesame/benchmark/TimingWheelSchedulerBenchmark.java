@@ -0,0 +1,73 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.task.antForest.TimingWheelScheduler;
+import kotlin.Unit;
+import kotlinx.coroutines.CoroutineScope;
+import kotlinx.coroutines.CoroutineScopeKt;
+import kotlinx.coroutines.Dispatchers;
+
+/**
+ * 蹲点时间轮的挂载/替换/取消开销：已有 [pending] 个任务时重复替换一个任务并取消另一个
+ * 截止时间都在一小时后，测量期间不会触发到期回调
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimingWheelSchedulerBenchmark {
+    @Param({"1000", "10000"})
+    public int pending;
+
+    private CoroutineScope scope;
+    private TimingWheelScheduler<String> scheduler;
+    private String[] keys;
+    private long base;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        scope = CoroutineScopeKt.CoroutineScope(Dispatchers.getDefault());
+        scheduler = new TimingWheelScheduler<>(scope, 1000L, 512, batch -> Unit.INSTANCE);
+        base = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        keys = new String[pending];
+        for (int i = 0; i < pending; i++) {
+            keys[i] = "user" + i + "|bubble" + i;
+            scheduler.schedule(keys[i], base + i * 37L, keys[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.clear();
+        CoroutineScopeKt.cancel(scope, null);
+    }
+
+    @Benchmark
+    public boolean rescheduleAndCancel() {
+        int i = cursor++ % pending;
+        String key = keys[i];
+        scheduler.schedule(key, base + (cursor % 7200) * 1000L, key);
+        String other = keys[(i + pending / 2) % pending];
+        boolean removed = scheduler.cancel(other);
+        scheduler.schedule(other, base + i * 37L, other);
+        return removed;
+    }
+}
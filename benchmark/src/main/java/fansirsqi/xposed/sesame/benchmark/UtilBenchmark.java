@@ -0,0 +1,79 @@
+package fansirsqi.xposed.sesame.benchmark;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import fansirsqi.xposed.sesame.util.JsonUtil;
+import fansirsqi.xposed.sesame.util.TimeUtil;
+
+/**
+ * 任务循环中频繁调用的工具方法：响应 JSON 解析、序列化与时间判断
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UtilBenchmark {
+    private String response;
+    private Map<?, ?> parsed;
+    private long now;
+
+    @Setup
+    public void setup() {
+        StringBuilder bubbles = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            if (i > 0) bubbles.append(',');
+            bubbles.append("{\"id\":").append(100000 + i)
+                    .append(",\"userId\":\"2088000000").append(i)
+                    .append("\",\"remainEnergy\":").append(i * 3)
+                    .append(",\"produceTime\":1760760000000,\"collectStatus\":\"AVAILABLE\",\"canHelpCollect\":false}");
+        }
+        response = "{\"resultCode\":\"SUCCESS\",\"resultDesc\":\"成功\",\"bubbles\":[" + bubbles + "],\"now\":1760760000000}";
+        parsed = JsonUtil.parseObject(response, Map.class);
+        now = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public JSONObject parseJSONObject() {
+        return JsonUtil.parseJSONObject(response);
+    }
+
+    @Benchmark
+    public Map<?, ?> jacksonParseMap() {
+        return JsonUtil.parseObject(response, Map.class);
+    }
+
+    @Benchmark
+    public String formatJson() {
+        return JsonUtil.formatJson(parsed, false);
+    }
+
+    @Benchmark
+    public String commonDate() {
+        return TimeUtil.getCommonDate(now);
+    }
+
+    @Benchmark
+    public Boolean isSameDay() {
+        return TimeUtil.isSameDay(now, now - TimeUnit.HOURS.toMillis(3));
+    }
+
+    @Benchmark
+    public Boolean checkInTimeRange() {
+        return TimeUtil.checkInTimeRange(now, "0700-2330");
+    }
+}
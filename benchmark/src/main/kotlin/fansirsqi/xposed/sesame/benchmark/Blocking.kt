@@ -0,0 +1,16 @@
+package fansirsqi.xposed.sesame.benchmark
+
+import fansirsqi.xposed.sesame.util.LogIndex
+import kotlinx.coroutines.runBlocking
+import java.io.File
+
+/**
+ * 供 Java 基准测试调用 [LogIndex] 的挂起函数
+ */
+object Blocking {
+    @JvmStatic
+    fun open(index: LogIndex, file: File) = runBlocking { index.open(file) }
+
+    @JvmStatic
+    fun search(index: LogIndex, query: String): LongArray = runBlocking { index.search(query) }
+}
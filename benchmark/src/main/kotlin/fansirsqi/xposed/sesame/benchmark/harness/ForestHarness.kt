@@ -0,0 +1,268 @@
+package fansirsqi.xposed.sesame.benchmark.harness
+
+import fansirsqi.xposed.sesame.entity.RpcEntity
+import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcBridge
+import fansirsqi.xposed.sesame.hook.rpc.bridge.requestObjectSuspend
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.DefaultIntervalLimit
+import fansirsqi.xposed.sesame.hook.rpc.intervallimit.RpcIntervalLimit
+import fansirsqi.xposed.sesame.hook.rpc.metrics.LatencyHistogram
+import fansirsqi.xposed.sesame.task.antForest.TimingWheelScheduler
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import org.json.JSONArray
+import org.json.JSONObject
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 无头森林压测：在纯 JVM 上按 AntForest 的好友收取流程跑若干轮
+ *
+ * 每轮：排行榜 → 每 20 人一批查询能量标记 → 并发进入有能量球的好友主页 → 跳过保护罩/炸弹卡，
+ * 收取已成熟的能量球，未成熟的挂到 [TimingWheelScheduler] 蹲点，到期后补齐毫秒级等待再收取。
+ * 所有请求都经过 [RpcBridge] 的挂起重试循环与 [RpcIntervalLimit]，服务端由 [SimulatedForestServer] 模拟。
+ */
+class ForestHarness(
+    private val bridge: SimulatedForestBridge,
+    private val parallelism: Int,
+    tickMs: Long
+) {
+    private class WaitingTask(val userId: String, val bubbleId: Long, val produceTime: Long)
+
+    class RoundReport(
+        val wallMs: Long,
+        val calls: Map<String, Long>,
+        val retries: Long,
+        val failed: Int,
+        val visited: Int,
+        val protected: Int,
+        val energy: Long,
+        val scheduled: Int
+    )
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val scheduler = TimingWheelScheduler<WaitingTask>(scope, tickMs) { batch ->
+        batch.forEach { task -> scope.launch { fireWaiting(task) } }
+    }
+
+    // 已出队、尚未完成收取的蹲点任务
+    private val inFlight = AtomicInteger()
+    private val lateness = LatencyHistogram()
+    private val maxLateness = AtomicLong()
+    private val waitingScheduled = AtomicLong()
+    private val waitingFired = AtomicLong()
+    private val waitingHit = AtomicLong()
+    private val waitingEnergy = AtomicLong()
+    private val waitingEarly = AtomicLong()
+    private val waitingMissed = AtomicLong()
+    private val waitingSuperseded = AtomicLong()
+
+    private val failed = AtomicInteger()
+    private val visited = AtomicInteger()
+    private val protected = AtomicInteger()
+    private val roundEnergy = AtomicLong()
+    private val roundScheduled = AtomicInteger()
+
+    suspend fun runRound(): RoundReport {
+        val callsBefore = bridge.calls()
+        val retriesBefore = bridge.frequencyErrors.get()
+        failed.set(0)
+        visited.set(0)
+        protected.set(0)
+        roundEnergy.set(0)
+        roundScheduled.set(0)
+        val start = System.currentTimeMillis()
+
+        val ranking = request(SimulatedForestServer.RANKING, JSONArray().put(JSONObject().put("periodType", "day").put("rankType", "energyRank")))
+        val userIds = ranking?.optJSONArray("totalDatas")?.let { list ->
+            (0 until list.length()).map { list.getJSONObject(it).optString("userId") }
+        }.orEmpty()
+
+        val limiter = Semaphore(parallelism)
+        coroutineScope {
+            for (chunk in userIds.chunked(20)) {
+                val flags = request(SimulatedForestServer.ROB_FLAG, JSONArray().put(JSONObject().put("userIdList", JSONArray(chunk))))
+                    ?.optJSONArray("friendRanking") ?: continue
+                for (i in 0 until flags.length()) {
+                    val flag = flags.getJSONObject(i)
+                    if (!flag.optBoolean("canCollectEnergy") && flag.optLong("canCollectLaterTime") <= 0L) continue
+                    launch(Dispatchers.IO) { limiter.withPermit { visit(flag.getString("userId")) } }
+                }
+            }
+        }
+
+        val callsAfter = bridge.calls()
+        return RoundReport(
+            wallMs = System.currentTimeMillis() - start,
+            calls = callsAfter.mapValues { it.value - (callsBefore[it.key] ?: 0L) },
+            retries = bridge.frequencyErrors.get() - retriesBefore,
+            failed = failed.get(),
+            visited = visited.get(),
+            protected = protected.get(),
+            energy = roundEnergy.get(),
+            scheduled = roundScheduled.get()
+        )
+    }
+
+    private suspend fun visit(userId: String) {
+        val home = request(SimulatedForestServer.HOME, JSONArray().put(JSONObject().put("userId", userId).put("fromAct", "TAKE_LOOK_FRIEND"))) ?: return
+        visited.incrementAndGet()
+        val now = home.optLong("now", System.currentTimeMillis())
+        if (isProtected(home, now)) {
+            protected.incrementAndGet()
+            return
+        }
+        val bubbles = home.optJSONArray("bubbles") ?: return
+        val available = ArrayList<Long>()
+        for (i in 0 until bubbles.length()) {
+            val bubble = bubbles.getJSONObject(i)
+            val bubbleId = bubble.getLong("id")
+            val key = "$userId|$bubbleId"
+            if (bubble.optString("collectStatus") == "AVAILABLE") {
+                // 已经成熟，本轮直接收取，取代尚未触发的蹲点
+                if (scheduler.cancel(key)) waitingSuperseded.incrementAndGet()
+                available.add(bubbleId)
+            } else if (!scheduler.contains(key)) {
+                scheduler.schedule(key, bubble.getLong("produceTime"), WaitingTask(userId, bubbleId, bubble.getLong("produceTime")))
+                waitingScheduled.incrementAndGet()
+                roundScheduled.incrementAndGet()
+            }
+        }
+        for (chunk in available.chunked(6)) {
+            roundEnergy.addAndGet(collect(userId, chunk).sumOf { it.optLong("collectedEnergy") })
+        }
+    }
+
+    private fun isProtected(home: JSONObject, now: Long): Boolean {
+        val props = home.optJSONArray("usingUserPropsNew") ?: return false
+        return (0 until props.length()).any { i ->
+            val prop = props.getJSONObject(i)
+            val group = prop.optString("propGroup")
+            (group == "shield" || group == "energyBombCard") && prop.optLong("endTime") > now
+        }
+    }
+
+    private suspend fun fireWaiting(task: WaitingTask) {
+        inFlight.incrementAndGet()
+        try {
+            // 刻度只决定唤醒批次，毫秒级等待在这里补齐
+            val wait = task.produceTime - System.currentTimeMillis()
+            if (wait > 0) delay(wait)
+            val late = (System.currentTimeMillis() - task.produceTime).coerceAtLeast(0L)
+            lateness.record(late)
+            maxLateness.accumulateAndGet(late, ::maxOf)
+            waitingFired.incrementAndGet()
+            val result = collect(task.userId, listOf(task.bubbleId)).firstOrNull()
+            val energy = result?.optLong("collectedEnergy") ?: 0L
+            when {
+                energy > 0 -> {
+                    waitingHit.incrementAndGet()
+                    waitingEnergy.addAndGet(energy)
+                }
+                result?.optString("collectStatus") == "WAITING" -> waitingEarly.incrementAndGet()
+                else -> waitingMissed.incrementAndGet()
+            }
+        } finally {
+            inFlight.decrementAndGet()
+        }
+    }
+
+    private suspend fun collect(userId: String, bubbleIds: List<Long>): List<JSONObject> {
+        val param = JSONObject().put("userId", userId).put("bubbleIds", JSONArray(bubbleIds)).put("bizType", "")
+        val bubbles = request(SimulatedForestServer.COLLECT, JSONArray().put(param))?.optJSONArray("bubbles") ?: return emptyList()
+        return (0 until bubbles.length()).map { bubbles.getJSONObject(it) }
+    }
+
+    private suspend fun request(method: String, data: JSONArray): JSONObject? {
+        val entity = bridge.requestObjectSuspend(RpcEntity(method, data.toString()))
+        val response = entity?.responseString?.let { JSONObject(it) }
+        if (response?.optString("resultCode") != "SUCCESS") {
+            failed.incrementAndGet()
+            return null
+        }
+        return response
+    }
+
+    /**
+     * 等待所有蹲点任务触发并完成收取
+     * @return 超时前是否全部完成
+     */
+    suspend fun awaitWaiting(timeoutMs: Long): Boolean {
+        val deadline = System.currentTimeMillis() + timeoutMs
+        while (scheduler.size() > 0 || inFlight.get() > 0) {
+            if (System.currentTimeMillis() > deadline) return false
+            delay(50)
+        }
+        return true
+    }
+
+    fun waitingSummary(): String =
+        "scheduled=${waitingScheduled.get()} fired=${waitingFired.get()} collected=${waitingHit.get()} " +
+                "energy=${waitingEnergy.get()} early=${waitingEarly.get()} missed=${waitingMissed.get()} " +
+                "superseded=${waitingSuperseded.get()} pending=${scheduler.size()} " +
+                "lateness p50=${lateness.percentile(50.0)}ms p99=${lateness.percentile(99.0)}ms max=${maxLateness.get()}ms"
+
+    fun close() {
+        scheduler.clear()
+        scope.cancel()
+    }
+}
+
+/**
+ * 入口，参数均可省略：
+ * --friends 1000 --rounds 3 --parallelism 8 --interval 0 --global 0 --latency 0 --tick 1000
+ * --error-rate 0.01 --protected-rate 0.1 --mature-window 20000 --round-gap 0 --seed 1
+ */
+fun main(args: Array<String>) = runBlocking {
+    require(args.size % 2 == 0) { "参数格式: --name value ..." }
+    val options = args.toList().chunked(2).associate { (name, value) -> name.removePrefix("--") to value }
+    fun long(name: String, default: Long) = options[name]?.toLong() ?: default
+    fun double(name: String, default: Double) = options[name]?.toDouble() ?: default
+
+    val friends = long("friends", 1000).toInt()
+    val rounds = long("rounds", 3).toInt()
+    val matureWindow = long("mature-window", 20_000)
+    val interval = long("interval", 0).toInt()
+    val global = long("global", 0).toInt()
+
+    RpcIntervalLimit.clearIntervalLimit()
+    SimulatedForestServer.METHODS.forEach { RpcIntervalLimit.addIntervalLimit(it, interval) }
+    RpcIntervalLimit.setGlobalIntervalLimit(if (global > 0) DefaultIntervalLimit(global) else null)
+
+    val server = SimulatedForestServer(
+        friends,
+        matureWindow,
+        double("protected-rate", 0.1),
+        double("error-rate", 0.01),
+        long("seed", 1)
+    )
+    val bridge = SimulatedForestBridge(server, long("latency", 0))
+    val harness = ForestHarness(bridge, long("parallelism", 8).toInt(), long("tick", 1000))
+    println("friends=$friends rounds=$rounds options=$options")
+
+    val start = System.currentTimeMillis()
+    for (round in 1..rounds) {
+        val report = harness.runRound()
+        println(
+            "round $round: ${report.wallMs}ms rpc=${report.calls.values.sum()} ${report.calls.mapKeys { it.key.substringAfterLast('.') }} " +
+                    "retries=${report.retries} failed=${report.failed} visited=${report.visited} protected=${report.protected} " +
+                    "energy=${report.energy} waiting+=${report.scheduled}"
+        )
+        if (round < rounds) delay(long("round-gap", 0))
+    }
+    val drained = harness.awaitWaiting(matureWindow + 10_000)
+    println("waiting: ${harness.waitingSummary()}${if (drained) "" else " (timeout)"}")
+    println(
+        "total: ${System.currentTimeMillis() - start}ms rpc=${bridge.calls().values.sum()} " +
+                "exhausted=${bridge.exhausted.get()} serverEnergy=${server.collectedEnergy.get()}"
+    )
+    harness.close()
+    RpcIntervalLimit.clearIntervalLimit()
+}
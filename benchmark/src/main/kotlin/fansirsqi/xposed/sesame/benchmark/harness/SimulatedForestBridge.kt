@@ -0,0 +1,58 @@
+package fansirsqi.xposed.sesame.benchmark.harness
+
+import fansirsqi.xposed.sesame.entity.RpcEntity
+import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcAttempt
+import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcBridge
+import fansirsqi.xposed.sesame.hook.rpc.bridge.RpcVersion
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 连接 [SimulatedForestServer] 的 RpcBridge，不依赖宿主
+ *
+ * 频繁错误按可重试处理，走 RpcBridge 真实的重试循环与重试延迟；
+ * [latencyMs] 为每次调用在 attemptRequest 内注入的阻塞延迟，模拟网络耗时。
+ */
+class SimulatedForestBridge(
+    private val server: SimulatedForestServer,
+    private val latencyMs: Long
+) : RpcBridge {
+    private val calls = ConcurrentHashMap<String, AtomicLong>()
+
+    val frequencyErrors = AtomicLong()
+    val exhausted = AtomicLong()
+
+    override fun getVersion(): RpcVersion = RpcVersion.NEW
+
+    override fun load() {
+    }
+
+    override fun unload() {
+    }
+
+    override fun prepareRequest(rpcEntity: RpcEntity): Boolean = true
+
+    override fun attemptRequest(rpcEntity: RpcEntity, count: Int): RpcAttempt {
+        val method = rpcEntity.requestMethod ?: return RpcAttempt.ABORT
+        calls.computeIfAbsent(method) { AtomicLong() }.incrementAndGet()
+        if (latencyMs > 0) Thread.sleep(latencyMs)
+        val reply = server.handle(method, rpcEntity.requestData)
+        if (reply.frequencyError) {
+            frequencyErrors.incrementAndGet()
+            rpcEntity.setError()
+            return RpcAttempt.RETRY
+        }
+        rpcEntity.setResponseObject(null, reply.body)
+        return RpcAttempt.SUCCESS
+    }
+
+    override fun onRetryExhausted(rpcEntity: RpcEntity, tryCount: Int) {
+        exhausted.incrementAndGet()
+    }
+
+    /**
+     * 按方法统计的调用次数（含重试）
+     */
+    fun calls(): Map<String, Long> = TreeMap(calls.mapValues { it.value.get() })
+}
@@ -0,0 +1,183 @@
+package fansirsqi.xposed.sesame.benchmark.harness
+
+import org.json.JSONArray
+import org.json.JSONObject
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 模拟森林服务端：内存中的好友、能量球与保护道具，能量球按真实时间成熟
+ *
+ * 实现排行榜、能量标记、好友主页与收取四个接口，响应字段与 AntForest/ForestUtil 解析的一致。
+ * 被收取的能量球会在 [matureWindowMs] 内的随机时间重新生成，后续轮次仍有可收与可蹲点的能量球；
+ * 按 [errorRate] 注入“操作太频繁”。好友与能量球的初始分布使用固定种子，相同参数下可复现。
+ */
+class SimulatedForestServer(
+    friends: Int,
+    private val matureWindowMs: Long,
+    protectedRate: Double,
+    private val errorRate: Double,
+    seed: Long
+) {
+    companion object {
+        const val RANKING = "alipay.antmember.forest.h5.queryEnergyRanking"
+        const val ROB_FLAG = "alipay.antforest.forest.h5.fillUserRobFlag"
+        const val HOME = "alipay.antforest.forest.h5.queryFriendHomePage"
+        const val COLLECT = "alipay.antmember.forest.h5.collectEnergy"
+
+        val METHODS = listOf(RANKING, ROB_FLAG, HOME, COLLECT)
+    }
+
+    /**
+     * @param frequencyError 是否为注入的频繁错误，由桥接层按可重试处理
+     */
+    class Reply(val body: String, val frequencyError: Boolean)
+
+    private class Bubble(val id: Long, val energy: Int, val produceTime: Long)
+
+    private class Friend(val userId: String, val shieldEnd: Long, val bombEnd: Long) {
+        // 以 Friend 自身为锁
+        val bubbles = ArrayList<Bubble>()
+    }
+
+    private val random = Random(seed)
+    private val nextBubbleId = AtomicLong(1)
+    private val friendList: List<Friend>
+    private val friendMap: Map<String, Friend>
+
+    /**
+     * 服务端确认被收取的能量总量
+     */
+    val collectedEnergy = AtomicLong()
+
+    init {
+        val now = System.currentTimeMillis()
+        val protectedUntil = now + TimeUnit.DAYS.toMillis(1)
+        friendList = List(friends) { i ->
+            val roll = random.nextDouble()
+            Friend(
+                "2088%010d".format(i),
+                shieldEnd = if (roll < protectedRate / 2) protectedUntil else 0L,
+                bombEnd = if (roll >= protectedRate / 2 && roll < protectedRate) protectedUntil else 0L
+            ).apply {
+                repeat(random.nextInt(4)) { bubbles.add(newBubble(now, random.nextInt(3) == 0)) }
+            }
+        }
+        friendMap = friendList.associateBy { it.userId }
+    }
+
+    private fun newBubble(now: Long, mature: Boolean): Bubble {
+        val produceTime = if (mature) {
+            now - random.nextInt(60_000)
+        } else {
+            now + 1 + (random.nextDouble() * matureWindowMs).toLong()
+        }
+        return Bubble(nextBubbleId.getAndIncrement(), 5 + random.nextInt(40), produceTime)
+    }
+
+    fun handle(method: String, data: String?): Reply {
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            return Reply(JSONObject().put("resultCode", "I07").put("resultDesc", "操作太频繁，请稍后再试").toString(), true)
+        }
+        val param = data?.let { JSONArray(it).optJSONObject(0) } ?: JSONObject()
+        val body = when (method) {
+            RANKING -> ranking()
+            ROB_FLAG -> robFlags(param.optJSONArray("userIdList") ?: JSONArray())
+            HOME -> home(param.optString("userId"))
+            COLLECT -> collect(param.optString("userId"), param.optJSONArray("bubbleIds") ?: JSONArray())
+            else -> JSONObject().put("resultCode", "NOT_FOUND").put("resultDesc", "未模拟的接口: $method")
+        }
+        return Reply(body.toString(), false)
+    }
+
+    private fun success(): JSONObject = JSONObject().put("resultCode", "SUCCESS").put("resultDesc", "成功")
+
+    /**
+     * 排行榜只返回好友 id，能量标记需要再调用 fillUserRobFlag
+     */
+    private fun ranking(): JSONObject {
+        val totalDatas = JSONArray()
+        friendList.forEach { totalDatas.put(JSONObject().put("userId", it.userId)) }
+        return success().put("totalDatas", totalDatas)
+    }
+
+    private fun robFlags(userIdList: JSONArray): JSONObject {
+        val now = System.currentTimeMillis()
+        val ranking = JSONArray()
+        for (i in 0 until userIdList.length()) {
+            val friend = friendMap[userIdList.optString(i)] ?: continue
+            var canCollect = false
+            var laterTime = Long.MAX_VALUE
+            synchronized(friend) {
+                for (bubble in friend.bubbles) {
+                    if (bubble.produceTime <= now) canCollect = true else laterTime = minOf(laterTime, bubble.produceTime)
+                }
+            }
+            ranking.put(
+                JSONObject()
+                    .put("userId", friend.userId)
+                    .put("canCollectEnergy", canCollect)
+                    .put("canCollectLaterTime", if (laterTime == Long.MAX_VALUE) 0L else laterTime)
+            )
+        }
+        return success().put("friendRanking", ranking)
+    }
+
+    private fun home(userId: String): JSONObject {
+        val friend = friendMap[userId] ?: return JSONObject().put("resultCode", "USER_NOT_EXIST").put("resultDesc", "用户不存在")
+        val now = System.currentTimeMillis()
+        val bubbles = JSONArray()
+        synchronized(friend) {
+            for (bubble in friend.bubbles) {
+                bubbles.put(
+                    JSONObject()
+                        .put("id", bubble.id)
+                        .put("userId", userId)
+                        .put("collectStatus", if (bubble.produceTime <= now) "AVAILABLE" else "WAITING")
+                        .put("produceTime", bubble.produceTime)
+                        .put("remainEnergy", bubble.energy)
+                )
+            }
+        }
+        val props = JSONArray()
+        if (friend.shieldEnd > 0) props.put(JSONObject().put("propGroup", "shield").put("endTime", friend.shieldEnd))
+        if (friend.bombEnd > 0) props.put(JSONObject().put("propGroup", "energyBombCard").put("endTime", friend.bombEnd))
+        return success()
+            .put("now", now)
+            .put("userEnergy", JSONObject().put("userId", userId))
+            .put("bubbles", bubbles)
+            .put("usingUserPropsNew", props)
+    }
+
+    /**
+     * 已成熟且未被保护的能量球才会被收取，收取后在成熟窗口内重新生成一个；
+     * 未成熟的返回 WAITING，已不存在的返回 0
+     */
+    private fun collect(userId: String, bubbleIds: JSONArray): JSONObject {
+        val friend = friendMap[userId] ?: return JSONObject().put("resultCode", "USER_NOT_EXIST").put("resultDesc", "用户不存在")
+        val now = System.currentTimeMillis()
+        val protected = friend.shieldEnd > now || friend.bombEnd > now
+        val result = JSONArray()
+        synchronized(friend) {
+            for (i in 0 until bubbleIds.length()) {
+                val id = bubbleIds.optLong(i)
+                val item = JSONObject().put("id", id).put("userId", userId)
+                val index = friend.bubbles.indexOfFirst { it.id == id }
+                val bubble = if (index >= 0) friend.bubbles[index] else null
+                when {
+                    bubble == null -> item.put("collectStatus", "INSUFFICIENT").put("collectedEnergy", 0)
+                    bubble.produceTime > now -> item.put("collectStatus", "WAITING").put("collectedEnergy", 0)
+                    protected -> item.put("collectStatus", "AVAILABLE").put("collectedEnergy", 0)
+                    else -> {
+                        friend.bubbles[index] = newBubble(now, false)
+                        collectedEnergy.addAndGet(bubble.energy.toLong())
+                        item.put("collectStatus", "SUCCESS").put("collectedEnergy", bubble.energy)
+                    }
+                }
+                result.put(item)
+            }
+        }
+        return success().put("bubbles", result)
+    }
+}
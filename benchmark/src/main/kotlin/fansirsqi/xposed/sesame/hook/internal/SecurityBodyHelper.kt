@@ -0,0 +1,8 @@
+package fansirsqi.xposed.sesame.hook.internal
+
+/**
+ * JVM 桩：没有宿主安全组件，wua 固定为空
+ */
+object SecurityBodyHelper {
+    fun getSecurityBodyData(type: Int): String? = null
+}
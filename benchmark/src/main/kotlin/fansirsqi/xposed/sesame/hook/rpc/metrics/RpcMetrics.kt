@@ -0,0 +1,15 @@
+package fansirsqi.xposed.sesame.hook.rpc.metrics
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * JVM 桩：app 中的 RpcMetrics 依赖 Files/TimeUtil 持久化，这里只保留间隔等待的累计，
+ * 供基准与模拟测试读取
+ */
+object RpcMetrics {
+    val intervalWaitMs = AtomicLong()
+
+    fun recordIntervalWait(method: String, waitMs: Long) {
+        if (waitMs > 0) intervalWaitMs.addAndGet(waitMs)
+    }
+}
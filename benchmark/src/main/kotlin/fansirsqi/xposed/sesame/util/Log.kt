@@ -0,0 +1,50 @@
+package fansirsqi.xposed.sesame.util
+
+/**
+ * JVM 桩：替代 app 中基于 logback-android 的 Log。
+ * 普通日志直接丢弃，避免输出影响基准结果；错误输出到标准错误。
+ */
+object Log {
+    @JvmStatic
+    fun record(msg: String) {
+    }
+
+    @JvmStatic
+    fun record(tag: String, msg: String) {
+    }
+
+    @JvmStatic
+    fun debug(msg: String) {
+    }
+
+    @JvmStatic
+    fun debug(tag: String, msg: String) {
+    }
+
+    @JvmStatic
+    fun error(msg: String) {
+        System.err.println(msg)
+    }
+
+    @JvmStatic
+    fun error(tag: String, msg: String) {
+        System.err.println("[$tag]: $msg")
+    }
+
+    @JvmStatic
+    fun printStackTrace(th: Throwable) {
+        th.printStackTrace()
+    }
+
+    @JvmStatic
+    fun printStackTrace(msg: String, th: Throwable) {
+        error(msg)
+        th.printStackTrace()
+    }
+
+    @JvmStatic
+    fun printStackTrace(tag: String, msg: String, th: Throwable) {
+        error(tag, msg)
+        th.printStackTrace()
+    }
+}
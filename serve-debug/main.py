@@ -3,7 +3,9 @@
 from typing import List
 
 # Corrected imports for exception handling
+import gzip
 import json  # Import the json module for serialization
+from pydantic import ValidationError
 from fastapi import Depends, HTTPException, Query, Request, status, FastAPI
 from fastapi.responses import JSONResponse
 from fastapi.exceptions import RequestValidationError
@@ -44,36 +46,40 @@ def get_db():
         yield session
 
 
+def to_model(data: HookDataCreate) -> HookDataModel:
+    # Prepare data for SQLAlchemy model, serializing dicts and converting types
+    validated_data = data.model_dump(exclude_unset=True)
+    params_data = validated_data.get("Params")
+    data_field = validated_data.get("Data")
+    timestamp_data = validated_data.get("TimeStamp")
+
+    # Serialize Params if it's a dict
+    if isinstance(params_data, dict):
+        validated_data["Params"] = json.dumps(params_data, ensure_ascii=False)
+    elif params_data is not None:  # Ensure it's at least a string if not None/dict
+        validated_data["Params"] = str(params_data)
+
+    # Serialize Data if it's a dict
+    if isinstance(data_field, dict):
+        validated_data["Data"] = json.dumps(data_field, ensure_ascii=False)
+    elif data_field is not None:  # Ensure it's at least a string if not None/dict
+        validated_data["Data"] = str(data_field)
+
+    # Convert TimeStamp to string if it's an int
+    if isinstance(timestamp_data, int):
+        validated_data["TimeStamp"] = str(timestamp_data)
+    elif timestamp_data is not None:  # Ensure it's at least a string if not None/int
+        validated_data["TimeStamp"] = str(timestamp_data)
+
+    # 使用 SQLAlchemy 模型创建数据库记录
+    return HookDataModel(**validated_data)
+
+
 # 恢复 response_model 为 HookDataSchema
 @app.post("/hook", response_model=HookDataSchema)
 async def create_webhook(data: HookDataCreate, db: Session = Depends(get_db)):
     try:
-        # Prepare data for SQLAlchemy model, serializing dicts and converting types
-        validated_data = data.model_dump(exclude_unset=True)
-        params_data = validated_data.get("Params")
-        data_field = validated_data.get("Data")
-        timestamp_data = validated_data.get("TimeStamp")
-
-        # Serialize Params if it's a dict
-        if isinstance(params_data, dict):
-            validated_data["Params"] = json.dumps(params_data, ensure_ascii=False)
-        elif params_data is not None:  # Ensure it's at least a string if not None/dict
-            validated_data["Params"] = str(params_data)
-
-        # Serialize Data if it's a dict
-        if isinstance(data_field, dict):
-            validated_data["Data"] = json.dumps(data_field, ensure_ascii=False)
-        elif data_field is not None:  # Ensure it's at least a string if not None/dict
-            validated_data["Data"] = str(data_field)
-
-        # Convert TimeStamp to string if it's an int
-        if isinstance(timestamp_data, int):
-            validated_data["TimeStamp"] = str(timestamp_data)
-        elif timestamp_data is not None:  # Ensure it's at least a string if not None/int
-            validated_data["TimeStamp"] = str(timestamp_data)
-
-        # 使用 SQLAlchemy 模型创建数据库记录
-        db_data = HookDataModel(**validated_data)
+        db_data = to_model(data)
         db.add(db_data)
         db.commit()
         db.refresh(db_data)
@@ -83,6 +89,35 @@ async def create_webhook(data: HookDataCreate, db: Session = Depends(get_db)):
         raise HTTPException(status_code=500, detail="Error saving data")
 
 
+# 模块批量上报：gzip 压缩（可选）的 NDJSON，每行一条 HookDataCreate，格式错误的行跳过并计数
+@app.post("/hook/batch")
+async def create_webhook_batch(request: Request, db: Session = Depends(get_db)):
+    body = await request.body()
+    if request.headers.get("content-encoding", "").lower() == "gzip":
+        try:
+            body = gzip.decompress(body)
+        except (OSError, EOFError) as e:
+            logger.error(f"Invalid gzip body: {e}")
+            raise HTTPException(status_code=400, detail="Invalid gzip body")
+    records = []
+    skipped = 0
+    for line in body.decode("utf-8", errors="replace").splitlines():
+        if not line.strip():
+            continue
+        try:
+            records.append(to_model(HookDataCreate.model_validate_json(line)))
+        except ValidationError as e:
+            skipped += 1
+            logger.warning(f"Skip invalid hook record: {e.errors()}")
+    try:
+        db.add_all(records)
+        db.commit()
+    except Exception as e:
+        logger.error(f"Error saving batch: {e}")
+        raise HTTPException(status_code=500, detail="Error saving data")
+    return {"stored": len(records), "skipped": skipped}
+
+
 # main.py 中的 GET 接口完整代码
 @app.get("/hook", response_model=List[HookDataSchema])  # 使用 Pydantic Schema 列表作为响应模型
 async def get_webhooks(
@@ -30,4 +30,5 @@ plugins {
     id("org.gradle.toolchains.foojay-resolver-convention") version "1.0.0"
 }
 include(":app")
+include(":benchmark")
 